@@ -7,6 +7,8 @@ import org.jgrapht.alg.shortestpath.AStarShortestPath;
 
 import java.awt.Point;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -15,6 +17,11 @@ import java.util.logging.Logger;
  *  2) Randomly offset room placement
  *  3) Use a short "stub" corridor from the room boundary
  *  4) Use JGraphT's A* for corridor pathfinding, with a penalty near rooms
+ *
+ * All randomness comes from one {@link Random}, so a fitter built with a seed
+ * reproduces the same layout for the same Dungeon. {@link #fit} starts a fresh
+ * {@link Random} from that seed on every call, so a seeded instance can be shared
+ * between threads and gives the same result each time.
  */
 public class AStarDungeonGridFitter implements DungeonFitter {
     private static final Logger LOG = Logger.getLogger(AStarDungeonGridFitter.class.getName());
@@ -25,14 +32,83 @@ public class AStarDungeonGridFitter implements DungeonFitter {
     private static final int STUB_LENGTH_MIN = 1; // short corridor stubs from boundary
     private static final int STUB_LENGTH_MAX = 3; // up to 3 squares
 
-    // The map of cells in (x,y) => GridCell
-    private final Map<Point, GridCell> gridMap;
+    // The fitted squares (a HashMap of (x,y) => GridCell unless another grid is supplied)
+    private final Supplier<? extends CellGrid> gridFactory;
+    private final CellGrid grid;
+
+    // Placed rectangle for each room ID
+    private final Map<Integer, us.n8l.mapgenerator.Rectangle> roomRects = new HashMap<>();
+
+    // Nearest door pairs + per-room door limits
+    private final DoorSelector doorSelector;
+
+    // Source of the random offsets and stub lengths
+    private final Random rng;
+    // Seed for each fit() call; null => unseeded
+    private final Long seed;
+
+    private final FitStats stats = new FitStats();
+
+    // Route of each corridor, in routing order
+    private final Map<Corridor, CorridorPath> corridorPaths = new LinkedHashMap<>();
+
+    // Optional early-exit test, checked after placement and after each corridor
+    private Predicate<FitStats> abandonCheck;
+    private boolean abandoned;
 
     // We store bounding rectangle after we finish
     private us.n8l.mapgenerator.Rectangle bounds;
 
     public AStarDungeonGridFitter() {
-        this.gridMap = new HashMap<>();
+        this(new Random(), null, HashCellGrid::new);
+    }
+
+    public AStarDungeonGridFitter(long seed) {
+        this(seed, HashCellGrid::new);
+    }
+
+    /**
+     * @param gridFactory makes the storage for the fitted squares: once for this instance's
+     *                    {@link #fitDungeon} and once per {@link #fit} call, e.g.
+     *                    {@code () -> new OffHeapCellGrid(extent)} for very large maps. Squares a
+     *                    grid cannot hold are treated as solid rock.
+     */
+    public AStarDungeonGridFitter(long seed, Supplier<? extends CellGrid> gridFactory) {
+        this(new Random(seed), seed, gridFactory);
+    }
+
+    private AStarDungeonGridFitter(Random rng, Long seed, Supplier<? extends CellGrid> gridFactory) {
+        this.gridFactory = gridFactory;
+        this.grid = gridFactory.get();
+        this.doorSelector = new DoorSelector(grid);
+        this.rng = rng;
+        this.seed = seed;
+    }
+
+    /**
+     * Install a test that is given the partial stats after room placement and after each
+     * corridor; if it returns true, the fit stops early and {@link #isAbandoned()} reports it.
+     * Used by {@link MultiStartDungeonFitter} to drop starts that can no longer win.
+     */
+    void setAbandonCheck(Predicate<FitStats> abandonCheck) {
+        this.abandonCheck = abandonCheck;
+    }
+
+    boolean isAbandoned() {
+        return abandoned;
+    }
+
+    @Override
+    public FitResult fit(Dungeon dungeon) {
+        AStarDungeonGridFitter run = (seed != null)
+                ? new AStarDungeonGridFitter(seed, gridFactory)
+                : new AStarDungeonGridFitter(new Random(), null, gridFactory);
+        try {
+            run.fitDungeon(dungeon);
+            return FitResult.of(run);
+        } finally {
+            FitResult.release(run.grid);
+        }
     }
 
     /**
@@ -48,7 +124,12 @@ public class AStarDungeonGridFitter implements DungeonFitter {
         // 2) Connect corridors using a stub offset + A*
         int connectedCount = 0;
         for (Corridor c : dungeon.getCorridors()) {
-            connectCorridor(c);
+            if (abandonCheck != null && abandonCheck.test(stats)) {
+                abandoned = true;
+                LOG.info("Fit abandoned after " + connectedCount + " corridors: " + stats);
+                break;
+            }
+            corridorPaths.put(c, CorridorPath.of(connectCorridor(c)));
             connectedCount++;
             if (connectedCount % 5 == 0) {
                 LOG.info("... connected " + connectedCount + " corridors so far");
@@ -66,22 +147,7 @@ public class AStarDungeonGridFitter implements DungeonFitter {
     }
 
     private us.n8l.mapgenerator.Rectangle computeUsedBounds() {
-        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
-        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
-        for (GridCell cell : gridMap.values()) {
-            if (cell.getCellType() != GridCell.CellType.EMPTY) {
-                int x = cell.getCoordinate().x;
-                int y = cell.getCoordinate().y;
-                if (x < minX) minX = x;
-                if (x > maxX) maxX = x;
-                if (y < minY) minY = y;
-                if (y > maxY) maxY = y;
-            }
-        }
-        if (maxX < minX || maxY < minY) {
-            return new us.n8l.mapgenerator.Rectangle(0,0,0,0);
-        }
-        return new us.n8l.mapgenerator.Rectangle(minX, minY, (maxX - minX + 1), (maxY - minY + 1));
+        return grid.getUsedBounds();
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -113,8 +179,8 @@ public class AStarDungeonGridFitter implements DungeonFitter {
             }
 
             // random offset (± ROOM_OFFSET_RANGE)
-            int offsetX = (int) (Math.random() * (2 * ROOM_OFFSET_RANGE + 1)) - ROOM_OFFSET_RANGE;
-            int offsetY = (int) (Math.random() * (2 * ROOM_OFFSET_RANGE + 1)) - ROOM_OFFSET_RANGE;
+            int offsetX = rng.nextInt(2 * ROOM_OFFSET_RANGE + 1) - ROOM_OFFSET_RANGE;
+            int offsetY = rng.nextInt(2 * ROOM_OFFSET_RANGE + 1) - ROOM_OFFSET_RANGE;
 
             int proposedX = currentX + offsetX;
             int proposedY = currentY + offsetY;
@@ -132,6 +198,8 @@ public class AStarDungeonGridFitter implements DungeonFitter {
                 tallestRoomInRow = 0;
             }
         }
+        us.n8l.mapgenerator.Rectangle placed = computeUsedBounds();
+        stats.setPlacedArea((long) placed.width * placed.height);
         LOG.info("Done placing rooms.");
     }
 
@@ -142,79 +210,116 @@ public class AStarDungeonGridFitter implements DungeonFitter {
     private void placeRoom(int roomId, int w, int h, int startX, int startY) {
         for (int y = startY; y < startY + h; y++) {
             for (int x = startX; x < startX + w; x++) {
-                GridCell cell = getOrCreateCell(x, y);
-                cell.setCellType(GridCell.CellType.ROOM);
-                cell.setRoomId(roomId);
+                if (grid.getCellType(x, y) == GridCell.CellType.ROOM && grid.getRoomId(x, y) != roomId) {
+                    stats.addOverlapCell();
+                }
+                grid.setCell(x, y, GridCell.CellType.ROOM, roomId);
             }
         }
+        roomRects.put(roomId, new us.n8l.mapgenerator.Rectangle(startX, startY, w, h));
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     //                     CORRIDOR CONNECTIONS (A*)
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
-    private void connectCorridor(Corridor corridor) {
+    /**
+     * Routes one corridor and returns the squares it runs over, door to door
+     * (empty if it was skipped or failed).
+     */
+    private List<Point> connectCorridor(Corridor corridor) {
         Room from = corridor.getFromRoom();
         Room to   = corridor.getToRoom();
-        if (from == null || to == null) return;
+        if (from == null || to == null) return Collections.emptyList();
 
         List<Point> fromBound = findRoomBoundary(from.getId());
         List<Point> toBound   = findRoomBoundary(to.getId());
 
         if (fromBound.isEmpty() || toBound.isEmpty()) {
             LOG.fine("No boundary squares for corridor: " + from.getId() + "->" + to.getId());
-            return;
+            stats.addFailedCorridor();
+            return Collections.emptyList();
         }
 
-        // pick random boundary square from each (or the first for demo)
-        Point startBoundary = fromBound.get(0);
-        Point endBoundary   = toBound.get(0);
+        // pick the closest allowed pair of doors between the two rooms
+        DoorSelector.DoorPair doors = doorSelector.select(from.getId(), fromBound, to.getId(), toBound);
+        if (doors == null) {
+            stats.addFailedCorridor();
+            return Collections.emptyList();
+        }
 
-        // create short stubs from boundary squares
-        Point startStub = createStub(startBoundary);
-        Point endStub   = createStub(endBoundary);
+        // create short stubs outward from the doors
+        List<Point> fromStub = createStub(doors.from());
+        List<Point> toStub   = createStub(doors.to());
+        Point startStub = fromStub.get(fromStub.size() - 1);
+        Point endStub   = toStub.get(toStub.size() - 1);
 
         // Now use A* from startStub -> endStub
         List<Point> path = aStarPath(startStub, endStub);
 
+        if (path.isEmpty()) {
+            stats.addFailedCorridor();
+            return Collections.emptyList();
+        }
+        stats.addCorridorRouted();
+
         // Mark corridor squares
         for (Point p : path) {
-            GridCell c = getOrCreateCell(p.x, p.y);
-            if (c.getCellType() == GridCell.CellType.EMPTY
-                || c.getCellType() == GridCell.CellType.CORRIDOR) {
-                c.setCellType(GridCell.CellType.CORRIDOR);
+            if (grid.getCellType(p.x, p.y) == GridCell.CellType.EMPTY) {
+                grid.setCellType(p.x, p.y, GridCell.CellType.CORRIDOR);
+                stats.addCorridorCell();
             }
         }
+
+        // Door -> stub -> A* path -> stub -> door
+        List<Point> route = new ArrayList<>(fromStub.size() + path.size() + toStub.size());
+        route.addAll(fromStub);
+        route.addAll(path.subList(1, path.size()));
+        for (int i = toStub.size() - 2; i >= 0; i--) {
+            route.add(toStub.get(i));
+        }
+        return route;
     }
 
     /**
-     * Make a short corridor "stub" (1..3 squares) outward from the boundary cell.
-     * For simplicity, pick a random direction that doesn't immediately hit another room cell.
-     * Return the last square in the stub.
+     * Make a short corridor "stub" (1..3 squares) outward from the door, in the direction
+     * its wall faces. Doors without a known facing fall back to a random direction.
+     * Return the stub's squares starting with the door; the last one is where A* starts.
      */
-    private Point createStub(Point boundaryCell) {
-        int stubLen = STUB_LENGTH_MIN + (int)(Math.random() * (STUB_LENGTH_MAX - STUB_LENGTH_MIN + 1));
-        // pick a random direction (N, S, E, W)
-        int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        int[] chosen = dirs[(int)(Math.random() * dirs.length)];
+    private List<Point> createStub(DoorSelector.Door door) {
+        Point boundaryCell = door.cell();
+        int stubLen = STUB_LENGTH_MIN + rng.nextInt(STUB_LENGTH_MAX - STUB_LENGTH_MIN + 1);
+        int[] chosen = {door.dx(), door.dy()};
+        if (chosen[0] == 0 && chosen[1] == 0) {
+            // pick a random direction (N, S, E, W)
+            int[][] dirs = {{1,0},{-1,0},{0,1},{0,-1}};
+            chosen = dirs[rng.nextInt(dirs.length)];
+        }
 
         Point current = boundaryCell;
+        List<Point> stub = new ArrayList<>(STUB_LENGTH_MAX + 1);
+        stub.add(current);
         for (int i = 0; i < stubLen; i++) {
             int nx = current.x + chosen[0];
             int ny = current.y + chosen[1];
-            GridCell nc = getOrCreateCell(nx, ny);
+            if (!grid.isWritable(nx, ny)) {
+                break;
+            }
+            GridCell.CellType type = grid.getCellType(nx, ny);
             // if we ran into a room cell (not the original boundary?), we break
-            if (nc.getCellType() == GridCell.CellType.ROOM && i > 0) {
+            if (type == GridCell.CellType.ROOM && i > 0) {
                 break;
             } else {
                 // mark corridor
-                if (nc.getCellType() != GridCell.CellType.ROOM) {
-                    nc.setCellType(GridCell.CellType.CORRIDOR);
+                if (type == GridCell.CellType.EMPTY) {
+                    grid.setCellType(nx, ny, GridCell.CellType.CORRIDOR);
+                    stats.addCorridorCell();
                 }
                 current = new Point(nx, ny);
+                stub.add(current);
             }
         }
-        return current;
+        return stub;
     }
 
     /**
@@ -243,8 +348,7 @@ public class AStarDungeonGridFitter implements DungeonFitter {
             for (int x = minX; x <= maxX; x++) {
                 Point p = new Point(x,y);
                 // We'll allow corridor or empty or the start/goal if it's a room boundary
-                GridCell c = getCell(x, y);
-                if (canTraverseCell(p, c, start, goal)) {
+                if (canTraverseCell(p, start, goal)) {
                     graph.addVertex(p);
                 }
             }
@@ -264,6 +368,8 @@ public class AStarDungeonGridFitter implements DungeonFitter {
             }
         }
 
+        stats.addSearchExpansions(graph.vertexSet().size());
+
         // 4) A* Shortest Path
         AStarShortestPath<Point, DefaultWeightedEdge> astar =
                 new AStarShortestPath<>(graph, (p1, p2) -> manhattanDistance(p1, p2));
@@ -280,13 +386,13 @@ public class AStarDungeonGridFitter implements DungeonFitter {
      * Return true if we can traverse this cell. We'll allow corridor or empty squares,
      * plus the start/goal squares if they happen to be "corridor stubs" next to a room.
      */
-    private boolean canTraverseCell(Point p, GridCell c, Point start, Point goal) {
-        // If cell is null => treat as empty => passable
-        if (c == null) return true;
+    private boolean canTraverseCell(Point p, Point start, Point goal) {
         if (p.equals(start) || p.equals(goal)) return true;
+        // Outside a fixed-extent grid => solid rock
+        if (!grid.isWritable(p.x, p.y)) return false;
 
         // If it's a room, no, except for the start/goal boundary
-        if (c.getCellType() == GridCell.CellType.ROOM) {
+        if (grid.getCellType(p.x, p.y) == GridCell.CellType.ROOM) {
             return false;
         }
         // corridor or empty => passable
@@ -300,8 +406,7 @@ public class AStarDungeonGridFitter implements DungeonFitter {
     private double costForCell(Point p) {
         // Check if adjacent to room
         for (int[] d : new int[][] {{1,0},{-1,0},{0,1},{0,-1}}) {
-            GridCell nc = getCell(p.x + d[0], p.y + d[1]);
-            if (nc != null && nc.getCellType() == GridCell.CellType.ROOM) {
+            if (grid.getCellType(p.x + d[0], p.y + d[1]) == GridCell.CellType.ROOM) {
                 // penalize adjacency
                 return 5.0;
             }
@@ -322,10 +427,15 @@ public class AStarDungeonGridFitter implements DungeonFitter {
     private List<Point> findRoomBoundary(int roomId) {
         // squares in the map with roomId that have at least one neighbor not in that room
         List<Point> boundary = new ArrayList<>();
-        for (GridCell cell : gridMap.values()) {
-            if (cell.getRoomId() == roomId) {
-                if (isBoundary(cell.getCoordinate(), roomId)) {
-                    boundary.add(cell.getCoordinate());
+        us.n8l.mapgenerator.Rectangle rect = roomRects.get(roomId);
+        if (rect == null) {
+            return boundary;
+        }
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            for (int x = rect.x; x < rect.x + rect.width; x++) {
+                Point p = new Point(x, y);
+                if (grid.getRoomId(x, y) == roomId && isBoundary(p, roomId)) {
+                    boundary.add(p);
                 }
             }
         }
@@ -337,11 +447,7 @@ public class AStarDungeonGridFitter implements DungeonFitter {
         for (int[] d : dirs) {
             int nx = p.x + d[0];
             int ny = p.y + d[1];
-            GridCell ncell = getCell(nx, ny);
-            if (ncell == null) {
-                return true; // edge => boundary
-            }
-            if (ncell.getRoomId() != roomId) {
+            if (grid.getRoomId(nx, ny) != roomId) {
                 // either another room or corridor/empty
                 return true;
             }
@@ -349,24 +455,6 @@ public class AStarDungeonGridFitter implements DungeonFitter {
         return false;
     }
 
-    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
-    //                       GRID ACCESS
-    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
-
-    private GridCell getOrCreateCell(int x, int y) {
-        Point pt = new Point(x,y);
-        GridCell c = gridMap.get(pt);
-        if (c == null) {
-            c = new GridCell(x, y);
-            gridMap.put(pt, c);
-        }
-        return c;
-    }
-
-    private GridCell getCell(int x, int y) {
-        return gridMap.get(new Point(x,y));
-    }
-
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     //                    ROOM DIMENSION PARSING
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -394,13 +482,26 @@ public class AStarDungeonGridFitter implements DungeonFitter {
      * Returns an unmodifiable view of all cells in the fitted grid.
      */
     public Collection<GridCell> getAllCells() {
-        return Collections.unmodifiableCollection(gridMap.values());
+        return Collections.unmodifiableCollection(grid.toGridCells());
+    }
+
+    public CellGridView getGrid() {
+        return grid;
     }
 
     public us.n8l.mapgenerator.Rectangle getBounds() {
         return bounds;
     }
 
+    public FitStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public Map<Corridor, CorridorPath> getCorridorPaths() {
+        return Collections.unmodifiableMap(corridorPaths);
+    }
+
     /**
      * Basic integer dimension
      */
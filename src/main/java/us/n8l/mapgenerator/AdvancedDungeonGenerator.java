@@ -1,15 +1,111 @@
 package us.n8l.mapgenerator;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class AdvancedDungeonGenerator {
 
-    private static final int MAX_ROOMS = 10; // maximum rooms to create
-    private static final Random RNG = new Random();
+    public static final int DEFAULT_MAX_ROOMS = 10; // maximum rooms to create
+    // Events buffered between a streaming generator and its subscriber
+    private static final int STREAM_BUFFER = 256;
+    // Smallest room budget worth forking a parallel branch for
+    private static final int MIN_BRANCH_ROOMS = 2;
+
+    private final Random rng;
+    private int maxRooms;        // shrinks as budget is handed to forked branches
+    private final int maxDepth;
+
+    // Parallel mode: side passages at intersections become forked branches instead of being dropped
+    private final boolean forkBranches;
+    private final List<BranchTask> forks = new ArrayList<>();
+
+    public AdvancedDungeonGenerator() {
+        this(new Random(), DEFAULT_MAX_ROOMS);
+    }
+
+    /**
+     * A generator whose dungeons are reproducible from {@code seed} (room ids aside).
+     */
+    public AdvancedDungeonGenerator(long seed) {
+        this(new Random(seed), DEFAULT_MAX_ROOMS);
+    }
+
+    /**
+     * A seeded generator that stops adding rooms once a dungeon has {@code maxRooms}.
+     */
+    public AdvancedDungeonGenerator(long seed, int maxRooms) {
+        this(new Random(seed), maxRooms);
+    }
+
+    private AdvancedDungeonGenerator(Random rng, int maxRooms) {
+        this(rng, maxRooms, maxRooms * 2, false);
+    }
+
+    private AdvancedDungeonGenerator(Random rng, int maxRooms, int maxDepth, boolean forkBranches) {
+        this.rng = rng;
+        this.maxRooms = maxRooms;
+        this.maxDepth = maxDepth;
+        this.forkBranches = forkBranches;
+    }
 
     public Dungeon generateDungeon() {
-        Dungeon dungeon = new Dungeon();
+        return generate(new Dungeon());
+    }
+
+    /**
+     * Publishes a dungeon room by room and corridor by corridor while it is being generated,
+     * so a subscriber (e.g. {@link StreamingDungeonFitter}) can work on it concurrently.
+     * Each subscription generates a new dungeon on {@code executor}, which also delivers the
+     * events and so needs at least two threads; generation blocks while the subscriber is more
+     * than a small buffer behind. A generator runs one stream at a time.
+     */
+    public Flow.Publisher<DungeonEvent> generateStream(Executor executor) {
+        return subscriber -> {
+            SubmissionPublisher<DungeonEvent> publisher = new SubmissionPublisher<>(executor, STREAM_BUFFER);
+            publisher.subscribe(subscriber);
+            executor.execute(() -> {
+                try {
+                    generate(new PublishingDungeon(publisher::submit));
+                    publisher.close();
+                } catch (RuntimeException e) {
+                    publisher.closeExceptionally(e);
+                }
+            });
+        };
+    }
 
+    /**
+     * Generates one large level across the common ForkJoin pool. See {@link #generateDungeonParallel(ForkJoinPool)}.
+     */
+    public Dungeon generateDungeonParallel() {
+        return generateDungeonParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Generates one level with its branches expanded in parallel. Unlike {@link #generateDungeon},
+     * the side passage at each T, Y, four-way or X intersection is explored as well, as a ForkJoin
+     * task with its own seed (drawn from its parent's RNG) and half of its parent's remaining room
+     * budget, so large budgets actually produce large, branching levels.
+     * <p>
+     * Branches are merged depth-first in the order they were forked and then renumbered with
+     * consecutive ids, so the result depends only on the generator's seed, not on scheduling.
+     */
+    public Dungeon generateDungeonParallel(ForkJoinPool pool) {
+        Dungeon merged = pool.invoke(new BranchTask(rng.nextLong(), null, maxRooms, 0, maxDepth));
+        return renumber(merged);
+    }
+
+    private Dungeon generate(Dungeon dungeon) {
         // Starter room
         Room startRoom = new Room(RoomShape.STARTER, "20' x 20'");
         dungeon.addRoom(startRoom);
@@ -21,13 +117,13 @@ public class AdvancedDungeonGenerator {
     }
 
     private void expandPassage(Dungeon dungeon, Room fromRoom, int depth) {
-        if (dungeon.getRooms().size() >= MAX_ROOMS || depth > MAX_ROOMS * 2) {
+        if (dungeon.getRooms().size() >= maxRooms || depth > maxDepth) {
             return; // safety check
         }
         TableIResult result = rollTableI();
         switch (result) {
             case CONTINUE_STRAIGHT -> {
-                createLinearCorridor(dungeon, fromRoom, 60, "Continue straight");
+                createLinearCorridor(dungeon, end -> Corridor.of(fromRoom, end, 60, Corridor.Kind.STRAIGHT));
                 Room newRoom = getLastRoom(dungeon);
                 expandPassage(dungeon, newRoom, depth + 1);
             }
@@ -42,15 +138,14 @@ public class AdvancedDungeonGenerator {
             case PASSAGE_TURNS -> {
                 TurnType turnType = rollTableIV();
                 int width = rollPassageWidth();
-                String desc = width + " ft wide, " + turnType.getDescription();
-                createLinearCorridor(dungeon, fromRoom, 60, desc);
+                createLinearCorridor(dungeon, end -> Corridor.turn(fromRoom, end, 60, turnType, width));
                 Room newRoom = getLastRoom(dungeon);
                 expandPassage(dungeon, newRoom, depth + 1);
             }
             case CHAMBER -> {
                 Room newRoom = createRandomChamber();
                 dungeon.addRoom(newRoom);
-                Corridor corridor = new Corridor(fromRoom, newRoom, 30, "To Chamber");
+                Corridor corridor = Corridor.of(fromRoom, newRoom, 30, Corridor.Kind.TO_CHAMBER);
                 dungeon.addCorridor(corridor);
                 expandPassage(dungeon, newRoom, depth + 1);
             }
@@ -59,16 +154,16 @@ public class AdvancedDungeonGenerator {
                 handleStairs(dungeon, fromRoom, stairsType, depth);
             }
             case DEAD_END -> {
-                Corridor corridor = new Corridor(fromRoom, null, 10, "Dead end here");
+                Corridor corridor = Corridor.of(fromRoom, null, 10, Corridor.Kind.DEAD_END);
                 dungeon.addCorridor(corridor);
             }
             case TRICK_TRAP -> {
-                Corridor trapCorridor = new Corridor(fromRoom, null, 30, "Trap in passage - continues");
+                Corridor trapCorridor = Corridor.of(fromRoom, null, 30, Corridor.Kind.TRAP);
                 dungeon.addCorridor(trapCorridor);
                 expandPassageTrapContinuation(dungeon, trapCorridor, depth + 1);
             }
             case WANDERING_MONSTER -> {
-                Corridor corridor = new Corridor(fromRoom, null, 10, "Wandering monster encountered");
+                Corridor corridor = Corridor.of(fromRoom, null, 10, Corridor.Kind.WANDERING_MONSTER);
                 dungeon.addCorridor(corridor);
                 // Check Table I again from the same spot
                 expandPassage(dungeon, fromRoom, depth + 1);
@@ -78,7 +173,7 @@ public class AdvancedDungeonGenerator {
 
     // ~~~~~~~~~~~ TABLE I ~~~~~~~~~~~
     private TableIResult rollTableI() {
-        int roll = RNG.nextInt(20) + 1;
+        int roll = rng.nextInt(20) + 1;
         if (roll <= 2) {
             return TableIResult.CONTINUE_STRAIGHT;
         } else if (roll <= 5) {
@@ -114,7 +209,7 @@ public class AdvancedDungeonGenerator {
 
     // ~~~~~~~~~~~ TABLE II ~~~~~~~~~~~
     private DoorResult rollTableII() {
-        int locRoll = RNG.nextInt(20) + 1;
+        int locRoll = rng.nextInt(20) + 1;
         DoorLocation location;
         if (locRoll <= 6) {
             location = DoorLocation.LEFT;
@@ -124,7 +219,7 @@ public class AdvancedDungeonGenerator {
             location = DoorLocation.AHEAD;
         }
 
-        int spaceRoll = RNG.nextInt(20) + 1;
+        int spaceRoll = rng.nextInt(20) + 1;
         DoorBeyond space;
         if (spaceRoll <= 4) {
             space = DoorBeyond.PARALLEL_OR_SMALL_ROOM;
@@ -142,7 +237,6 @@ public class AdvancedDungeonGenerator {
     }
 
     record DoorResult(DoorLocation location, DoorBeyond space){}
-    enum DoorLocation { LEFT, RIGHT, AHEAD }
     enum DoorBeyond {
         PARALLEL_OR_SMALL_ROOM,
         PASSAGE_STRAIGHT,
@@ -152,45 +246,47 @@ public class AdvancedDungeonGenerator {
     }
 
     private void handleDoor(Dungeon dungeon, Room fromRoom, DoorResult doorRes, int depth) {
-        String doorDesc = "Door at " + doorRes.location();
+        DoorLocation at = doorRes.location();
         switch (doorRes.space()) {
             case PARALLEL_OR_SMALL_ROOM -> {
-                if (RNG.nextBoolean()) {
+                if (rng.nextBoolean()) {
                     // Parallel passage
-                    createLinearCorridor(dungeon, fromRoom, 30, doorDesc + " -> parallel passage");
+                    createLinearCorridor(dungeon,
+                            end -> Corridor.door(fromRoom, end, 30, at, Corridor.Kind.DOOR_PARALLEL_PASSAGE));
                     Room end = getLastRoom(dungeon);
                     expandPassage(dungeon, end, depth + 1);
                 } else {
                     // 10'x10' Room
                     Room newRoom = new Room(RoomShape.SQUARE, "10' x 10'");
                     dungeon.addRoom(newRoom);
-                    Corridor c = new Corridor(fromRoom, newRoom, 5, doorDesc + " -> small 10x10 room");
+                    Corridor c = Corridor.door(fromRoom, newRoom, 5, at, Corridor.Kind.DOOR_SMALL_ROOM);
                     dungeon.addCorridor(c);
                     expandPassage(dungeon, newRoom, depth + 1);
                 }
             }
             case PASSAGE_STRAIGHT -> {
-                createLinearCorridor(dungeon, fromRoom, 30, doorDesc + " -> passage straight");
+                createLinearCorridor(dungeon,
+                        end -> Corridor.door(fromRoom, end, 30, at, Corridor.Kind.DOOR_PASSAGE_STRAIGHT));
                 Room end = getLastRoom(dungeon);
                 expandPassage(dungeon, end, depth + 1);
             }
             case PASSAGE_45_OR_135 -> {
-                String angle = RNG.nextBoolean() ? "45°" : "135°";
-                createLinearCorridor(dungeon, fromRoom, 30, doorDesc + " -> angled " + angle + " passage");
+                int angle = rng.nextBoolean() ? 45 : 135;
+                createLinearCorridor(dungeon, end -> Corridor.angledDoor(fromRoom, end, 30, at, angle));
                 Room end = getLastRoom(dungeon);
                 expandPassage(dungeon, end, depth + 1);
             }
             case ROOM_TABLE_V -> {
                 Room newRoom = createRandomChamber();
                 dungeon.addRoom(newRoom);
-                Corridor c = new Corridor(fromRoom, newRoom, 10, doorDesc + " -> Room (Table V)");
+                Corridor c = Corridor.door(fromRoom, newRoom, 10, at, Corridor.Kind.DOOR_ROOM);
                 dungeon.addCorridor(c);
                 expandPassage(dungeon, newRoom, depth + 1);
             }
             case CHAMBER_TABLE_V -> {
                 Room newRoom = createRandomChamber();
                 dungeon.addRoom(newRoom);
-                Corridor c = new Corridor(fromRoom, newRoom, 10, doorDesc + " -> Chamber (Table V)");
+                Corridor c = Corridor.door(fromRoom, newRoom, 10, at, Corridor.Kind.DOOR_CHAMBER);
                 dungeon.addCorridor(c);
                 expandPassage(dungeon, newRoom, depth + 1);
             }
@@ -199,7 +295,7 @@ public class AdvancedDungeonGenerator {
 
     // ~~~~~~~~~~~ TABLE III ~~~~~~~~~~~
     private SidePassageResult rollTableIII() {
-        int dirRoll = RNG.nextInt(20) + 1;
+        int dirRoll = rng.nextInt(20) + 1;
         SidePassageDirection direction;
         if (dirRoll <= 2) {
             direction = SidePassageDirection.LEFT_90;
@@ -231,25 +327,20 @@ public class AdvancedDungeonGenerator {
         return new SidePassageResult(direction, width);
     }
 
-    enum SidePassageDirection {
-        LEFT_90, RIGHT_90,
-        LEFT_45, RIGHT_45,
-        LEFT_135, RIGHT_135,
-        LEFT_CURVE_45, RIGHT_CURVE_45,
-        T_INTERSECTION, Y_INTERSECTION, FOUR_WAY, X_INTERSECTION
-    }
     record SidePassageResult(SidePassageDirection direction, int width){}
 
     private void handleSidePassage(Dungeon dungeon, Room fromRoom, SidePassageResult sideRes, int depth) {
-        String desc = "Side passage " + sideRes.direction()
-                      + ", " + sideRes.width() + " ft wide";
-        createLinearCorridor(dungeon, fromRoom, 30, desc);
+        createLinearCorridor(dungeon,
+                end -> Corridor.sidePassage(fromRoom, end, 30, sideRes.direction(), sideRes.width()));
         Room corridorEnd = getLastRoom(dungeon);
+        if (forkBranches && sideRes.direction().isIntersection()) {
+            forkBranch(dungeon, corridorEnd, depth + 1);
+        }
         expandPassage(dungeon, corridorEnd, depth + 1);
     }
 
     private int rollPassageWidth() {
-        int roll = RNG.nextInt(20) + 1;
+        int roll = rng.nextInt(20) + 1;
         if (roll <= 4) {
             return 5;
         } else if (roll <= 13) {
@@ -266,7 +357,7 @@ public class AdvancedDungeonGenerator {
 
     // ~~~~~~~~~~~ TABLE IV ~~~~~~~~~~~
     private TurnType rollTableIV() {
-        int roll = RNG.nextInt(20) + 1;
+        int roll = rng.nextInt(20) + 1;
         if (roll <= 8) {
             return TurnType.LEFT_90;
         } else if (roll == 9) {
@@ -284,7 +375,7 @@ public class AdvancedDungeonGenerator {
 
     // ~~~~~~~~~~~ TABLE V ~~~~~~~~~~~
     private Room createRandomChamber() {
-        int roll = RNG.nextInt(20) + 1;
+        int roll = rng.nextInt(20) + 1;
         if (roll <= 4) {
             return new Room(RoomShape.SQUARE, "20' x 20'");
         } else if (roll <= 6) {
@@ -306,7 +397,7 @@ public class AdvancedDungeonGenerator {
 
     // ~~~~~~~~~~~ TABLE VIII ~~~~~~~~~~~
     private StairsType rollTableVIII() {
-        int roll = RNG.nextInt(20) + 1;
+        int roll = rng.nextInt(20) + 1;
         return switch (roll) {
             case 1,2,3,4,5  -> StairsType.DOWN_1;
             case 6          -> StairsType.DOWN_2;
@@ -324,14 +415,14 @@ public class AdvancedDungeonGenerator {
     }
 
     private void handleStairs(Dungeon dungeon, Room fromRoom, StairsType stairsType, int depth) {
-        createLinearCorridor(dungeon, fromRoom, 20, "Stairs: " + stairsType.getDescription());
+        createLinearCorridor(dungeon, end -> Corridor.stairs(fromRoom, end, 20, stairsType));
         Room newNode = getLastRoom(dungeon);
 
         // If it ends in a chamber:
         if (stairsType == StairsType.UP_1_DOWN_2_CHAMBER) {
             Room chamber = createRandomChamber();
             dungeon.addRoom(chamber);
-            Corridor c = new Corridor(newNode, chamber, 10, "End of stairs -> Chamber");
+            Corridor c = Corridor.of(newNode, chamber, 10, Corridor.Kind.STAIRS_TO_CHAMBER);
             dungeon.addCorridor(c);
             expandPassage(dungeon, chamber, depth + 1);
         } else {
@@ -343,25 +434,27 @@ public class AdvancedDungeonGenerator {
     // ~~~~~~~~~~~ Additional Helpers ~~~~~~~~~~~
 
     private void expandPassageTrapContinuation(Dungeon dungeon, Corridor trapCorridor, int depth) {
-        if (dungeon.getRooms().size() >= MAX_ROOMS) return;
+        if (dungeon.getRooms().size() >= maxRooms) return;
 
         // Create a "mini node" at corridor’s end
         Room trapEnd = new Room(RoomShape.CORRIDOR_END, "End after trap");
         dungeon.addRoom(trapEnd);
 
         // Connect them
-        Corridor connection = new Corridor(null, trapEnd, 0, "Trap corridor ends here");
+        Corridor connection = Corridor.of(null, trapEnd, 0, Corridor.Kind.TRAP_END);
         dungeon.addCorridor(connection);
 
         expandPassage(dungeon, trapEnd, depth);
     }
 
-    private void createLinearCorridor(Dungeon dungeon, Room fromRoom, int lengthFeet, String description) {
+    /**
+     * Adds a corridor-end node and the corridor {@code toEnd} builds to it.
+     */
+    private void createLinearCorridor(Dungeon dungeon, Function<Room, Corridor> toEnd) {
         Room corridorEnd = new Room(RoomShape.CORRIDOR_END, "N/A");
         dungeon.addRoom(corridorEnd);
 
-        Corridor corridor = new Corridor(fromRoom, corridorEnd, lengthFeet, description);
-        dungeon.addCorridor(corridor);
+        dungeon.addCorridor(toEnd.apply(corridorEnd));
     }
 
     private Room getLastRoom(Dungeon dungeon) {
@@ -369,4 +462,103 @@ public class AdvancedDungeonGenerator {
         if (size == 0) return null;
         return dungeon.getRooms().get(size - 1);
     }
+
+    // ~~~~~~~~~~~ Parallel Branches ~~~~~~~~~~~
+
+    /**
+     * Hands half of the remaining room budget to a new branch starting at {@code junction}.
+     */
+    private void forkBranch(Dungeon dungeon, Room junction, int depth) {
+        int share = (maxRooms - dungeon.getRooms().size()) / 2;
+        if (share < MIN_BRANCH_ROOMS) {
+            return;
+        }
+        maxRooms -= share;
+        BranchTask branch = new BranchTask(rng.nextLong(), junction, share, depth, maxDepth);
+        branch.fork();
+        forks.add(branch);
+    }
+
+    /**
+     * One branch of a parallel generation: expands from {@code start} (or from a new starter room
+     * if null) into its own sub-dungeon, then appends its forked branches' sub-dungeons in fork order.
+     */
+    private static final class BranchTask extends RecursiveTask<Dungeon> {
+        private static final long serialVersionUID = 1L;
+
+        private final long seed;
+        private final Room start;
+        private final int budget;
+        private final int depth;
+        private final int maxDepth;
+
+        BranchTask(long seed, Room start, int budget, int depth, int maxDepth) {
+            this.seed = seed;
+            this.start = start;
+            this.budget = budget;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        protected Dungeon compute() {
+            AdvancedDungeonGenerator gen = new AdvancedDungeonGenerator(new Random(seed), budget, maxDepth, true);
+            Dungeon sub;
+            if (start == null) {
+                sub = gen.generate(new Dungeon());
+            } else {
+                sub = new Dungeon();
+                gen.expandPassage(sub, start, depth);
+            }
+            for (BranchTask branch : gen.forks) {
+                Dungeon child = branch.join();
+                child.getRooms().forEach(sub::addRoom);
+                child.getCorridors().forEach(sub::addCorridor);
+            }
+            return sub;
+        }
+    }
+
+    /**
+     * Rebuilds a merged dungeon with consecutive room ids in room-list order.
+     */
+    private static Dungeon renumber(Dungeon merged) {
+        int nextId = Room.reserveIds(merged.getRooms().size());
+        Map<Room, Room> renamed = new IdentityHashMap<>();
+        Dungeon result = new Dungeon();
+        for (Room r : merged.getRooms()) {
+            Room copy = new Room(nextId++, r.getShape(), r.getDimensions());
+            renamed.put(r, copy);
+            result.addRoom(copy);
+        }
+        for (Corridor c : merged.getCorridors()) {
+            Room from = (c.getFromRoom() == null) ? null : renamed.get(c.getFromRoom());
+            Room to = (c.getToRoom() == null) ? null : renamed.get(c.getToRoom());
+            result.addCorridor(c.withRooms(from, to));
+        }
+        return result;
+    }
+
+    /**
+     * A dungeon that also reports every room and corridor added to it.
+     */
+    private static final class PublishingDungeon extends Dungeon {
+        private final Consumer<DungeonEvent> sink;
+
+        PublishingDungeon(Consumer<DungeonEvent> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void addRoom(Room room) {
+            super.addRoom(room);
+            sink.accept(new DungeonEvent.RoomAdded(room));
+        }
+
+        @Override
+        public void addCorridor(Corridor corridor) {
+            super.addCorridor(corridor);
+            sink.accept(new DungeonEvent.CorridorAdded(corridor));
+        }
+    }
 }
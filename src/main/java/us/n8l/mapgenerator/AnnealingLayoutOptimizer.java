@@ -0,0 +1,413 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Improves a room placement by simulated annealing before corridors are routed.
+ * <p>
+ * The objective combines the bounding-rectangle area, the estimated corridor length
+ * (Manhattan distance between room centres over every {@link Corridor} edge) and the
+ * overlap between rooms, where rooms closer than {@code gap} squares count as overlapping
+ * so that corridors still have room to pass. Moves are cheap: shift one room, swap two
+ * rooms' centres, or rotate a room by 90°. Only the terms touching the moved rooms are
+ * recomputed, so a move costs O(rooms + degree) instead of a full re-evaluation.
+ * <p>
+ * With more than one replica, the chains run as parallel tempering: each replica anneals
+ * at a fixed temperature on its own core, and neighbouring temperatures periodically
+ * exchange states. Results depend only on the seed.
+ * <p>
+ * Overlap is only a penalty while annealing, so the result is checked: the cheapest chain
+ * result in which no two rooms share a square is returned, or the initial layout if none is.
+ */
+public class AnnealingLayoutOptimizer {
+
+    private static final Logger LOG = Logger.getLogger(AnnealingLayoutOptimizer.class.getName());
+
+    public static final long DEFAULT_MOVES = 200_000;
+    public static final int DEFAULT_GAP = 3;
+
+    // Objective weights. Lengths are measured between doubled centres (2x + w), so
+    // LENGTH_WEIGHT 2 costs 4 per square of corridor; overlap must dominate everything.
+    private static final long AREA_WEIGHT = 1;
+    private static final long LENGTH_WEIGHT = 2;
+    private static final long OVERLAP_WEIGHT = 200;
+
+    private static final int MAX_SHIFT = 4;
+    private static final int MOVES_PER_EPOCH = 2_000;   // between temperature updates / replica exchanges
+    private static final double FINAL_TEMPERATURE_RATIO = 1e-3;
+
+    private final long seed;
+    private final long moves;
+    private final int replicas;
+    private final int gap;
+
+    public AnnealingLayoutOptimizer(long seed) {
+        this(seed, DEFAULT_MOVES, 1);
+    }
+
+    /**
+     * @param moves    total moves per replica
+     * @param replicas 1 for plain annealing, more for parallel tempering across cores
+     */
+    public AnnealingLayoutOptimizer(long seed, long moves, int replicas) {
+        this(seed, moves, replicas, DEFAULT_GAP);
+    }
+
+    public AnnealingLayoutOptimizer(long seed, long moves, int replicas, int gap) {
+        if (replicas < 1) {
+            throw new IllegalArgumentException("replicas must be >= 1, got " + replicas);
+        }
+        this.seed = seed;
+        this.moves = moves;
+        this.replicas = replicas;
+        this.gap = gap;
+    }
+
+    /**
+     * Returns an optimized copy of {@code initial}; the input is not modified. The result has no
+     * overlapping rooms unless {@code initial} does.
+     */
+    public RoomLayout optimize(RoomLayout initial, List<Corridor> corridors) {
+        if (initial.size() < 2) {
+            return initial.copy();
+        }
+        long startTime = System.currentTimeMillis();
+        int[][] adjacency = buildAdjacency(initial, corridors);
+        SplittableRandom master = new SplittableRandom(seed);
+
+        // Trial moves for the temperature run on a throwaway chain, so the real ones start from initial
+        double t0 = new State(initial, adjacency, gap, master.split()).estimateTemperature();
+        double t1 = t0 * FINAL_TEMPERATURE_RATIO;
+        State first = new State(initial, adjacency, gap, master.split());
+        long initialCost = first.cost;
+
+        State[] chains;
+        if (replicas == 1) {
+            chains = new State[]{anneal(first, t0, t1)};
+        } else {
+            chains = temper(first, initial, adjacency, master, t0, t1);
+        }
+
+        // Cheapest chain result without overlapping rooms
+        State best = null;
+        RoomLayout result = null;
+        for (State s : chains) {
+            if (best == null || s.bestCost < best.bestCost) {
+                RoomLayout layout = s.bestLayout(initial);
+                if (!layout.hasOverlap()) {
+                    best = s;
+                    result = layout;
+                }
+            }
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        String work = (moves * replicas) + " moves, " + replicas + " replica(s), "
+                      + (moves * replicas * 1000 / elapsed) + " moves/s";
+        if (result == null) {
+            LOG.warning("Layout optimization left rooms overlapping; keeping the initial layout (" + work + ")");
+            return initial.copy();
+        }
+        LOG.info("Layout optimized: cost " + initialCost + " -> " + best.bestCost + " (" + work + ")");
+        return result;
+    }
+
+    private State anneal(State chain, double t0, double t1) {
+        long epochs = Math.max(1, moves / MOVES_PER_EPOCH);
+        double cooling = Math.pow(t1 / t0, 1.0 / epochs);
+        double t = t0;
+        for (long e = 0; e < epochs; e++) {
+            chain.run(MOVES_PER_EPOCH, t);
+            t *= cooling;
+        }
+        return chain;
+    }
+
+    private State[] temper(State first, RoomLayout initial, int[][] adjacency,
+                         SplittableRandom master, double tMax, double tMin) {
+        State[] chains = new State[replicas];
+        double[] temps = new double[replicas];
+        chains[0] = first;
+        for (int r = 1; r < replicas; r++) {
+            chains[r] = new State(initial, adjacency, gap, master.split());
+        }
+        // Geometric ladder, coldest first
+        for (int r = 0; r < replicas; r++) {
+            temps[r] = tMin * Math.pow(tMax / tMin, (double) r / (replicas - 1));
+        }
+
+        long epochs = Math.max(1, moves / MOVES_PER_EPOCH);
+        for (long e = 0; e < epochs; e++) {
+            IntStream.range(0, replicas).parallel()
+                    .forEach(r -> chains[r].run(MOVES_PER_EPOCH, temps[r]));
+            // Exchange neighbouring replicas (Metropolis criterion on the swapped energies)
+            for (int r = 0; r + 1 < replicas; r++) {
+                double delta = (1.0 / temps[r] - 1.0 / temps[r + 1]) * (chains[r].cost - chains[r + 1].cost);
+                if (delta >= 0 || master.nextDouble() < Math.exp(delta)) {
+                    State tmp = chains[r];
+                    chains[r] = chains[r + 1];
+                    chains[r + 1] = tmp;
+                }
+            }
+        }
+        return chains;
+    }
+
+    private static int[][] buildAdjacency(RoomLayout layout, List<Corridor> corridors) {
+        Map<Integer, Integer> indexById = new HashMap<>();
+        for (int i = 0; i < layout.size(); i++) {
+            indexById.put(layout.getRoomId(i), i);
+        }
+        List<List<Integer>> lists = new ArrayList<>(layout.size());
+        for (int i = 0; i < layout.size(); i++) {
+            lists.add(new ArrayList<>());
+        }
+        for (Corridor c : corridors) {
+            if (c.getFromRoom() == null || c.getToRoom() == null) {
+                continue;
+            }
+            Integer a = indexById.get(c.getFromRoom().getId());
+            Integer b = indexById.get(c.getToRoom().getId());
+            if (a == null || b == null || a.equals(b)) {
+                continue;
+            }
+            lists.get(a).add(b);
+            lists.get(b).add(a);
+        }
+        int[][] adjacency = new int[layout.size()][];
+        for (int i = 0; i < adjacency.length; i++) {
+            adjacency[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return adjacency;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //                       ONE ANNEALING CHAIN
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private static final class State {
+        final int n;
+        final int[] x, y, w, h;
+        final int[][] adj;
+        final int gap;
+        final SplittableRandom rng;
+
+        int minX, minY, maxX, maxY; // exclusive max
+        long cost;
+
+        final int[] bestX, bestY, bestW, bestH;
+        long bestCost;
+
+        State(RoomLayout layout, int[][] adj, int gap, SplittableRandom rng) {
+            this.n = layout.size();
+            this.x = new int[n];
+            this.y = new int[n];
+            this.w = new int[n];
+            this.h = new int[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = layout.getX(i);
+                y[i] = layout.getY(i);
+                w[i] = layout.getWidth(i);
+                h[i] = layout.getHeight(i);
+            }
+            this.adj = adj;
+            this.gap = gap;
+            this.rng = rng;
+            recomputeBounds();
+            this.cost = fullCost();
+            this.bestX = x.clone();
+            this.bestY = y.clone();
+            this.bestW = w.clone();
+            this.bestH = h.clone();
+            this.bestCost = cost;
+        }
+
+        long fullCost() {
+            long length = 0, overlap = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j : adj[i]) {
+                    if (j > i) length += dist(i, j);
+                }
+                for (int k = i + 1; k < n; k++) {
+                    overlap += overlap(i, k);
+                }
+            }
+            return AREA_WEIGHT * area() + LENGTH_WEIGHT * length + OVERLAP_WEIGHT * overlap;
+        }
+
+        long area() {
+            return (long) (maxX - minX) * (maxY - minY);
+        }
+
+        int dist(int i, int j) {
+            return Math.abs((2 * x[i] + w[i]) - (2 * x[j] + w[j]))
+                   + Math.abs((2 * y[i] + h[i]) - (2 * y[j] + h[j]));
+        }
+
+        long overlap(int i, int k) {
+            int ox = Math.min(x[i] + w[i], x[k] + w[k]) + gap - Math.max(x[i], x[k]);
+            if (ox <= 0) return 0;
+            int oy = Math.min(y[i] + h[i], y[k] + h[k]) + gap - Math.max(y[i], y[k]);
+            if (oy <= 0) return 0;
+            return (long) ox * oy;
+        }
+
+        /** Cost terms involving room i (excluding area). */
+        long contribution(int i) {
+            long length = 0, overlap = 0;
+            for (int j : adj[i]) {
+                length += dist(i, j);
+            }
+            for (int k = 0; k < n; k++) {
+                if (k != i) overlap += overlap(i, k);
+            }
+            return LENGTH_WEIGHT * length + OVERLAP_WEIGHT * overlap;
+        }
+
+        /** Cost terms shared by rooms i and j (counted in both contributions). */
+        long pairTerm(int i, int j) {
+            long length = 0;
+            for (int k : adj[i]) {
+                if (k == j) length += dist(i, j);
+            }
+            return LENGTH_WEIGHT * length + OVERLAP_WEIGHT * overlap(i, j);
+        }
+
+        void recomputeBounds() {
+            minX = Integer.MAX_VALUE;
+            minY = Integer.MAX_VALUE;
+            maxX = Integer.MIN_VALUE;
+            maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                extendBounds(i);
+            }
+        }
+
+        void extendBounds(int i) {
+            if (x[i] < minX) minX = x[i];
+            if (y[i] < minY) minY = y[i];
+            if (x[i] + w[i] > maxX) maxX = x[i] + w[i];
+            if (y[i] + h[i] > maxY) maxY = y[i] + h[i];
+        }
+
+        boolean touchesBounds(int ox, int oy, int ow, int oh) {
+            return ox == minX || oy == minY || ox + ow == maxX || oy + oh == maxY;
+        }
+
+        /**
+         * Run a number of Metropolis moves at temperature t.
+         */
+        void run(int count, double t) {
+            for (int m = 0; m < count; m++) {
+                step(t);
+            }
+        }
+
+        /**
+         * Propose one move, apply it, and keep or undo it. Returns the cost delta
+         * if accepted, or 0 if rejected.
+         */
+        long step(double t) {
+            int kind = rng.nextInt(3);
+            int i = rng.nextInt(n);
+            int j = (kind == 1) ? rng.nextInt(n) : i;
+            if (kind == 1 && j == i) {
+                kind = 0;
+            }
+
+            long before = contribution(i);
+            if (j != i) {
+                before += contribution(j) - pairTerm(i, j);
+            }
+            long oldArea = area();
+            int oxI = x[i], oyI = y[i], owI = w[i], ohI = h[i];
+            int oxJ = x[j], oyJ = y[j], owJ = w[j], ohJ = h[j];
+            int bMinX = minX, bMinY = minY, bMaxX = maxX, bMaxY = maxY;
+
+            switch (kind) {
+                case 0 -> {
+                    // shift
+                    int dx = rng.nextInt(-MAX_SHIFT, MAX_SHIFT + 1);
+                    int dy = rng.nextInt(-MAX_SHIFT, MAX_SHIFT + 1);
+                    x[i] += dx;
+                    y[i] += dy;
+                }
+                case 1 -> {
+                    // swap centres
+                    x[i] = oxJ + (owJ - owI) / 2;
+                    y[i] = oyJ + (ohJ - ohI) / 2;
+                    x[j] = oxI + (owI - owJ) / 2;
+                    y[j] = oyI + (ohI - ohJ) / 2;
+                }
+                default -> {
+                    // rotate 90° about the centre
+                    w[i] = ohI;
+                    h[i] = owI;
+                    x[i] = oxI + (owI - ohI) / 2;
+                    y[i] = oyI + (ohI - owI) / 2;
+                }
+            }
+
+            if (touchesBounds(oxI, oyI, owI, ohI) || (j != i && touchesBounds(oxJ, oyJ, owJ, ohJ))) {
+                recomputeBounds();
+            } else {
+                extendBounds(i);
+                extendBounds(j);
+            }
+
+            long after = contribution(i);
+            if (j != i) {
+                after += contribution(j) - pairTerm(i, j);
+            }
+            long delta = (after - before) + AREA_WEIGHT * (area() - oldArea);
+
+            if (delta <= 0 || rng.nextDouble() < Math.exp(-delta / t)) {
+                cost += delta;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    System.arraycopy(x, 0, bestX, 0, n);
+                    System.arraycopy(y, 0, bestY, 0, n);
+                    System.arraycopy(w, 0, bestW, 0, n);
+                    System.arraycopy(h, 0, bestH, 0, n);
+                }
+                return delta;
+            }
+            // undo
+            x[i] = oxI; y[i] = oyI; w[i] = owI; h[i] = ohI;
+            x[j] = oxJ; y[j] = oyJ; w[j] = owJ; h[j] = ohJ;
+            minX = bMinX; minY = bMinY; maxX = bMaxX; maxY = bMaxY;
+            return 0;
+        }
+
+        /**
+         * Average uphill delta over a few random trial moves, used as the starting temperature.
+         * The moves are all kept, so call this on a chain that is thrown away afterwards.
+         */
+        double estimateTemperature() {
+            long sum = 0;
+            int count = 0;
+            for (int m = 0; m < 200; m++) {
+                long delta = step(Double.POSITIVE_INFINITY); // always accepted
+                if (delta > 0) {
+                    sum += delta;
+                    count++;
+                }
+            }
+            return (count == 0) ? 1.0 : (double) sum / count;
+        }
+
+        RoomLayout bestLayout(RoomLayout template) {
+            RoomLayout out = new RoomLayout(n);
+            for (int i = 0; i < n; i++) {
+                out.set(i, template.getRoomId(i), bestX[i], bestY[i], bestW[i], bestH[i]);
+            }
+            return out;
+        }
+    }
+}
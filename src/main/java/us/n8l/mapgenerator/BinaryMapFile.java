@@ -0,0 +1,439 @@
+package us.n8l.mapgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * A compact, versioned binary map format with memory-mapped random access.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   header   int magic "DMAP", short version, short flags,
+ *            int x, y, width, height (used bounds), int tileSize,
+ *            int roomCount, then per room: int id, UTF shape, UTF dimensions
+ *   tiles    row-major over the tile grid; each tile holds its squares row-major as a
+ *            type plane (1 byte per square, CellType ordinal) followed by a room-id
+ *            plane (4 bytes per square), deflated when FLAG_COMPRESSED is set
+ *   index    per tile: long offset (from the start of the map), int stored length
+ *   trailer  long index offset, int tile count, int magic
+ * </pre>
+ * The index and trailer come last so a map can be written in one sequential pass, to a
+ * file, a socket or the middle of an archive. Readers map the trailer, index and header
+ * up front and map or inflate individual tiles only when a square in them is queried,
+ * so opening a huge map is instant and only the tiles being rendered are paged in.
+ * JSON ({@link DungeonGridData}) remains the interchange format.
+ */
+public class BinaryMapFile implements CellGridView, Closeable {
+
+    public static final int MAGIC = 0x444D4150; // "DMAP"
+    public static final short VERSION = 1;
+    public static final short FLAG_COMPRESSED = 1;
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final int TRAILER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int MAX_CACHED_TILES = 256;
+    private static final GridCell.CellType[] TYPES = GridCell.CellType.values();
+
+    private final FileChannel channel;
+    private final boolean ownsChannel;
+    private final long base;
+
+    private final short flags;
+    private final Rectangle bounds;
+    private final int tileSize;
+    private final int tilesAcross;
+    private final List<RoomDto> rooms;
+    private final ByteBuffer index;
+
+    // Decoded tiles, least recently used first
+    private final Map<Integer, ByteBuffer> tileCache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ByteBuffer> eldest) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+    // The tile the last query landed in, read without taking the lock
+    private volatile LastTile lastTile;
+
+    private record LastTile(int tile, ByteBuffer buffer) {
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ WRITING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Writes the used area of {@code grid} plus the room table to a file.
+     */
+    public static void write(Path file, CellGridView grid, List<Room> rooms, boolean compress) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(out, grid, rooms, compress, DEFAULT_TILE_SIZE);
+        }
+    }
+
+    /**
+     * Writes a map to {@code out} in one sequential pass and returns the number of bytes
+     * written. {@code out} is flushed but not closed.
+     */
+    public static long write(OutputStream out, CellGridView grid, List<Room> rooms,
+                             boolean compress, int tileSize) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        DataOutputStream data = new DataOutputStream(counted);
+        Rectangle bounds = grid.getUsedBounds();
+
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeShort(compress ? FLAG_COMPRESSED : 0);
+        data.writeInt(bounds.x);
+        data.writeInt(bounds.y);
+        data.writeInt(bounds.width);
+        data.writeInt(bounds.height);
+        data.writeInt(tileSize);
+        data.writeInt(rooms.size());
+        for (Room r : rooms) {
+            data.writeInt(r.getId());
+            data.writeUTF(r.getShape() == null ? "" : r.getShape().name());
+            data.writeUTF(r.getDimensions() == null ? "" : r.getDimensions());
+        }
+
+        int tilesAcross = ceilDiv(bounds.width, tileSize);
+        int tilesDown = ceilDiv(bounds.height, tileSize);
+        int tileCount = tilesAcross * tilesDown;
+        long[] offsets = new long[tileCount];
+        int[] lengths = new int[tileCount];
+
+        byte[] raw = new byte[tileSize * tileSize * (1 + Integer.BYTES)];
+        ByteBuffer rawBuf = ByteBuffer.wrap(raw);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int t = 0; t < tileCount; t++) {
+                int rawLength = encodeTile(grid, bounds, tileSize, t % tilesAcross, t / tilesAcross, rawBuf);
+                data.flush();
+                offsets[t] = counted.count;
+                if (compress) {
+                    deflated.reset();
+                    deflater.reset();
+                    try (DeflaterOutputStream dos = new DeflaterOutputStream(deflated, deflater)) {
+                        dos.write(raw, 0, rawLength);
+                    }
+                    deflated.writeTo(data);
+                    lengths[t] = deflated.size();
+                } else {
+                    data.write(raw, 0, rawLength);
+                    lengths[t] = rawLength;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+
+        data.flush();
+        long indexOffset = counted.count;
+        for (int t = 0; t < tileCount; t++) {
+            data.writeLong(offsets[t]);
+            data.writeInt(lengths[t]);
+        }
+        data.writeLong(indexOffset);
+        data.writeInt(tileCount);
+        data.writeInt(MAGIC);
+        data.flush();
+        return counted.count;
+    }
+
+    /**
+     * Fills {@code buf} with one tile (type plane, then room-id plane) and returns its length.
+     */
+    private static int encodeTile(CellGridView grid, Rectangle bounds, int tileSize, int tx, int ty, ByteBuffer buf) {
+        int x0 = bounds.x + tx * tileSize;
+        int y0 = bounds.y + ty * tileSize;
+        int tw = Math.min(tileSize, bounds.x + bounds.width - x0);
+        int th = Math.min(tileSize, bounds.y + bounds.height - y0);
+        int squares = tw * th;
+        buf.clear();
+        for (int y = y0; y < y0 + th; y++) {
+            for (int x = x0; x < x0 + tw; x++) {
+                buf.put((byte) grid.getCellType(x, y).ordinal());
+            }
+        }
+        for (int y = y0; y < y0 + th; y++) {
+            for (int x = x0; x < x0 + tw; x++) {
+                buf.putInt(grid.getRoomId(x, y));
+            }
+        }
+        return squares * (1 + Integer.BYTES);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ READING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Opens a map file for random access. Close it to release the file.
+     */
+    public static BinaryMapFile open(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new BinaryMapFile(ch, true, 0, ch.size());
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a map stored at {@code [base, base + length)} of a channel shared with others
+     * (e.g. an archive). Closing the returned map leaves the channel open.
+     */
+    static BinaryMapFile open(FileChannel channel, long base, long length) throws IOException {
+        return new BinaryMapFile(channel, false, base, length);
+    }
+
+    private BinaryMapFile(FileChannel channel, boolean ownsChannel, long base, long length) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.base = base;
+        if (length < TRAILER_BYTES) {
+            throw new IOException("Not a binary map: too short");
+        }
+
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, base + length - TRAILER_BYTES, TRAILER_BYTES);
+        long indexOffset = trailer.getLong();
+        int tileCount = trailer.getInt();
+        if (trailer.getInt() != MAGIC) {
+            throw new IOException("Not a binary map: bad trailer");
+        }
+        this.index = channel.map(FileChannel.MapMode.READ_ONLY, base + indexOffset,
+                (long) tileCount * INDEX_ENTRY_BYTES);
+
+        // The header runs up to the first tile (or the index, for an empty map)
+        long headerLength = (tileCount > 0) ? index.getLong(0) : indexOffset;
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, base, headerLength);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a binary map: bad magic");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary map version " + version);
+        }
+        this.flags = header.getShort();
+        this.bounds = new Rectangle(header.getInt(), header.getInt(), header.getInt(), header.getInt());
+        this.tileSize = header.getInt();
+        this.tilesAcross = ceilDiv(bounds.width, tileSize);
+        int roomCount = header.getInt();
+        List<RoomDto> roomList = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            RoomDto rd = new RoomDto();
+            rd.id = header.getInt();
+            rd.shape = readUTF(header);
+            rd.dimensions = readUTF(header);
+            if (rd.shape.isEmpty()) {
+                rd.shape = null;
+            }
+            roomList.add(rd);
+        }
+        this.rooms = Collections.unmodifiableList(roomList);
+    }
+
+    /**
+     * The room table stored with the map.
+     */
+    public List<RoomDto> getRooms() {
+        return rooms;
+    }
+
+    public boolean isCompressed() {
+        return (flags & FLAG_COMPRESSED) != 0;
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        return bounds;
+    }
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        int i = squareIndex(x, y);
+        if (i < 0) {
+            return GridCell.CellType.EMPTY;
+        }
+        return TYPES[tileFor(x, y).get(i)];
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        int i = squareIndex(x, y);
+        if (i < 0) {
+            return 0;
+        }
+        ByteBuffer tile = tileFor(x, y);
+        int squares = tileWidth(x) * tileHeight(y);
+        return tile.getInt(squares + i * Integer.BYTES);
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>();
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            for (int x = bounds.x; x < bounds.x + bounds.width; x++) {
+                GridCell.CellType type = getCellType(x, y);
+                if (type != GridCell.CellType.EMPTY) {
+                    GridCell cell = new GridCell(x, y);
+                    cell.setCellType(type);
+                    cell.setRoomId(getRoomId(x, y));
+                    result.add(cell);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Index of (x, y) within its tile's planes, or -1 if outside the map. */
+    private int squareIndex(int x, int y) {
+        int col = x - bounds.x;
+        int row = y - bounds.y;
+        if (col < 0 || row < 0 || col >= bounds.width || row >= bounds.height) {
+            return -1;
+        }
+        return (row % tileSize) * tileWidth(x) + (col % tileSize);
+    }
+
+    private int tileWidth(int x) {
+        int x0 = bounds.x + ((x - bounds.x) / tileSize) * tileSize;
+        return Math.min(tileSize, bounds.x + bounds.width - x0);
+    }
+
+    private int tileHeight(int y) {
+        int y0 = bounds.y + ((y - bounds.y) / tileSize) * tileSize;
+        return Math.min(tileSize, bounds.y + bounds.height - y0);
+    }
+
+    private ByteBuffer tileFor(int x, int y) {
+        int tile = ((y - bounds.y) / tileSize) * tilesAcross + (x - bounds.x) / tileSize;
+        // Scans stay within one tile for many squares in a row; skip the lock and the LRU for them
+        LastTile last = lastTile;
+        if (last != null && last.tile() == tile) {
+            return last.buffer();
+        }
+        ByteBuffer buffer = loadTile(tile, tileWidth(x) * tileHeight(y) * (1 + Integer.BYTES));
+        lastTile = new LastTile(tile, buffer);
+        return buffer;
+    }
+
+    private synchronized ByteBuffer loadTile(int tile, int expectedLength) {
+        ByteBuffer cached = tileCache.get(tile);
+        if (cached != null) {
+            return cached;
+        }
+        long offset = index.getLong(tile * INDEX_ENTRY_BYTES);
+        int length = index.getInt(tile * INDEX_ENTRY_BYTES + Long.BYTES);
+        ByteBuffer decoded;
+        try {
+            MappedByteBuffer stored = channel.map(FileChannel.MapMode.READ_ONLY, base + offset, length);
+            if (isCompressed()) {
+                decoded = ByteBuffer.wrap(inflateTile(stored, expectedLength));
+            } else if (length != expectedLength) {
+                throw new DataFormatException("stored " + length + " bytes, expected " + expectedLength);
+            } else {
+                decoded = stored;
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Corrupt tile " + tile + " in binary map", e);
+        }
+        tileCache.put(tile, decoded);
+        return decoded;
+    }
+
+    /** Inflates one tile, which must come out at exactly {@code expectedLength} bytes. */
+    private static byte[] inflateTile(ByteBuffer stored, int expectedLength) throws DataFormatException {
+        byte[] raw = new byte[expectedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            int filled = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput() || inflater.needsDictionary()) {
+                    throw new DataFormatException("tile data ends after " + filled + " of " + expectedLength + " bytes");
+                }
+                if (filled < raw.length) {
+                    filled += inflater.inflate(raw, filled, raw.length - filled);
+                } else if (inflater.inflate(new byte[1]) > 0) {
+                    throw new DataFormatException("tile inflates to more than " + expectedLength + " bytes");
+                }
+            }
+            if (filled != raw.length) {
+                throw new DataFormatException("tile inflates to " + filled + " of " + expectedLength + " bytes");
+            }
+            if (inflater.getRemaining() != 0) {
+                throw new DataFormatException(inflater.getRemaining() + " stored bytes after the end of the tile");
+            }
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            tileCache.clear();
+            lastTile = null;
+        }
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ UTILS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /** Reads a string written by {@link DataOutputStream#writeUTF} (ASCII-compatible modified UTF-8). */
+    static String readUTF(ByteBuffer buf) {
+        int len = buf.getShort() & 0xFFFF;
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
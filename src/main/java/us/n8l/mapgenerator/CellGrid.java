@@ -0,0 +1,21 @@
+package us.n8l.mapgenerator;
+
+/**
+ * A writable grid, as used by the fitters while placing rooms and carving corridors.
+ */
+public interface CellGrid extends CellGridView {
+
+    void setCell(int x, int y, GridCell.CellType type, int roomId);
+
+    default void setCellType(int x, int y, GridCell.CellType type) {
+        setCell(x, y, type, getRoomId(x, y));
+    }
+
+    /**
+     * Whether (x, y) can be written. Unbounded grids accept anything; fixed-extent
+     * grids reject squares outside their extent, and searches treat those as solid rock.
+     */
+    default boolean isWritable(int x, int y) {
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package us.n8l.mapgenerator;
+
+import java.util.Collection;
+
+/**
+ * Read access to a fitted grid: the cell type and room id at any (x, y).
+ * Squares that were never written read as EMPTY with room id 0.
+ */
+public interface CellGridView {
+
+    GridCell.CellType getCellType(int x, int y);
+
+    /**
+     * Room id at (x, y), or 0 if the square is not part of a room.
+     */
+    int getRoomId(int x, int y);
+
+    /**
+     * Smallest rectangle covering every non-EMPTY square, or an empty rectangle.
+     */
+    Rectangle getUsedBounds();
+
+    /**
+     * Materializes the non-EMPTY squares as GridCell objects (for JSON export and
+     * other legacy consumers). Implementations backed by compact storage allocate
+     * one object per square here, so prefer point queries for large maps.
+     */
+    Collection<GridCell> toGridCells();
+}
@@ -0,0 +1,313 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * An effectively infinite dungeon, divided into square chunks that are generated and fitted
+ * on demand.
+ * <p>
+ * Each chunk is a small dungeon from {@link AdvancedDungeonGenerator}, seeded from
+ * (world seed, chunk x, chunk y) and fitted with {@link DungeonGridFitter} into the middle of
+ * the chunk. Every edge between two chunks has one door square, at an offset both neighbours
+ * derive from the edge alone; each chunk carves corridors from its four doors to its own
+ * dungeon, so adjacent chunks always join up without either having to exist first. A chunk
+ * therefore depends on nothing but its coordinates, and an evicted chunk comes back identical.
+ * <p>
+ * Generated chunks live in an LRU bounded by chunk count, so memory follows the working set.
+ * Room ids are local to a chunk: the 1-based position of the room in {@link Chunk#dungeon()}.
+ * {@link #getUsedBounds()} and {@link #toGridCells()} cover only the chunks currently cached.
+ * Thread-safe; two threads missing on the same chunk may both generate it.
+ */
+public class ChunkedWorld implements CellGridView {
+
+    private static final Logger LOG = Logger.getLogger(ChunkedWorld.class.getName());
+
+    public static final int DEFAULT_CHUNK_SIZE = 128;
+    public static final int DEFAULT_ROOMS_PER_CHUNK = 8;
+    public static final int DEFAULT_MAX_CHUNKS = 64;
+
+    // Squares kept clear between a chunk's fitted dungeon and its edges, and between doors and corners
+    private static final int MARGIN = 4;
+
+    private static final int[][] DELTAS = {{1,0},{-1,0},{0,1},{0,-1}};
+
+    /**
+     * One generated chunk, covering (cx * size, cy * size) to ((cx + 1) * size - 1, (cy + 1) * size - 1).
+     */
+    public record Chunk(int cx, int cy, long seed, Dungeon dungeon, DenseCellGrid grid) {
+    }
+
+    private final long worldSeed;
+    private final int chunkSize;
+    private final int roomsPerChunk;
+    private final int maxChunks;
+
+    // Shared by every chunk; fit() keeps no state between calls
+    private final DungeonGridFitter fitter = new DungeonGridFitter();
+
+    private final LinkedHashMap<Long, Chunk> chunks = new LinkedHashMap<>(64, 0.75f, true);
+    private long generated;
+
+    public ChunkedWorld(long worldSeed) {
+        this(worldSeed, DEFAULT_CHUNK_SIZE, DEFAULT_ROOMS_PER_CHUNK, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * @param chunkSize     width and height of a chunk in squares
+     * @param roomsPerChunk room budget of each chunk's dungeon (reduced for a chunk whose fit doesn't fit)
+     * @param maxChunks     chunks kept in memory before the least recently used is dropped
+     */
+    public ChunkedWorld(long worldSeed, int chunkSize, int roomsPerChunk, int maxChunks) {
+        if (chunkSize <= 4 * MARGIN) {
+            throw new IllegalArgumentException("chunkSize must be > " + 4 * MARGIN + ", got " + chunkSize);
+        }
+        if (maxChunks < 1) {
+            throw new IllegalArgumentException("maxChunks must be >= 1, got " + maxChunks);
+        }
+        this.worldSeed = worldSeed;
+        this.chunkSize = chunkSize;
+        this.roomsPerChunk = roomsPerChunk;
+        this.maxChunks = maxChunks;
+    }
+
+    public long getWorldSeed() {
+        return worldSeed;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * The chunk at chunk coordinates (cx, cy), generating it if it isn't cached.
+     */
+    public Chunk getChunk(int cx, int cy) {
+        Long key = key(cx, cy);
+        synchronized (chunks) {
+            Chunk cached = chunks.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Generate outside the lock so other chunks can still be read meanwhile
+        Chunk chunk = generateChunk(cx, cy);
+        synchronized (chunks) {
+            Chunk raced = chunks.putIfAbsent(key, chunk);
+            if (raced != null) {
+                return raced;
+            }
+            generated++;
+            Iterator<Map.Entry<Long, Chunk>> it = chunks.entrySet().iterator();
+            while (chunks.size() > maxChunks) {
+                it.next();
+                it.remove();
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * The chunk containing square (x, y).
+     */
+    public Chunk chunkAt(int x, int y) {
+        return getChunk(Math.floorDiv(x, chunkSize), Math.floorDiv(y, chunkSize));
+    }
+
+    /**
+     * Number of chunks currently held in memory.
+     */
+    public int cachedChunks() {
+        synchronized (chunks) {
+            return chunks.size();
+        }
+    }
+
+    /**
+     * Number of chunks generated so far, counting regenerations of evicted chunks.
+     */
+    public long generatedChunks() {
+        synchronized (chunks) {
+            return generated;
+        }
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ CellGridView ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        return chunkAt(x, y).grid().getCellType(x, y);
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        return chunkAt(x, y).grid().getRoomId(x, y);
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Chunk c : snapshot()) {
+            Rectangle r = c.grid().getUsedBounds();
+            if (r.width == 0) {
+                continue;
+            }
+            minX = Math.min(minX, r.x);
+            minY = Math.min(minY, r.y);
+            maxX = Math.max(maxX, r.x + r.width - 1);
+            maxY = Math.max(maxY, r.y + r.height - 1);
+        }
+        if (minX > maxX) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>();
+        for (Chunk c : snapshot()) {
+            result.addAll(c.grid().toGridCells());
+        }
+        return result;
+    }
+
+    private List<Chunk> snapshot() {
+        synchronized (chunks) {
+            return new ArrayList<>(chunks.values());
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ GENERATION ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private Chunk generateChunk(int cx, int cy) {
+        long start = System.nanoTime();
+        long seed = mix(worldSeed ^ mix(key(cx, cy)));
+        Rectangle extent = new Rectangle(cx * chunkSize, cy * chunkSize, chunkSize, chunkSize);
+        DenseCellGrid grid = new DenseCellGrid(extent);
+
+        // Fit with the full budget, shrinking it until the layout fits inside the margins
+        Dungeon dungeon = new Dungeon();
+        for (int rooms = roomsPerChunk; rooms >= 1; rooms /= 2) {
+            Dungeon candidate = new AdvancedDungeonGenerator(seed, rooms).generateDungeon();
+            FitResult fit = fitter.fit(candidate);
+            Rectangle used = fit.getBounds();
+            if (used.width <= chunkSize - 2 * MARGIN && used.height <= chunkSize - 2 * MARGIN) {
+                dungeon = candidate;
+                copyCentred(fit, used, candidate, grid, extent);
+                break;
+            }
+        }
+        if (dungeon.getRooms().isEmpty()) {
+            // Nothing fit: leave a junction in the middle for the doors to meet at
+            grid.setCell(extent.x + chunkSize / 2, extent.y + chunkSize / 2, GridCell.CellType.CORRIDOR, 0);
+        }
+
+        // North, east, south, west: doors on the shared edges, carved inwards
+        carveFromDoor(grid, extent.x + edgeOffset(cx, cy, false), extent.y);
+        carveFromDoor(grid, extent.x + chunkSize - 1, extent.y + edgeOffset(cx + 1, cy, true));
+        carveFromDoor(grid, extent.x + edgeOffset(cx, cy + 1, false), extent.y + chunkSize - 1);
+        carveFromDoor(grid, extent.x, extent.y + edgeOffset(cx, cy, true));
+
+        LOG.fine("Generated chunk (" + cx + "," + cy + ") with " + dungeon.getRooms().size() + " rooms in "
+                 + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return new Chunk(cx, cy, seed, dungeon, grid);
+    }
+
+    /**
+     * Copies a fitted layout into the middle of the chunk, replacing room ids with room positions.
+     */
+    private static void copyCentred(CellGridView fitted, Rectangle used, Dungeon dungeon,
+                                    DenseCellGrid grid, Rectangle extent) {
+        Map<Integer, Integer> positions = new HashMap<>();
+        List<Room> rooms = dungeon.getRooms();
+        for (int i = 0; i < rooms.size(); i++) {
+            positions.put(rooms.get(i).getId(), i + 1);
+        }
+        int dx = extent.x + (extent.width - used.width) / 2 - used.x;
+        int dy = extent.y + (extent.height - used.height) / 2 - used.y;
+        for (int y = used.y; y < used.y + used.height; y++) {
+            for (int x = used.x; x < used.x + used.width; x++) {
+                GridCell.CellType type = fitted.getCellType(x, y);
+                if (type != GridCell.CellType.EMPTY) {
+                    grid.setCell(x + dx, y + dy, type, positions.getOrDefault(fitted.getRoomId(x, y), 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Offset along an edge of its door. A vertical edge is the west edge of chunk (cx, cy), a
+     * horizontal one its north edge, so both chunks sharing an edge name it the same way.
+     */
+    private int edgeOffset(int cx, int cy, boolean vertical) {
+        long h = mix(worldSeed + mix(key(cx, cy) ^ (vertical ? 0x5851F42D4C957F2DL : 0L)));
+        return MARGIN + (int) Math.floorMod(h, (long) (chunkSize - 2 * MARGIN));
+    }
+
+    /**
+     * Carves the shortest corridor from a door square on the chunk's edge to the nearest square
+     * already in use, staying off the edges otherwise.
+     */
+    private void carveFromDoor(DenseCellGrid grid, int doorX, int doorY) {
+        if (grid.getCellType(doorX, doorY) != GridCell.CellType.EMPTY) {
+            return;
+        }
+        Rectangle extent = grid.getExtent();
+        int w = extent.width;
+        int[] parent = new int[w * extent.height];
+        Arrays.fill(parent, -1);
+        int startIndex = (doorY - extent.y) * w + (doorX - extent.x);
+        parent[startIndex] = startIndex;
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(startIndex);
+        while (!queue.isEmpty()) {
+            int index = queue.poll();
+            int x = extent.x + index % w;
+            int y = extent.y + index / w;
+            for (int[] d : DELTAS) {
+                int nx = x + d[0];
+                int ny = y + d[1];
+                if (nx <= extent.x || ny <= extent.y || nx >= extent.x + w - 1 || ny >= extent.y + extent.height - 1) {
+                    continue; // edges belong to the doors
+                }
+                int next = (ny - extent.y) * w + (nx - extent.x);
+                if (parent[next] >= 0) {
+                    continue;
+                }
+                parent[next] = index;
+                if (grid.getCellType(nx, ny) != GridCell.CellType.EMPTY) {
+                    // Reached the dungeon: carve back to the door
+                    for (int at = index; ; at = parent[at]) {
+                        grid.setCell(extent.x + at % w, extent.y + at / w, GridCell.CellType.CORRIDOR, 0);
+                        if (at == startIndex) {
+                            return;
+                        }
+                    }
+                }
+                queue.add(next);
+            }
+        }
+        LOG.warning("Door at (" + doorX + "," + doorY + ") found nothing to connect to");
+    }
+
+    /** SplitMix64 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,324 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Checks that a fitted layout is actually connected: every placed room reachable from the
+ * others over room and corridor squares, and every corridor joining its two rooms.
+ * <p>
+ * Reachability can hide a corridor the fitter failed to route when its rooms connect some
+ * other way, so when the fit's corridor routes are known (a {@link FitResult}) corridors
+ * between two different rooms that got no route are reported on their own.
+ * <p>
+ * Fitters skip corridors they cannot route, and overlapping rooms can wall areas off, so a
+ * batch job should validate before accepting a map. Walkable squares are labelled in one
+ * row-major pass with union-find over horizontal runs: each run of walkable squares in a row
+ * is joined to the runs it touches in the row above. Rows are read 64 squares per word from
+ * the {@link FittedMap} layers, so the cost grows with the number of runs rather than squares,
+ * and a multi-million-square map validates in milliseconds.
+ */
+public class ConnectivityValidator {
+
+    private static final Logger LOG = Logger.getLogger(ConnectivityValidator.class.getName());
+
+    /**
+     * The outcome of a validation.
+     *
+     * @param components        connected areas of walkable squares
+     * @param unreachableRooms  placed rooms outside the area holding the most rooms
+     * @param unplacedRooms     rooms of the dungeon with no squares on the map
+     * @param brokenCorridors   corridors whose two rooms are placed but not connected
+     * @param unroutedCorridors corridors between two different rooms that the fitter did not
+     *                          route, whether or not their rooms connect otherwise; empty when
+     *                          the routes aren't known
+     */
+    public record Report(int components, List<Room> unreachableRooms, List<Room> unplacedRooms,
+                         List<Corridor> brokenCorridors, List<Corridor> unroutedCorridors) {
+
+        /**
+         * Whether every room is placed and reachable and every corridor was routed and joins its rooms.
+         */
+        public boolean isConnected() {
+            return unreachableRooms.isEmpty() && unplacedRooms.isEmpty() && brokenCorridors.isEmpty()
+                   && unroutedCorridors.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "ConnectivityReport[components=" + components
+                   + ", unreachable=" + ids(unreachableRooms) + ", unplaced=" + ids(unplacedRooms)
+                   + ", brokenCorridors=" + brokenCorridors.size()
+                   + ", unroutedCorridors=" + unroutedCorridors.size() + "]";
+        }
+
+        private static List<Integer> ids(List<Room> rooms) {
+            List<Integer> ids = new ArrayList<>(rooms.size());
+            for (Room r : rooms) {
+                ids.add(r.getId());
+            }
+            return ids;
+        }
+    }
+
+    private ConnectivityValidator() {
+    }
+
+    /**
+     * Validates a fit, including which of {@code dungeon}'s corridors it left unrouted.
+     */
+    public static Report validate(FitResult fit, Dungeon dungeon) {
+        return validate(fit.getMap(), dungeon, fit.getCorridorPaths());
+    }
+
+    /**
+     * Validates any grid, snapshotting it first unless it is already a {@link FittedMap}.
+     */
+    public static Report validate(CellGridView grid, Dungeon dungeon) {
+        if (grid instanceof FitResult fit) {
+            return validate(fit, dungeon);
+        }
+        return validate((grid instanceof FittedMap map) ? map : FittedMap.of(grid), dungeon);
+    }
+
+    /**
+     * Validates a bare map; without routes, unrouted corridors are only seen if they leave
+     * their rooms disconnected.
+     */
+    public static Report validate(FittedMap map, Dungeon dungeon) {
+        return validate(map, dungeon, Map.of());
+    }
+
+    private static Report validate(FittedMap map, Dungeon dungeon, Map<Corridor, CorridorPath> paths) {
+        long start = System.nanoTime();
+        Runs runs = label(map);
+
+        // Find each placed room's component through any one of its squares
+        Map<Room, Integer> roots = new HashMap<>();
+        List<Room> unplaced = new ArrayList<>();
+        Map<Integer, Integer> roomsPerRoot = new HashMap<>();
+        for (Room room : dungeon.getRooms()) {
+            Rectangle box = map.getRoomBounds(room.getId());
+            int root = (box == null) ? -1 : runs.rootAt(firstSquareX(map, room.getId(), box), box.y);
+            if (root < 0) {
+                unplaced.add(room);
+                continue;
+            }
+            roots.put(room, root);
+            roomsPerRoot.merge(root, 1, Integer::sum);
+        }
+
+        // The main area holds the most rooms; ties go to the area of the earliest room
+        int mainRoot = -1;
+        int mainRooms = 0;
+        for (Room room : dungeon.getRooms()) {
+            Integer root = roots.get(room);
+            if (root != null && roomsPerRoot.get(root) > mainRooms) {
+                mainRoot = root;
+                mainRooms = roomsPerRoot.get(root);
+            }
+        }
+
+        List<Room> unreachable = new ArrayList<>();
+        for (Room room : dungeon.getRooms()) {
+            Integer root = roots.get(room);
+            if (root != null && root != mainRoot) {
+                unreachable.add(room);
+            }
+        }
+        List<Corridor> broken = new ArrayList<>();
+        for (Corridor c : dungeon.getCorridors()) {
+            Integer from = (c.getFromRoom() == null) ? null : roots.get(c.getFromRoom());
+            Integer to = (c.getToRoom() == null) ? null : roots.get(c.getToRoom());
+            if (from != null && to != null && !from.equals(to)) {
+                broken.add(c);
+            }
+        }
+
+        // A fitter that keeps routes has one for every corridor it was given, EMPTY if it failed
+        List<Corridor> unrouted = new ArrayList<>();
+        if (!paths.isEmpty()) {
+            for (Corridor c : dungeon.getCorridors()) {
+                if (c.getFromRoom() != null && c.getToRoom() != null && c.getFromRoom() != c.getToRoom()
+                        && paths.getOrDefault(c, CorridorPath.EMPTY).isEmpty()) {
+                    unrouted.add(c);
+                }
+            }
+        }
+
+        Report report = new Report(runs.components(), Collections.unmodifiableList(unreachable),
+                Collections.unmodifiableList(unplaced), Collections.unmodifiableList(broken),
+                Collections.unmodifiableList(unrouted));
+        LOG.fine("Validated " + map.getUsedBounds().width + "x" + map.getUsedBounds().height + " map ("
+                 + runs.count + " runs) in " + (System.nanoTime() - start) / 1_000 + " us: " + report);
+        return report;
+    }
+
+    /** Leftmost square of the room's top row. */
+    private static int firstSquareX(FittedMap map, int roomId, Rectangle box) {
+        for (int x = box.x; x < box.x + box.width; x++) {
+            if (map.getRoomId(x, box.y) == roomId && map.getCellType(x, box.y) == GridCell.CellType.ROOM) {
+                return x;
+            }
+        }
+        return box.x; // unreachable: the box is built from the room's own squares
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ LABELLING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Splits every row into runs of walkable squares and unions vertically touching runs.
+     */
+    private static Runs label(FittedMap map) {
+        Rectangle bounds = map.getUsedBounds();
+        FittedMap.Layer rooms = map.layer(GridCell.CellType.ROOM);
+        FittedMap.Layer corridors = map.layer(GridCell.CellType.CORRIDOR);
+        long[] roomWords = rooms.words();
+        long[] corridorWords = corridors.words();
+        int wordsPerRow = rooms.wordsPerRow();
+
+        Runs runs = new Runs(bounds);
+        for (int row = 0; row < bounds.height; row++) {
+            runs.rowStart[row] = runs.count;
+            int base = row * wordsPerRow;
+            int runStart = -1;
+            for (int w = 0; w < wordsPerRow; w++) {
+                long word = roomWords[base + w] | corridorWords[base + w];
+                // Walk the word's 0->1 and 1->0 edges instead of its squares
+                int bit = 0;
+                while (bit < 64) {
+                    if (runStart < 0) {
+                        long ones = word >>> bit;
+                        if (ones == 0) {
+                            break;
+                        }
+                        bit += Long.numberOfTrailingZeros(ones);
+                        runStart = (w << 6) + bit;
+                    } else {
+                        long zeros = ~word >>> bit;
+                        if (zeros == 0) {
+                            break; // the run continues into the next word
+                        }
+                        bit += Long.numberOfTrailingZeros(zeros);
+                        runs.add(runStart, (w << 6) + bit);
+                        runStart = -1;
+                    }
+                }
+            }
+            if (runStart >= 0) {
+                runs.add(runStart, bounds.width);
+            }
+            if (row > 0) {
+                runs.unionWithRowAbove(row);
+            }
+        }
+        runs.rowStart[bounds.height] = runs.count;
+        return runs;
+    }
+
+    /**
+     * Runs of walkable squares as [start, end) columns, numbered in row-major order, with a
+     * union-find forest over the run numbers.
+     */
+    private static final class Runs {
+        final Rectangle bounds;
+        final int[] rowStart;  // first run of each row; rowStart[height] = total
+        int[] starts = new int[1024];
+        int[] ends = new int[1024];
+        int[] parent = new int[1024];
+        int count;
+
+        Runs(Rectangle bounds) {
+            this.bounds = bounds;
+            this.rowStart = new int[bounds.height + 1];
+        }
+
+        void add(int start, int end) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                parent = Arrays.copyOf(parent, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            parent[count] = count;
+            count++;
+        }
+
+        /** Two-pointer sweep over this row's runs and the row above's; 4-connected overlap only. */
+        void unionWithRowAbove(int row) {
+            int a = rowStart[row - 1];
+            int aEnd = rowStart[row];
+            int b = rowStart[row];
+            int bEnd = count;
+            while (a < aEnd && b < bEnd) {
+                if (starts[a] < ends[b] && starts[b] < ends[a]) {
+                    union(a, b);
+                }
+                if (ends[a] < ends[b]) {
+                    a++;
+                } else {
+                    b++;
+                }
+            }
+        }
+
+        int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]]; // path halving
+                i = parent[i];
+            }
+            return i;
+        }
+
+        void union(int i, int j) {
+            int ri = find(i);
+            int rj = find(j);
+            if (ri != rj) {
+                // Keep the older run as root, so roots are stable in row-major order
+                if (ri < rj) {
+                    parent[rj] = ri;
+                } else {
+                    parent[ri] = rj;
+                }
+            }
+        }
+
+        /** Root of the run covering (x, y), or -1 if the square isn't walkable. */
+        int rootAt(int x, int y) {
+            int row = y - bounds.y;
+            int col = x - bounds.x;
+            if (row < 0 || row >= bounds.height) {
+                return -1;
+            }
+            int lo = rowStart[row];
+            int hi = rowStart[row + 1] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ends[mid] <= col) {
+                    lo = mid + 1;
+                } else if (starts[mid] > col) {
+                    hi = mid - 1;
+                } else {
+                    return find(mid);
+                }
+            }
+            return -1;
+        }
+
+        int components() {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (parent[i] == i) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+}
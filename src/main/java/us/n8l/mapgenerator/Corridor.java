@@ -1,18 +1,147 @@
 package us.n8l.mapgenerator;
 
+/**
+ * A passage between two rooms (either may be null for dead ends and the like).
+ * <p>
+ * Generated corridors keep what was rolled for them as typed fields: their {@link Kind} plus the
+ * door location, side passage direction, turn, stairs, width or angle that kind uses. The
+ * description is formatted from these only when asked for, so corridors share no per-instance
+ * text. Corridors built from free text (the four- and five-argument constructors) are
+ * {@link Kind#CUSTOM} and keep that text.
+ */
 public class Corridor {
+
+    /**
+     * What a corridor is, with the fixed part of its description.
+     */
+    public enum Kind {
+        STRAIGHT("Continue straight"),
+        TURN(null),
+        SIDE_PASSAGE(null),
+        DOOR_PARALLEL_PASSAGE(" -> parallel passage"),
+        DOOR_SMALL_ROOM(" -> small 10x10 room"),
+        DOOR_PASSAGE_STRAIGHT(" -> passage straight"),
+        DOOR_PASSAGE_ANGLED(null),
+        DOOR_ROOM(" -> Room (Table V)"),
+        DOOR_CHAMBER(" -> Chamber (Table V)"),
+        TO_CHAMBER("To Chamber"),
+        STAIRS(null),
+        STAIRS_TO_CHAMBER("End of stairs -> Chamber"),
+        DEAD_END("Dead end here"),
+        TRAP("Trap in passage - continues"),
+        TRAP_END("Trap corridor ends here"),
+        WANDERING_MONSTER("Wandering monster encountered"),
+        CUSTOM(null);
+
+        private final String text;
+
+        Kind(String text) {
+            this.text = text;
+        }
+
+        public boolean isDoor() {
+            return name().startsWith("DOOR_");
+        }
+    }
+
     private final Room fromRoom;
     private final Room toRoom;
     private final int lengthFeet; // how many feet is this corridor?
-    private final String description; // e.g. “turn left 90°,” “stairs up 1 level,” etc.
+    private final Kind kind;
+    private final DoorLocation doorLocation;           // door kinds only
+    private final SidePassageDirection sideDirection;  // side passages only
+    private final TurnType turnType;                   // turns only
+    private final StairsType stairsType;               // null unless the corridor is a stairway
+    private final int widthFeet;                       // 0 unless rolled (turns, side passages)
+    private final int angleDegrees;                    // angled door passages only
+    private final String customDescription;            // CUSTOM only
 
     public Corridor(Room fromRoom, Room toRoom, int lengthFeet, String description) {
+        this(fromRoom, toRoom, lengthFeet, description, null);
+    }
+
+    public Corridor(Room fromRoom, Room toRoom, int lengthFeet, String description, StairsType stairsType) {
+        this(fromRoom, toRoom, lengthFeet, Kind.CUSTOM, null, null, null, stairsType, 0, 0, description);
+    }
+
+    private Corridor(Room fromRoom, Room toRoom, int lengthFeet, Kind kind, DoorLocation doorLocation,
+                     SidePassageDirection sideDirection, TurnType turnType, StairsType stairsType,
+                     int widthFeet, int angleDegrees, String customDescription) {
         this.fromRoom = fromRoom;
         this.toRoom = toRoom;
         this.lengthFeet = lengthFeet;
-        this.description = description;
+        this.kind = kind;
+        this.doorLocation = doorLocation;
+        this.sideDirection = sideDirection;
+        this.turnType = turnType;
+        this.stairsType = stairsType;
+        this.widthFeet = widthFeet;
+        this.angleDegrees = angleDegrees;
+        this.customDescription = customDescription;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ FACTORIES ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * A corridor of a kind that needs no further details, e.g. {@link Kind#DEAD_END}.
+     */
+    public static Corridor of(Room fromRoom, Room toRoom, int lengthFeet, Kind kind) {
+        switch (kind) {
+            case TURN, SIDE_PASSAGE, DOOR_PASSAGE_ANGLED, STAIRS, CUSTOM ->
+                    throw new IllegalArgumentException(kind + " needs details; use its own factory");
+            default -> {
+                if (kind.isDoor()) {
+                    throw new IllegalArgumentException(kind + " needs a door location; use door()");
+                }
+            }
+        }
+        return new Corridor(fromRoom, toRoom, lengthFeet, kind, null, null, null, null, 0, 0, null);
+    }
+
+    /**
+     * A corridor through a door; {@code beyond} is one of the DOOR_ kinds other than
+     * {@link Kind#DOOR_PASSAGE_ANGLED}.
+     */
+    public static Corridor door(Room fromRoom, Room toRoom, int lengthFeet, DoorLocation location, Kind beyond) {
+        if (!beyond.isDoor() || beyond == Kind.DOOR_PASSAGE_ANGLED) {
+            throw new IllegalArgumentException("Not a plain door kind: " + beyond);
+        }
+        return new Corridor(fromRoom, toRoom, lengthFeet, beyond, location, null, null, null, 0, 0, null);
+    }
+
+    /**
+     * A door opening onto a passage that leaves at {@code angleDegrees} (45 or 135).
+     */
+    public static Corridor angledDoor(Room fromRoom, Room toRoom, int lengthFeet, DoorLocation location,
+                                      int angleDegrees) {
+        return new Corridor(fromRoom, toRoom, lengthFeet, Kind.DOOR_PASSAGE_ANGLED, location, null, null, null,
+                0, angleDegrees, null);
+    }
+
+    public static Corridor turn(Room fromRoom, Room toRoom, int lengthFeet, TurnType turnType, int widthFeet) {
+        return new Corridor(fromRoom, toRoom, lengthFeet, Kind.TURN, null, null, turnType, null, widthFeet, 0, null);
+    }
+
+    public static Corridor sidePassage(Room fromRoom, Room toRoom, int lengthFeet, SidePassageDirection direction,
+                                       int widthFeet) {
+        return new Corridor(fromRoom, toRoom, lengthFeet, Kind.SIDE_PASSAGE, null, direction, null, null,
+                widthFeet, 0, null);
+    }
+
+    public static Corridor stairs(Room fromRoom, Room toRoom, int lengthFeet, StairsType stairsType) {
+        return new Corridor(fromRoom, toRoom, lengthFeet, Kind.STAIRS, null, null, null, stairsType, 0, 0, null);
+    }
+
+    /**
+     * The same corridor between other rooms.
+     */
+    public Corridor withRooms(Room fromRoom, Room toRoom) {
+        return new Corridor(fromRoom, toRoom, lengthFeet, kind, doorLocation, sideDirection, turnType, stairsType,
+                widthFeet, angleDegrees, customDescription);
     }
 
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ ACCESSORS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
     public Room getFromRoom() {
         return fromRoom;
     }
@@ -25,8 +154,61 @@ public class Corridor {
         return lengthFeet;
     }
 
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Where the door is, or null if the corridor is not through a door.
+     */
+    public DoorLocation getDoorLocation() {
+        return doorLocation;
+    }
+
+    /**
+     * How the side passage leaves, or null if the corridor is not a side passage.
+     */
+    public SidePassageDirection getSidePassageDirection() {
+        return sideDirection;
+    }
+
+    /**
+     * The turn taken, or null if the corridor is not a turn.
+     */
+    public TurnType getTurnType() {
+        return turnType;
+    }
+
+    public StairsType getStairsType() {
+        return stairsType;
+    }
+
+    /**
+     * Passage width in feet, or 0 if none was rolled.
+     */
+    public int getWidthFeet() {
+        return widthFeet;
+    }
+
+    /**
+     * Angle of an angled door passage in degrees, otherwise 0.
+     */
+    public int getAngleDegrees() {
+        return angleDegrees;
+    }
+
+    /**
+     * A readable description, e.g. "Door at LEFT -> angled 45° passage", formatted on each call.
+     */
     public String getDescription() {
-        return description;
+        return switch (kind) {
+            case TURN -> widthFeet + " ft wide, " + turnType.getDescription();
+            case SIDE_PASSAGE -> "Side passage " + sideDirection + ", " + widthFeet + " ft wide";
+            case DOOR_PASSAGE_ANGLED -> "Door at " + doorLocation + " -> angled " + angleDegrees + "° passage";
+            case STAIRS -> "Stairs: " + stairsType.getDescription();
+            case CUSTOM -> customDescription;
+            default -> kind.isDoor() ? "Door at " + doorLocation + kind.text : kind.text;
+        };
     }
 
     @Override
@@ -34,6 +216,6 @@ public class Corridor {
         String fromId = (fromRoom == null) ? "None" : ("Room#" + fromRoom.getId());
         String toId   = (toRoom   == null) ? "None" : ("Room#" + toRoom.getId());
         return "Corridor [" + fromId + " -> " + toId
-               + ", length=" + lengthFeet + " ft, " + description + "]";
+               + ", length=" + lengthFeet + " ft, " + getDescription() + "]";
     }
 }
@@ -0,0 +1,297 @@
+package us.n8l.mapgenerator;
+
+import java.awt.Point;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The route of one fitted corridor as a run-length polyline: a start square plus straight runs,
+ * each a direction and a number of squares. A straight corridor of any length is one run, so a
+ * path costs a few ints per bend instead of a {@link Point} per square.
+ * <p>
+ * Squares are produced on demand ({@link #forEachSquare}, {@link #toPoints}); length, bends and
+ * end points are answered from the runs. Immutable.
+ */
+public final class CorridorPath {
+
+    /** A corridor that was skipped or could not be routed. */
+    public static final CorridorPath EMPTY = new CorridorPath(0, 0, new int[0], 0);
+
+    // Directions, clockwise in screen coordinates (y down): east, south, west, north
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+
+    private final int startX;
+    private final int startY;
+    private final int[] runs;  // (squares << 2) | direction
+    private final int length;  // squares, including the start
+    private final int endX;
+    private final int endY;
+
+    private CorridorPath(int startX, int startY, int[] runs, int length) {
+        this.startX = startX;
+        this.startY = startY;
+        this.runs = runs;
+        this.length = length;
+        int x = startX;
+        int y = startY;
+        for (int run : runs) {
+            x += DX[run & 3] * (run >>> 2);
+            y += DY[run & 3] * (run >>> 2);
+        }
+        this.endX = x;
+        this.endY = y;
+    }
+
+    /**
+     * Compresses a path of squares, each a 4-neighbour of the one before, as the fitters'
+     * searches return them. An empty list gives {@link #EMPTY}.
+     */
+    public static CorridorPath of(List<Point> path) {
+        if (path.isEmpty()) {
+            return EMPTY;
+        }
+        int[] runs = new int[4];
+        int count = 0;
+        Point prev = path.get(0);
+        for (int i = 1; i < path.size(); i++) {
+            Point p = path.get(i);
+            int dir = directionOf(p.x - prev.x, p.y - prev.y);
+            if (dir < 0) {
+                throw new IllegalArgumentException("Not a 4-connected path: " + prev + " -> " + p);
+            }
+            if (count > 0 && (runs[count - 1] & 3) == dir) {
+                runs[count - 1] += 1 << 2;
+            } else {
+                if (count == runs.length) {
+                    runs = Arrays.copyOf(runs, count * 2);
+                }
+                runs[count++] = (1 << 2) | dir;
+            }
+            prev = p;
+        }
+        Point start = path.get(0);
+        return new CorridorPath(start.x, start.y, Arrays.copyOf(runs, count), path.size());
+    }
+
+    private static int directionOf(int dx, int dy) {
+        for (int dir = 0; dir < 4; dir++) {
+            if (DX[dir] == dx && DY[dir] == dy) {
+                return dir;
+            }
+        }
+        return -1;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ QUERIES ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Number of squares the corridor runs over, both ends included.
+     */
+    public int length() {
+        return length;
+    }
+
+    public int runCount() {
+        return runs.length;
+    }
+
+    /**
+     * Number of 90-degree turns along the path.
+     */
+    public int bends() {
+        return Math.max(0, runs.length - 1);
+    }
+
+    /** Step along x of run {@code i}: -1, 0 or 1. */
+    public int runDx(int i) {
+        return DX[runs[i] & 3];
+    }
+
+    /** Step along y of run {@code i}: -1, 0 or 1. */
+    public int runDy(int i) {
+        return DY[runs[i] & 3];
+    }
+
+    /** Squares in run {@code i}, not counting the one it starts from. */
+    public int runLength(int i) {
+        return runs[i] >>> 2;
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    public int getEndX() {
+        return endX;
+    }
+
+    public int getEndY() {
+        return endY;
+    }
+
+    /**
+     * Whether the path runs over square (x, y). Checks each run, not each square.
+     */
+    public boolean contains(int x, int y) {
+        if (isEmpty()) {
+            return false;
+        }
+        if (x == startX && y == startY) {
+            return true;
+        }
+        int cx = startX;
+        int cy = startY;
+        for (int run : runs) {
+            int n = run >>> 2;
+            int nx = cx + DX[run & 3] * n;
+            int ny = cy + DY[run & 3] * n;
+            if (Math.min(cx, nx) <= x && x <= Math.max(cx, nx) && Math.min(cy, ny) <= y && y <= Math.max(cy, ny)) {
+                return true;
+            }
+            cx = nx;
+            cy = ny;
+        }
+        return false;
+    }
+
+    /**
+     * Whether any square of the path lies inside {@code rect}. Checks each run, not each square.
+     */
+    public boolean intersects(Rectangle rect) {
+        if (isEmpty() || rect.width <= 0 || rect.height <= 0) {
+            return false;
+        }
+        int cx = startX;
+        int cy = startY;
+        if (inside(rect, cx, cy, cx, cy)) {
+            return true;
+        }
+        for (int run : runs) {
+            int n = run >>> 2;
+            int nx = cx + DX[run & 3] * n;
+            int ny = cy + DY[run & 3] * n;
+            if (inside(rect, Math.min(cx, nx), Math.min(cy, ny), Math.max(cx, nx), Math.max(cy, ny))) {
+                return true;
+            }
+            cx = nx;
+            cy = ny;
+        }
+        return false;
+    }
+
+    /** Whether the squares (x0..x1, y0..y1) overlap the rectangle. */
+    private static boolean inside(Rectangle r, int x0, int y0, int x1, int y1) {
+        return x1 >= r.x && x0 < r.x + r.width && y1 >= r.y && y0 < r.y + r.height;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ SQUARES ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @FunctionalInterface
+    public interface SquareVisitor {
+        void visit(int x, int y);
+    }
+
+    /**
+     * Visits every square of the path in order, start first, without allocating.
+     */
+    public void forEachSquare(SquareVisitor visitor) {
+        if (isEmpty()) {
+            return;
+        }
+        int x = startX;
+        int y = startY;
+        visitor.visit(x, y);
+        for (int run : runs) {
+            int dx = DX[run & 3];
+            int dy = DY[run & 3];
+            for (int n = run >>> 2; n > 0; n--) {
+                x += dx;
+                y += dy;
+                visitor.visit(x, y);
+            }
+        }
+    }
+
+    /**
+     * The path expanded back into squares (allocated on each call).
+     */
+    public List<Point> toPoints() {
+        List<Point> points = new ArrayList<>(length);
+        forEachSquare((x, y) -> points.add(new Point(x, y)));
+        return points;
+    }
+
+    /**
+     * Approximate heap size, for cache accounting.
+     */
+    public long sizeInBytes() {
+        return 40 + 16 + 4L * runs.length;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ SERIALIZATION ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Writes the path; {@link #EMPTY} is a run count of -1.
+     */
+    void write(DataOutput out) throws IOException {
+        if (isEmpty()) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(runs.length);
+        out.writeInt(startX);
+        out.writeInt(startY);
+        for (int run : runs) {
+            out.writeInt(run);
+        }
+    }
+
+    static CorridorPath read(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0) {
+            return EMPTY;
+        }
+        int x = in.getInt();
+        int y = in.getInt();
+        int[] runs = new int[count];
+        long length = 1;
+        for (int i = 0; i < count; i++) {
+            runs[i] = in.getInt();
+            length += runs[i] >>> 2;
+        }
+        return new CorridorPath(x, y, runs, Math.toIntExact(length));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CorridorPath other && startX == other.startX && startY == other.startY
+               && length == other.length && Arrays.equals(runs, other.runs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * startX + startY) + Arrays.hashCode(runs);
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "CorridorPath[empty]";
+        }
+        return "CorridorPath[(" + startX + "," + startY + ") -> (" + endX + "," + endY + "), " + length
+               + " squares, " + bends() + " bends]";
+    }
+}
@@ -0,0 +1,149 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A fixed-extent grid held in two heap arrays (1-byte cell type, 4-byte room id per square).
+ * Compact and cheap to copy, which makes it a good snapshot format for fitted layouts.
+ * <p>
+ * Reads outside the extent return EMPTY / 0; writes outside it throw. Not thread-safe.
+ */
+public class DenseCellGrid implements CellGrid {
+
+    private static final GridCell.CellType[] TYPES = GridCell.CellType.values();
+
+    private final int originX;
+    private final int originY;
+    private final int width;
+    private final int height;
+    private final byte[] types;
+    private final int[] roomIds;
+
+    private final UsedBounds usedBounds = new UsedBounds();
+
+    /**
+     * An all-EMPTY grid covering {@code extent}.
+     */
+    public DenseCellGrid(Rectangle extent) {
+        if (extent.width < 0 || extent.height < 0) {
+            throw new IllegalArgumentException("Extent must not be negative: " + extent);
+        }
+        this.originX = extent.x;
+        this.originY = extent.y;
+        this.width = extent.width;
+        this.height = extent.height;
+        this.types = new byte[Math.multiplyExact(width, height)];
+        this.roomIds = new int[types.length];
+    }
+
+    /**
+     * Copies the used area of any grid.
+     */
+    public static DenseCellGrid copyOf(CellGridView source) {
+        Rectangle used = source.getUsedBounds();
+        DenseCellGrid copy = new DenseCellGrid(used);
+        int i = 0;
+        for (int y = used.y; y < used.y + used.height; y++) {
+            for (int x = used.x; x < used.x + used.width; x++, i++) {
+                GridCell.CellType type = source.getCellType(x, y);
+                copy.types[i] = (byte) type.ordinal();
+                copy.roomIds[i] = source.getRoomId(x, y);
+                if (type != GridCell.CellType.EMPTY) {
+                    copy.usedBounds.include(x, y);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * An independent copy of this grid.
+     */
+    public DenseCellGrid copy() {
+        DenseCellGrid copy = new DenseCellGrid(getExtent());
+        System.arraycopy(types, 0, copy.types, 0, types.length);
+        System.arraycopy(roomIds, 0, copy.roomIds, 0, roomIds.length);
+        Rectangle used = getUsedBounds();
+        if (used.width > 0) {
+            copy.usedBounds.include(used.x, used.y);
+            copy.usedBounds.include(used.x + used.width - 1, used.y + used.height - 1);
+        }
+        return copy;
+    }
+
+    public Rectangle getExtent() {
+        return new Rectangle(originX, originY, width, height);
+    }
+
+    /**
+     * Heap bytes held by the two planes.
+     */
+    public long sizeInBytes() {
+        return (long) types.length * (1 + Integer.BYTES);
+    }
+
+    private boolean inExtent(int x, int y) {
+        return x >= originX && y >= originY && x - originX < width && y - originY < height;
+    }
+
+    @Override
+    public boolean isWritable(int x, int y) {
+        return inExtent(x, y);
+    }
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        if (!inExtent(x, y)) {
+            return GridCell.CellType.EMPTY;
+        }
+        return TYPES[types[(y - originY) * width + (x - originX)]];
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        if (!inExtent(x, y)) {
+            return 0;
+        }
+        return roomIds[(y - originY) * width + (x - originX)];
+    }
+
+    @Override
+    public void setCell(int x, int y, GridCell.CellType type, int roomId) {
+        if (!inExtent(x, y)) {
+            throw new IndexOutOfBoundsException("(" + x + "," + y + ") is outside " + getExtent());
+        }
+        int index = (y - originY) * width + (x - originX);
+        usedBounds.onWrite(x, y, TYPES[types[index]], type);
+        types[index] = (byte) type.ordinal();
+        roomIds[index] = roomId;
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        if (usedBounds.isStale()) {
+            usedBounds.reset();
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] != 0) {
+                    usedBounds.include(originX + i % width, originY + i / width);
+                }
+            }
+        }
+        return usedBounds.toRectangle();
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != 0) {
+                GridCell cell = new GridCell(originX + i % width, originY + i / width);
+                cell.setCellType(TYPES[types[i]]);
+                cell.setRoomId(roomIds[i]);
+                result.add(cell);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,10 @@
+package us.n8l.mapgenerator;
+
+/**
+ * Which wall of the passage a door is in (Table II).
+ */
+public enum DoorLocation {
+    LEFT,
+    RIGHT,
+    AHEAD
+}
@@ -0,0 +1,158 @@
+package us.n8l.mapgenerator;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses where a corridor leaves one room and enters another.
+ * <p>
+ * Instead of taking the first boundary square of each room (HashMap order, often the far
+ * side of the room), we pick the closest pair of door candidates between the two room
+ * perimeters using a k-d tree. A door candidate must sit on a straight wall (not a corner)
+ * and face open space. Each room gets at most {@code maxDoorsPerRoom} distinct doors; once
+ * a room is at its limit, further corridors reuse one of its existing doors.
+ */
+class DoorSelector {
+
+    static final int DEFAULT_MAX_DOORS_PER_ROOM = 4;
+
+    private static final int[][] DIRS = {{1,0},{-1,0},{0,1},{0,-1}};
+
+    /**
+     * A door square plus the outward direction of the wall it sits on.
+     */
+    record Door(Point cell, int dx, int dy) {
+    }
+
+    record DoorPair(Door from, Door to) {
+    }
+
+    private final CellGrid grid;
+    private final int maxDoorsPerRoom;
+    private final Map<Integer, List<Door>> doorsByRoom = new HashMap<>();
+
+    DoorSelector(CellGrid grid) {
+        this(grid, DEFAULT_MAX_DOORS_PER_ROOM);
+    }
+
+    DoorSelector(CellGrid grid, int maxDoorsPerRoom) {
+        this.grid = grid;
+        this.maxDoorsPerRoom = maxDoorsPerRoom;
+    }
+
+    /**
+     * Select the closest allowed door pair between two rooms, or null if either room
+     * has no usable boundary. The chosen doors are recorded against the room limits.
+     */
+    DoorPair select(int fromId, List<Point> fromBoundary, int toId, List<Point> toBoundary) {
+        List<Door> fromDoors = allowedDoors(fromId, fromBoundary);
+        List<Door> toDoors = allowedDoors(toId, toBoundary);
+        if (fromDoors.isEmpty() || toDoors.isEmpty()) {
+            return null;
+        }
+
+        // Index the larger side, query with the smaller one
+        boolean indexTo = toDoors.size() >= fromDoors.size();
+        List<Door> indexed = indexTo ? toDoors : fromDoors;
+        List<Door> queries = indexTo ? fromDoors : toDoors;
+
+        Map<Point, Door> byCell = new HashMap<>();
+        List<Point> cells = new ArrayList<>(indexed.size());
+        for (Door d : indexed) {
+            byCell.put(d.cell(), d);
+            cells.add(d.cell());
+        }
+        PointKdTree tree = new PointKdTree(cells);
+
+        Door bestQuery = null;
+        Door bestIndexed = null;
+        int bestDist = Integer.MAX_VALUE;
+        for (Door q : queries) {
+            Point near = tree.nearest(q.cell().x, q.cell().y);
+            if (tree.lastDistance() < bestDist) {
+                bestDist = tree.lastDistance();
+                bestQuery = q;
+                bestIndexed = byCell.get(near);
+            }
+        }
+
+        DoorPair pair = indexTo ? new DoorPair(bestQuery, bestIndexed) : new DoorPair(bestIndexed, bestQuery);
+        recordDoor(fromId, pair.from());
+        recordDoor(toId, pair.to());
+        return pair;
+    }
+
+    /**
+     * The door candidates a new corridor may use for the given room: its existing doors if
+     * the room is at its limit, otherwise every wall-facing boundary square. If no boundary
+     * square qualifies as wall-facing (e.g. the room is boxed in), any boundary square is used.
+     */
+    List<Door> allowedDoors(int roomId, List<Point> boundary) {
+        List<Door> existing = doorsByRoom.get(roomId);
+        if (existing != null && existing.size() >= maxDoorsPerRoom) {
+            return existing;
+        }
+        List<Door> candidates = new ArrayList<>();
+        for (Point p : boundary) {
+            Door d = wallFacingDoor(p, roomId);
+            if (d != null) {
+                candidates.add(d);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Point p : boundary) {
+                candidates.add(new Door(p, 0, 0));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Remember that a corridor uses this door (no-op if it is already one of the room's doors).
+     */
+    void recordDoor(int roomId, Door door) {
+        List<Door> doors = doorsByRoom.computeIfAbsent(roomId, k -> new ArrayList<>());
+        for (Door d : doors) {
+            if (d.cell().equals(door.cell())) {
+                return;
+            }
+        }
+        doors.add(door);
+    }
+
+    /**
+     * Drop a room's recorded doors, e.g. because it was removed or resized.
+     */
+    void forgetRoom(int roomId) {
+        doorsByRoom.remove(roomId);
+    }
+
+    /**
+     * Returns a door if the boundary square is on a straight wall and its outward
+     * neighbour is open (empty or corridor), else null. Corners face two axes and are rejected.
+     */
+    private Door wallFacingDoor(Point p, int roomId) {
+        boolean outX = false;
+        boolean outY = false;
+        int[] open = null;
+        for (int[] d : DIRS) {
+            int nx = p.x + d[0];
+            int ny = p.y + d[1];
+            if (grid.getRoomId(nx, ny) == roomId) {
+                continue;
+            }
+            if (d[0] != 0) outX = true; else outY = true;
+            if (open == null && grid.getCellType(nx, ny) != GridCell.CellType.ROOM
+                    && grid.isWritable(nx, ny)) {
+                open = d;
+            }
+        }
+        if ((outX && outY) || open == null) {
+            return null;
+        }
+        return new Door(p, open[0], open[1]);
+    }
+}
@@ -20,6 +20,14 @@ public class Dungeon {
         corridors.add(corridor);
     }
 
+    public boolean removeRoom(Room room) {
+        return rooms.remove(room);
+    }
+
+    public boolean removeCorridor(Corridor corridor) {
+        return corridors.remove(corridor);
+    }
+
     public List<Room> getRooms() {
         return rooms;
     }
@@ -0,0 +1,505 @@
+package us.n8l.mapgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only archive of many fitted dungeons, keyed by (seed, config).
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   header   int magic "DARC", short version, short reserved
+ *   batch*   records, back to back: int config length, config UTF-8, the {@link BinaryMapFile} blob
+ *            then the batch's own sorted index: per record long seed, long configHash, long offset, long length,
+ *            then the footer: long batch start, long index offset, int entry count,
+ *            int CRC-32C of the index and the footer fields before it, int magic
+ * </pre>
+ * Each batch appends only its own records and index, so the bytes a reader has already mapped
+ * are never rewritten and the file grows only by what was appended. A footer's batch start is
+ * where the previous batch's footer ends, so the batches form a chain back to the header.
+ * <p>
+ * A crash partway through a batch leaves a torn tail after the last complete footer. Readers
+ * scan back past it to the last footer whose checksum holds, and the next appender truncates
+ * it; the maps of the torn batch are lost, everything before it is kept.
+ * <p>
+ * Opening a reader merges the batch indexes into one sorted in-memory index (32 bytes per map,
+ * later batches winning on equal keys), so a lookup is a binary search plus a check of the
+ * stored config and mapping the map's header, regardless of how many batches there are.
+ * Keys use a 64-bit FNV-1a hash of the config string; the config itself is stored with each
+ * map and compared on a hit, so a hash collision reads as a miss rather than the wrong map.
+ */
+public class DungeonArchive implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(DungeonArchive.class.getName());
+
+    public static final int MAGIC = 0x44415243; // "DARC"
+    public static final short VERSION = 2;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int FOOTER_BYTES = 2 * Long.BYTES + 3 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = 4 * Long.BYTES;
+    private static final int SCAN_CHUNK = 1 << 20;
+
+    private final FileChannel channel;
+    // The merged index, sorted by key
+    private final long[] seeds;
+    private final long[] hashes;
+    private final long[] offsets;
+    private final long[] lengths;
+    private final int batches;
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ READING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Opens an archive for lookups. The reader sees the maps present when it was opened.
+     */
+    public static DungeonArchive open(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new DungeonArchive(ch);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private DungeonArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+        checkHeader(channel);
+        long end = lastFooterEnd(channel);
+        if (end < 0) {
+            throw new IOException("Not a dungeon archive: no complete batch");
+        }
+        if (end < channel.size()) {
+            LOG.warning("Ignoring " + (channel.size() - end) + " bytes of incomplete batch at the end of the archive");
+        }
+
+        // Walk the footer chain back to the header, newest batch first
+        List<IndexRun> runs = new ArrayList<>();
+        long total = 0;
+        while (end > HEADER_BYTES) {
+            ByteBuffer footer = readFooter(channel, end);
+            if (footer == null) {
+                throw new IOException("Corrupt dungeon archive: bad footer ending at " + end);
+            }
+            long batchStart = footer.getLong(0);
+            long indexOffset = footer.getLong(Long.BYTES);
+            int entries = footer.getInt(2 * Long.BYTES);
+            if (entries > 0) {
+                runs.add(new IndexRun(channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+                        (long) entries * INDEX_ENTRY_BYTES), entries, runs.size()));
+                total += entries;
+            }
+            end = batchStart;
+        }
+        this.batches = runs.size();
+
+        // k-way merge of the sorted runs; on equal keys the newest run comes first and wins
+        int capacity = Math.toIntExact(total);
+        long[] s = new long[capacity];
+        long[] h = new long[capacity];
+        long[] o = new long[capacity];
+        long[] l = new long[capacity];
+        int n = 0;
+        PriorityQueue<IndexRun> heap = new PriorityQueue<>(Math.max(1, runs.size()));
+        heap.addAll(runs);
+        while (!heap.isEmpty()) {
+            IndexRun run = heap.remove();
+            long seed = run.seed();
+            long hash = run.hash();
+            if (n == 0 || s[n - 1] != seed || h[n - 1] != hash) {
+                s[n] = seed;
+                h[n] = hash;
+                o[n] = run.index.getLong(run.at + 2 * Long.BYTES);
+                l[n] = run.index.getLong(run.at + 3 * Long.BYTES);
+                n++;
+            }
+            if (run.advance()) {
+                heap.add(run);
+            }
+        }
+        this.seeds = Arrays.copyOf(s, n);
+        this.hashes = Arrays.copyOf(h, n);
+        this.offsets = Arrays.copyOf(o, n);
+        this.lengths = Arrays.copyOf(l, n);
+    }
+
+    /** One batch's mapped index during the merge; {@code age} 0 is the newest batch. */
+    private static final class IndexRun implements Comparable<IndexRun> {
+        final ByteBuffer index;
+        final int entries;
+        final int age;
+        int at;
+        int entry;
+
+        IndexRun(ByteBuffer index, int entries, int age) {
+            this.index = index;
+            this.entries = entries;
+            this.age = age;
+        }
+
+        long seed() {
+            return index.getLong(at);
+        }
+
+        long hash() {
+            return index.getLong(at + Long.BYTES);
+        }
+
+        boolean advance() {
+            entry++;
+            at += INDEX_ENTRY_BYTES;
+            return entry < entries;
+        }
+
+        @Override
+        public int compareTo(IndexRun other) {
+            int c = compareKeys(seed(), hash(), other.seed(), other.hash());
+            return (c != 0) ? c : Integer.compare(age, other.age);
+        }
+    }
+
+    /**
+     * Number of maps in the archive.
+     */
+    public int size() {
+        return seeds.length;
+    }
+
+    /**
+     * Number of non-empty batches the archive was written in.
+     */
+    public int batchCount() {
+        return batches;
+    }
+
+    public boolean contains(long seed, String config) throws IOException {
+        return find(seed, config) >= 0;
+    }
+
+    /**
+     * Fetches the map stored under (seed, config), or null if there is none.
+     * The returned map shares this archive's file; close it when done, and don't use it after
+     * the archive is closed.
+     */
+    public BinaryMapFile get(long seed, String config) throws IOException {
+        int i = find(seed, config);
+        if (i < 0) {
+            return null;
+        }
+        long blob = Integer.BYTES + config.getBytes(StandardCharsets.UTF_8).length;
+        return BinaryMapFile.open(channel, offsets[i] + blob, lengths[i] - blob);
+    }
+
+    /** Binary search of the index, then a check of the stored config; returns the entry number or -1. */
+    private int find(long seed, String config) throws IOException {
+        long configHash = configHash(config);
+        int lo = 0;
+        int hi = seeds.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareKeys(seeds[mid], hashes[mid], seed, configHash);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return storedConfigEquals(mid, config) ? mid : -1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean storedConfigEquals(int entry, String config) throws IOException {
+        byte[] expected = config.getBytes(StandardCharsets.UTF_8);
+        if (Integer.BYTES + (long) expected.length > lengths[entry]) {
+            return false;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(Integer.BYTES + expected.length);
+        readFully(channel, stored, offsets[entry]);
+        if (stored.getInt(0) != expected.length) {
+            return false;
+        }
+        return Arrays.equals(stored.array(), Integer.BYTES, stored.capacity(), expected, 0, expected.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ APPENDING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Opens (or creates) an archive for appending. Only one appender may hold a file at a time.
+     * An incomplete batch left at the end of the file by a crash is truncated.
+     *
+     * @param batchBytes encoded bytes to buffer before a batch is written out
+     */
+    public static Appender openForAppend(Path file, long batchBytes) throws IOException {
+        return new Appender(file, batchBytes);
+    }
+
+    /**
+     * Appends maps in batches. {@link #append} is safe to call from many batch workers: each
+     * map is encoded on the calling thread and only the batch write is serialized. Maps are
+     * not visible to readers until their batch is written by {@link #flush()}, {@link #close()}
+     * or reaching the batch size. Appending an existing key replaces it.
+     */
+    public static final class Appender implements Closeable {
+
+        public static final long DEFAULT_BATCH_BYTES = 64L << 20;
+
+        private final FileChannel channel;
+        private final FileLock lock;
+        private final long batchBytes;
+
+        private final List<Pending> pending = new ArrayList<>();
+        private long pendingBytes;
+
+        private record Pending(long seed, long configHash, byte[] config, byte[] blob) {
+            long recordLength() {
+                return Integer.BYTES + config.length + blob.length;
+            }
+        }
+
+        private Appender(Path file, long batchBytes) throws IOException {
+            this.batchBytes = batchBytes;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                this.lock = channel.tryLock();
+                if (lock == null) {
+                    throw new IOException("Archive is already open for appending: " + file);
+                }
+                if (channel.size() < HEADER_BYTES) {
+                    // New file, or one that died before its header was complete
+                    channel.truncate(0);
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).flip();
+                    channel.write(header, 0);
+                    writeBatch(List.of());
+                } else {
+                    checkHeader(channel);
+                    long end = lastFooterEnd(channel);
+                    if (end < 0) {
+                        // Not even the first (empty) batch made it to disk
+                        channel.truncate(HEADER_BYTES);
+                        writeBatch(List.of());
+                    } else if (end < channel.size()) {
+                        LOG.warning("Truncating " + (channel.size() - end) + " bytes of incomplete batch from " + file);
+                        channel.truncate(end);
+                        channel.force(false);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Encodes one fitted map and queues it under (seed, config).
+         */
+        public void append(long seed, String config, CellGridView grid, List<Room> rooms) throws IOException {
+            ByteArrayOutputStream blob = new ByteArrayOutputStream();
+            BinaryMapFile.write(blob, grid, rooms, true, BinaryMapFile.DEFAULT_TILE_SIZE);
+            Pending p = new Pending(seed, configHash(config), config.getBytes(StandardCharsets.UTF_8),
+                    blob.toByteArray());
+            boolean full;
+            synchronized (this) {
+                pending.add(p);
+                pendingBytes += p.recordLength();
+                full = pendingBytes >= batchBytes;
+            }
+            if (full) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes out all queued maps as one batch.
+         */
+        public synchronized void flush() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            writeBatch(pending);
+            LOG.fine("Wrote archive batch of " + pending.size() + " maps, " + pendingBytes + " bytes");
+            pending.clear();
+            pendingBytes = 0;
+        }
+
+        private void writeBatch(List<Pending> batch) throws IOException {
+            Pending[] sorted = batch.toArray(new Pending[0]);
+            // Stable sort, so a key appended twice in one batch keeps its last value below
+            Arrays.sort(sorted, Comparator.comparingLong(Pending::seed).thenComparingLong(Pending::configHash));
+
+            long batchStart = channel.size();
+            long position = batchStart;
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel.position(position)), 1 << 16));
+            long[] recordOffsets = new long[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                recordOffsets[i] = position;
+                out.writeInt(sorted[i].config().length);
+                out.write(sorted[i].config());
+                out.write(sorted[i].blob());
+                position += sorted[i].recordLength();
+            }
+
+            // The batch's own index, last of equal keys only, then the checksummed footer fields
+            ByteBuffer index = ByteBuffer.allocate(sorted.length * INDEX_ENTRY_BYTES + 2 * Long.BYTES + Integer.BYTES);
+            int entries = 0;
+            for (int j = 0; j < sorted.length; j++) {
+                if (j + 1 < sorted.length && sorted[j + 1].seed() == sorted[j].seed()
+                        && sorted[j + 1].configHash() == sorted[j].configHash()) {
+                    continue;
+                }
+                index.putLong(sorted[j].seed()).putLong(sorted[j].configHash())
+                        .putLong(recordOffsets[j]).putLong(sorted[j].recordLength());
+                entries++;
+            }
+            index.putLong(batchStart).putLong(position).putInt(entries).flip();
+            CRC32C crc = new CRC32C();
+            crc.update(index.duplicate());
+
+            out.write(index.array(), 0, index.limit());
+            out.writeInt((int) crc.getValue());
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(false);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                lock.release();
+                channel.close();
+            }
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ FOOTERS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private static void checkHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            throw new IOException("Not a dungeon archive: too short");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a dungeon archive: bad magic");
+        }
+        short version = header.getShort(Integer.BYTES);
+        if (version != VERSION) {
+            throw new IOException("Unsupported dungeon archive version " + version);
+        }
+    }
+
+    /**
+     * End of the last complete batch: the file size if the file ends with a valid footer,
+     * otherwise the end of the last valid footer found scanning backwards, or -1 if there is none.
+     */
+    private static long lastFooterEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (readFooter(channel, size) != null) {
+            return size;
+        }
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK);
+        long hi = size;
+        while (hi - HEADER_BYTES >= FOOTER_BYTES) {
+            long lo = Math.max(HEADER_BYTES, hi - SCAN_CHUNK);
+            chunk.clear().limit((int) (hi - lo));
+            readFully(channel, chunk, lo);
+            for (int i = chunk.limit() - Integer.BYTES; i >= 0; i--) {
+                if (chunk.getInt(i) == MAGIC) {
+                    long end = lo + i + Integer.BYTES;
+                    if (readFooter(channel, end) != null) {
+                        return end;
+                    }
+                }
+            }
+            if (lo == HEADER_BYTES) {
+                break;
+            }
+            hi = lo + Integer.BYTES - 1; // so a magic straddling the chunk boundary is seen
+        }
+        return -1;
+    }
+
+    /**
+     * The footer ending at {@code end} if its magic, bounds and checksum hold, else null.
+     */
+    private static ByteBuffer readFooter(FileChannel channel, long end) throws IOException {
+        long start = end - FOOTER_BYTES;
+        if (start < HEADER_BYTES || end > channel.size()) {
+            return null;
+        }
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_BYTES);
+        readFully(channel, footer, start);
+        long batchStart = footer.getLong(0);
+        long indexOffset = footer.getLong(Long.BYTES);
+        int entries = footer.getInt(2 * Long.BYTES);
+        if (footer.getInt(FOOTER_BYTES - Integer.BYTES) != MAGIC || entries < 0
+                || batchStart < HEADER_BYTES || indexOffset < batchStart
+                || indexOffset + (long) entries * INDEX_ENTRY_BYTES != start) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        if (entries > 0) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, (long) entries * INDEX_ENTRY_BYTES));
+        }
+        crc.update(footer.array(), 0, 2 * Long.BYTES + Integer.BYTES);
+        return ((int) crc.getValue() == footer.getInt(2 * Long.BYTES + Integer.BYTES)) ? footer : null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("Unexpected end of dungeon archive");
+            }
+        }
+        buffer.flip();
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ KEYS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * 64-bit FNV-1a hash of a config string's UTF-8 bytes.
+     */
+    public static long configHash(String config) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : config.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static int compareKeys(long seedA, long hashA, long seedB, long hashB) {
+        int c = Long.compare(seedA, seedB);
+        return (c != 0) ? c : Long.compare(hashA, hashB);
+    }
+}
@@ -0,0 +1,15 @@
+package us.n8l.mapgenerator;
+
+/**
+ * One step of a dungeon being generated, as published by
+ * {@link AdvancedDungeonGenerator#generateStream}. Rooms are always published before any
+ * corridor that refers to them.
+ */
+public sealed interface DungeonEvent {
+
+    record RoomAdded(Room room) implements DungeonEvent {
+    }
+
+    record CorridorAdded(Corridor corridor) implements DungeonEvent {
+    }
+}
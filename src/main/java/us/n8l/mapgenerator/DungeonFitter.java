@@ -1,13 +1,26 @@
 package us.n8l.mapgenerator;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * An interface for any "dungeon fitter" which places the abstract Dungeon graph
  * onto a 2D grid and returns the resulting cells.
+ * <p>
+ * There are two ways to use a fitter. {@link #fit} treats it as a shareable engine: each call
+ * works on its own state and returns an immutable {@link FitResult}, so one instance can serve
+ * many threads. {@link #fitDungeon} fits into the fitter itself, which is then read back through
+ * the getters; such a fitter holds one layout and is not thread-safe.
  */
 public interface DungeonFitter {
 
+    /**
+     * Fits the dungeon and returns the finished layout, leaving this fitter untouched.
+     * Safe to call concurrently on one instance.
+     */
+    FitResult fit(Dungeon dungeon);
+
     /**
      * Perform the fitting algorithm on the given Dungeon, returning
      * a bounding rectangle that covers all placed squares.
@@ -24,4 +37,32 @@ public interface DungeonFitter {
      * or null/empty if not yet fitted.
      */
     Rectangle getBounds();
+
+    /**
+     * Returns the fitted grid for O(1) point queries (rendering, export),
+     * or null if not yet fitted.
+     */
+    CellGridView getGrid();
+
+    /**
+     * Returns the counters collected during the last fit (overlaps, failed corridors, etc.).
+     */
+    FitStats getStats();
+
+    /**
+     * Returns the route of each corridor fitted so far, in routing order; corridors that could
+     * not be routed map to {@link CorridorPath#EMPTY}. Empty for fitters that do not keep routes.
+     */
+    default Map<Corridor, CorridorPath> getCorridorPaths() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Returns an immutable snapshot of the current layout, safe to hand to other threads,
+     * or null if not yet fitted. Each call takes a fresh snapshot.
+     */
+    default FittedMap getFittedMap() {
+        CellGridView grid = getGrid();
+        return (grid == null) ? null : FittedMap.of(grid);
+    }
 }
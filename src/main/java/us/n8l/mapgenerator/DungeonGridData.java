@@ -1,5 +1,6 @@
 package us.n8l.mapgenerator;
 
+import java.util.ArrayList;
 import java.util.List;
 
 // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -9,4 +10,36 @@ public class DungeonGridData {
     public RectDto rect;
     public List<GridCellDto> cells;
     public List<RoomDto> rooms;
+
+    // Gathers the bounding rect and all cells from a fit
+    // plus a list of rooms; either may be null.
+    public static DungeonGridData of(FitResult fit, List<Room> rooms) {
+        DungeonGridData data = new DungeonGridData();
+        if (fit != null) {
+            Rectangle bounds = fit.getBounds();
+            data.rect = new RectDto(bounds.x, bounds.y, bounds.width, bounds.height);
+            List<GridCellDto> cellDtos = new ArrayList<>();
+            for (GridCell c : fit.getAllCells()) {
+                GridCellDto dto = new GridCellDto();
+                dto.x = c.getCoordinate().x;
+                dto.y = c.getCoordinate().y;
+                dto.roomId = c.getRoomId();
+                dto.cellType = c.getCellType().name();
+                cellDtos.add(dto);
+            }
+            data.cells = cellDtos;
+        }
+        if (rooms != null) {
+            List<RoomDto> roomDtos = new ArrayList<>();
+            for (Room r : rooms) {
+                RoomDto rd = new RoomDto();
+                rd.id = r.getId();
+                rd.shape = (r.getShape() != null) ? r.getShape().name() : null;
+                rd.dimensions = r.getDimensions();
+                roomDtos.add(rd);
+            }
+            data.rooms = roomDtos;
+        }
+        return data;
+    }
 }
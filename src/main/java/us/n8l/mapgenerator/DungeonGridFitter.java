@@ -3,14 +3,18 @@ package us.n8l.mapgenerator;
 import java.awt.*;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -19,24 +23,101 @@ import java.util.logging.Logger;
  *  - BFS corridor routing
  *  - Logging for progress
  *  - Some performance improvements (O(1) lookups, BFS short-circuit)
+ *  - An optional "network" routing mode that reuses already-carved corridors
+ *  - An optional annealing pass over the room placement
+ *
+ * {@link #fit} runs on a fresh grid from the grid factory per call and reuses per-thread search
+ * buffers, so one instance can be shared by many threads; {@link #fitDungeon} fits into this
+ * instance's own grid.
  */
 public class DungeonGridFitter implements DungeonFitter {
 
     private static final Logger LOG = Logger.getLogger(DungeonGridFitter.class.getName());
 
-    private final Map<Point, GridCell> gridMap;
+    // Network routing costs: stepping onto an already-carved corridor is cheaper
+    // than carving a new square, so corridors tend to merge instead of running in parallel.
+    private static final int NEW_CELL_COST = 3;
+    private static final int REUSED_CELL_COST = 1;
+    // How far outside the used area the network search may wander
+    private static final int SEARCH_MARGIN = 10;
+    // Extra squares around start and goal in the first BFS rectangle, and the most it may grow to
+    private static final int BFS_MARGIN = 8;
+    private static final long BFS_MAX_CELLS = 1 << 26;
+    // BFS neighbour order: east, west, south, north
+    private static final int[] BFS_DX = {1, -1, 0, 0};
+    private static final int[] BFS_DY = {0, 0, 1, -1};
+
+    // Search buffers, reused by every search on the same thread
+    private static final ThreadLocal<SearchScratch> SCRATCH = ThreadLocal.withInitial(SearchScratch::new);
+
+    private final Supplier<? extends CellGrid> gridFactory;
+    private final CellGrid grid;
     private final Map<Integer, List<Point>> roomBoundaryCache;  // Caches boundary squares for each room ID
+    private final Map<Integer, Rectangle> roomRects;            // Placed rectangle for each room ID
+    private final DoorSelector doorSelector;                    // Nearest door pairs + per-room door limits
+    private final boolean reuseCorridorNetwork;
+    private final AnnealingLayoutOptimizer layoutOptimizer;     // null => keep the row layout
+    private final Map<Corridor, CorridorPath> corridorPaths = new LinkedHashMap<>(); // routing order
+
+    // Routing statistics
+    private final FitStats stats = new FitStats();
+    private int reusedCells;
 
     private Rectangle bounds;
 
     public DungeonGridFitter() {
-        this.gridMap = new HashMap<>();
+        this(false);
+    }
+
+    /**
+     * @param reuseCorridorNetwork if true, corridors are routed with a multi-source search
+     *                             seeded from the corridor network already attached to the
+     *                             source room, and existing corridor squares are discounted,
+     *                             so new corridors join the network instead of duplicating it.
+     */
+    public DungeonGridFitter(boolean reuseCorridorNetwork) {
+        this(reuseCorridorNetwork, null);
+    }
+
+    /**
+     * @param layoutOptimizer if non-null, improves the initial row layout (compactness,
+     *                        corridor length, overlaps) before corridors are routed
+     */
+    public DungeonGridFitter(boolean reuseCorridorNetwork, AnnealingLayoutOptimizer layoutOptimizer) {
+        this(reuseCorridorNetwork, layoutOptimizer, HashCellGrid::new);
+    }
+
+    /**
+     * @param gridFactory makes the storage for the fitted squares: once for this instance's
+     *                    {@link #fitDungeon} and once per {@link #fit} call, e.g.
+     *                    {@code () -> new OffHeapCellGrid(extent)} for very large maps. Squares a
+     *                    grid cannot hold are treated as solid rock.
+     */
+    public DungeonGridFitter(boolean reuseCorridorNetwork, AnnealingLayoutOptimizer layoutOptimizer,
+                             Supplier<? extends CellGrid> gridFactory) {
+        this.layoutOptimizer = layoutOptimizer;
+        this.gridFactory = gridFactory;
+        this.grid = gridFactory.get();
         this.roomBoundaryCache = new HashMap<>();
+        this.roomRects = new HashMap<>();
+        this.doorSelector = new DoorSelector(grid);
+        this.reuseCorridorNetwork = reuseCorridorNetwork;
 
         // Optionally configure logger:
         // LOG.setLevel(Level.INFO); // or Level.FINE, etc.
     }
 
+    @Override
+    public FitResult fit(Dungeon dungeon) {
+        DungeonGridFitter run = new DungeonGridFitter(reuseCorridorNetwork, layoutOptimizer, gridFactory);
+        try {
+            run.fitDungeon(dungeon);
+            return FitResult.of(run);
+        } finally {
+            FitResult.release(run.grid);
+        }
+    }
+
     /**
      * Fit the dungeon: place rooms, connect corridors, compute bounding rectangle.
      */
@@ -46,23 +127,30 @@ public class DungeonGridFitter implements DungeonFitter {
                  + ", corridors: " + dungeon.getCorridors().size());
 
         // 1) Place rooms
-        placeAllRooms(dungeon.getRooms());
+        placeAllRooms(dungeon.getRooms(), dungeon.getCorridors());
 
         // 2) Connect corridors
         List<Corridor> corridors = dungeon.getCorridors();
-        LOG.info("Connecting " + corridors.size() + " corridors via BFS...");
+        LOG.info("Connecting " + corridors.size() + " corridors via "
+                 + (reuseCorridorNetwork ? "network search" : "BFS") + "...");
         int connectedCount = 0;
 
         for (Corridor c : corridors) {
-            connectCorridor(c);
+            onCorridorRouted(c, CorridorPath.of(connectCorridor(c)));
             connectedCount++;
             if (connectedCount % 5 == 0) {
                 LOG.info("  ...connected " + connectedCount + " corridors so far");
             }
         }
 
+        if (reuseCorridorNetwork) {
+            LOG.info("Network routing carved " + stats.getCorridorCells() + " new squares, reused "
+                     + reusedCells + " existing ones, " + stats.getSearchExpansions() + " search expansions.");
+        }
+
         // 3) Compute bounding rectangle
         Rectangle rect = computeUsedBounds();
+        bounds = rect;
         long endTime = System.currentTimeMillis();
         LOG.info("Dungeon fit complete. Used area: ("
                  + rect.x + "," + rect.y + ") " + rect.width + "x" + rect.height
@@ -71,42 +159,25 @@ public class DungeonGridFitter implements DungeonFitter {
     }
 
     private Rectangle computeUsedBounds() {
-        int minX = Integer.MAX_VALUE;
-        int maxX = Integer.MIN_VALUE;
-        int minY = Integer.MAX_VALUE;
-        int maxY = Integer.MIN_VALUE;
-
-        for (GridCell cell : gridMap.values()) {
-            if (cell.getCellType() != GridCell.CellType.EMPTY) {
-                int x = cell.getCoordinate().x;
-                int y = cell.getCoordinate().y;
-                if (x < minX) minX = x;
-                if (x > maxX) maxX = x;
-                if (y < minY) minY = y;
-                if (y > maxY) maxY = y;
-            }
-        }
-        if (minX > maxX || minY > maxY) {
-            // No used cells
-            return new Rectangle(0, 0, 0, 0);
-        }
-        return new Rectangle(minX, minY, (maxX - minX + 1), (maxY - minY + 1));
+        return grid.getUsedBounds();
     }
 
     /**
-     * Place all rooms in a simple row-based layout.
+     * Place all rooms in a simple row-based layout, optionally improved by the
+     * layout optimizer before anything is written to the grid.
      * Enhanced with logging to see progress.
      */
-    private void placeAllRooms(List<Room> rooms) {
+    private void placeAllRooms(List<Room> rooms, List<Corridor> corridors) {
         final int MAX_ROW_WIDTH = 80;
         int currentX = 0;
         int currentY = 0;
         int tallestRoomInRow = 0;
 
         LOG.info("Placing " + rooms.size() + " rooms...");
-        int placedCount = 0;
+        RoomLayout layout = new RoomLayout(rooms.size());
 
-        for (Room room : rooms) {
+        for (int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
             Dimension dims = parseRoomDimensions(room.getDimensions());
 
             if (currentX + dims.width > MAX_ROW_WIDTH) {
@@ -115,46 +186,65 @@ public class DungeonGridFitter implements DungeonFitter {
                 tallestRoomInRow = 0;
             }
 
-            // In real code, do a more robust collision check or attempt multiple positions.
-            placeRoom(room.getId(), dims.width, dims.height, currentX, currentY);
+            layout.set(i, room.getId(), currentX, currentY, dims.width, dims.height);
 
             currentX += dims.width + 2;
             if (dims.height > tallestRoomInRow) {
                 tallestRoomInRow = dims.height;
             }
-            placedCount++;
-            LOG.fine("Placed room#" + room.getId() + " at (" + currentX + "," + currentY + "), size "
-                    + dims.width + "x" + dims.height);
+        }
+
+        if (layoutOptimizer != null) {
+            RoomLayout optimized = layoutOptimizer.optimize(layout, corridors);
+            // The row layout never overlaps; don't trade it for one that does
+            if (optimized.hasOverlap()) {
+                LOG.warning("Optimized layout has overlapping rooms; using the row layout");
+            } else {
+                layout = optimized;
+            }
+        }
 
-            if (placedCount % 5 == 0) {
-                LOG.info("  ...placed " + placedCount + " rooms so far");
+        // In real code, do a more robust collision check or attempt multiple positions.
+        for (int i = 0; i < layout.size(); i++) {
+            placeRoom(layout.getRoomId(i), layout.getWidth(i), layout.getHeight(i),
+                      layout.getX(i), layout.getY(i));
+            LOG.fine("Placed room#" + layout.getRoomId(i) + " at (" + layout.getX(i) + "," + layout.getY(i)
+                     + "), size " + layout.getWidth(i) + "x" + layout.getHeight(i));
+
+            if ((i + 1) % 5 == 0) {
+                LOG.info("  ...placed " + (i + 1) + " rooms so far");
             }
         }
+        Rectangle placed = computeUsedBounds();
+        stats.setPlacedArea((long) placed.width * placed.height);
         LOG.info("All rooms placed.");
     }
 
-    private void placeRoom(int roomId, int width, int height, int startX, int startY) {
+    void placeRoom(int roomId, int width, int height, int startX, int startY) {
         for (int y = startY; y < startY + height; y++) {
             for (int x = startX; x < startX + width; x++) {
-                GridCell cell = getOrCreateCell(x, y);
-                cell.setCellType(GridCell.CellType.ROOM);
-                cell.setRoomId(roomId);
+                if (grid.getCellType(x, y) == GridCell.CellType.ROOM && grid.getRoomId(x, y) != roomId) {
+                    stats.addOverlapCell();
+                }
+                grid.setCell(x, y, GridCell.CellType.ROOM, roomId);
             }
         }
+        roomRects.put(roomId, new Rectangle(startX, startY, width, height));
         // We can eagerly compute boundary squares here if we want:
         // (Or we can do it lazily in findRoomBoundary)
         // We'll do lazy for demonstration.
     }
 
     /**
-     * Connect two rooms with a BFS corridor.
+     * Connect two rooms with a BFS corridor. Returns the path followed (empty if the
+     * corridor was skipped or no path was found).
      */
-    private void connectCorridor(Corridor corridor) {
+    List<Point> connectCorridor(Corridor corridor) {
         Room from = corridor.getFromRoom();
         Room to   = corridor.getToRoom();
         if (from == null || to == null) {
             // Probably a dead-end corridor or something. Skip.
-            return;
+            return Collections.emptyList();
         }
 
         int fromId = from.getId();
@@ -166,41 +256,63 @@ public class DungeonGridFitter implements DungeonFitter {
         if (fromBoundary.isEmpty() || toBoundary.isEmpty()) {
             LOG.fine("No boundary squares found for corridor: "
                      + fromId + "->" + toId);
-            return;
+            stats.addFailedCorridor();
+            return Collections.emptyList();
         }
 
-        // For demonstration, pick the first boundary in each list
-        // (or you might pick best pair via Manhattan distance)
-        Point start = fromBoundary.get(0);
-        Point goal  = toBoundary.get(0);
+        List<Point> path;
+        if (reuseCorridorNetwork) {
+            if (fromId == toId) {
+                return Collections.emptyList();
+            }
+            path = networkPath(fromId, fromBoundary, toId, toBoundary);
+        } else {
+            // Closest allowed pair of doors between the two rooms
+            DoorSelector.DoorPair doors = doorSelector.select(fromId, fromBoundary, toId, toBoundary);
+            if (doors == null) {
+                stats.addFailedCorridor();
+                return Collections.emptyList();
+            }
+            Point start = doors.from().cell();
+            Point goal  = doors.to().cell();
 
-        // BFS
-        List<Point> path = bfsPath(start, goal);
+            // BFS
+            path = bfsPath(start, goal);
+        }
 
         // Mark corridor squares (except if it's a room)
         if (!path.isEmpty()) {
             for (Point p : path) {
-                GridCell cell = getCell(p.x, p.y);
-                if (cell == null) {
-                    cell = getOrCreateCell(p.x, p.y);
-                }
-                if (cell.getCellType() == GridCell.CellType.EMPTY
-                        || cell.getCellType() == GridCell.CellType.CORRIDOR) {
-                    cell.setCellType(GridCell.CellType.CORRIDOR);
+                GridCell.CellType type = grid.getCellType(p.x, p.y);
+                if (type == GridCell.CellType.EMPTY) {
+                    grid.setCellType(p.x, p.y, GridCell.CellType.CORRIDOR);
+                    stats.addCorridorCell();
+                } else if (type == GridCell.CellType.CORRIDOR) {
+                    reusedCells++;
                 }
                 // If it's ROOM, we assume it's a boundary square
                 // that you can pass through as the "door."
             }
+            stats.addCorridorRouted();
             LOG.fine("Corridor connected rooms " + fromId + " -> " + toId
                      + " with path length: " + path.size());
         } else {
+            stats.addFailedCorridor();
             LOG.fine("No path found for corridor: " + fromId + "->" + toId);
         }
+        return path;
     }
 
     /**
      * BFS path from start->goal, ignoring room squares except for
      * start and goal (which might be room boundary).
+     * <p>
+     * Squares are int indices into a rectangle around start and goal; the queue, parent links and
+     * visited marks are the thread's reusable int arrays, and the grids' point reads don't allocate,
+     * so an expansion allocates nothing. If the search wants to step onto a passable square outside
+     * the rectangle it starts over on a wider one, so it finds exactly the path an unbounded search
+     * would. It gives up instead if the goal's side is closed in within the rectangle, since no
+     * wider search could reach it either.
      */
     private List<Point> bfsPath(Point start, Point goal) {
         // If start==goal, trivial path
@@ -208,69 +320,157 @@ public class DungeonGridFitter implements DungeonFitter {
             return Collections.singletonList(start);
         }
 
-        Queue<Point> queue = new ArrayDeque<>();
-        Map<Point, Point> cameFrom = new HashMap<>();
-        Set<Point> visited = new HashSet<>();
-
-        queue.add(start);
-        visited.add(start);
-        cameFrom.put(start, null);
+        SearchScratch scratch = SCRATCH.get();
+        long margin = Math.abs((long) start.x - goal.x) + Math.abs((long) start.y - goal.y) + BFS_MARGIN;
+        try {
+            while (true) {
+                long x0 = Math.min(start.x, goal.x) - margin;
+                long y0 = Math.min(start.y, goal.y) - margin;
+                long w = Math.abs((long) start.x - goal.x) + 2 * margin + 1;
+                long h = Math.abs((long) start.y - goal.y) + 2 * margin + 1;
+                if (w * h > BFS_MAX_CELLS) {
+                    LOG.fine("BFS from " + start + " to " + goal + " gave up at " + w + "x" + h + " squares");
+                    return Collections.emptyList();
+                }
+                List<Point> path = bfsInRegion(scratch, start, goal, (int) x0, (int) y0, (int) w, (int) h);
+                if (path != null) {
+                    return path;
+                }
+                if (goalEnclosed(scratch, start, goal, (int) x0, (int) y0, (int) w, (int) h)) {
+                    return Collections.emptyList();
+                }
+                margin *= 2;
+            }
+        } finally {
+            scratch.trim();
+        }
+    }
 
-        while (!queue.isEmpty()) {
-            Point current = queue.remove();
-            if (current.equals(goal)) {
+    /**
+     * One BFS confined to the w x h rectangle at (x0, y0). Returns the path, an empty list if the
+     * goal is unreachable, or null if the search reached the rectangle's edge.
+     */
+    private List<Point> bfsInRegion(SearchScratch scratch, Point start, Point goal, int x0, int y0, int w, int h) {
+        int epoch = scratch.nextEpoch(w * h);
+        int[] stamp = scratch.stamp;
+        int[] parent = scratch.parent;
+        int[] queue = scratch.fifo;   // every square is queued at most once, so it never wraps
+        int goalIndex = (goal.y - y0) * w + (goal.x - x0);
+        int head = 0;
+        int tail = 0;
+
+        int startIndex = (start.y - y0) * w + (start.x - x0);
+        stamp[startIndex] = epoch;
+        parent[startIndex] = -1;
+        queue[tail++] = startIndex;
+
+        long expansions = 0;
+        while (head < tail) {
+            int current = queue[head++];
+            expansions++;
+            if (current == goalIndex) {
                 // Found the goal => reconstruct path
-                return reconstructPath(cameFrom, goal);
+                stats.addSearchExpansions(expansions);
+                return reconstructPath(parent, goalIndex, x0, y0, w);
             }
-
-            // Expand neighbors
-            for (Point neighbor : getNeighbors(current, goal)) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    cameFrom.put(neighbor, current);
-                    queue.add(neighbor);
+            int x = x0 + current % w;
+            int y = y0 + current / w;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + BFS_DX[d];
+                int ny = y + BFS_DY[d];
+                if (!isPassable(nx, ny, goal)) {
+                    continue;
+                }
+                int col = nx - x0;
+                int row = ny - y0;
+                if (col < 0 || row < 0 || col >= w || row >= h) {
+                    return null; // an unbounded search would go here: widen and retry
+                }
+                int next = row * w + col;
+                if (stamp[next] != epoch) {
+                    stamp[next] = epoch;
+                    parent[next] = current;
+                    queue[tail++] = next;
                 }
             }
         }
 
         // no path
+        stats.addSearchExpansions(expansions);
         return Collections.emptyList();
     }
 
     /**
-     * Return neighbors that are passable: either corridor/empty
-     * or the goal cell if it’s a boundary room cell.
+     * Floods backwards from the goal over the squares the BFS may step onto. True if that flood
+     * dies out inside the w x h rectangle at (x0, y0) without meeting the start: the goal is then
+     * unreachable from anywhere outside it.
      */
-    private List<Point> getNeighbors(Point current, Point goal) {
-        List<Point> result = new ArrayList<>(4);
-        int[][] deltas = {{1,0},{-1,0},{0,1},{0,-1}};
-        for (int[] d : deltas) {
-            int nx = current.x + d[0];
-            int ny = current.y + d[1];
-
-            // If neighbor is out of known map, treat as empty
-            // (since we can expand the map arbitrarily).
-            GridCell neighborCell = getCell(nx, ny);
-
-            if (neighborCell == null) {
-                // "Empty" => passable
-                result.add(new Point(nx, ny));
-            } else {
-                // If it's corridor or empty, passable
-                if (neighborCell.getCellType() == GridCell.CellType.CORRIDOR
-                 || neighborCell.getCellType() == GridCell.CellType.EMPTY) {
-                    result.add(neighborCell.getCoordinate());
+    private boolean goalEnclosed(SearchScratch scratch, Point start, Point goal, int x0, int y0, int w, int h) {
+        int epoch = scratch.nextEpoch(w * h);
+        int[] stamp = scratch.stamp;
+        int[] queue = scratch.fifo;
+        int head = 0;
+        int tail = 0;
+        int goalIndex = (goal.y - y0) * w + (goal.x - x0);
+        stamp[goalIndex] = epoch;
+        queue[tail++] = goalIndex;
+        while (head < tail) {
+            int current = queue[head++];
+            int x = x0 + current % w;
+            int y = y0 + current / w;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + BFS_DX[d];
+                int ny = y + BFS_DY[d];
+                if (nx == start.x && ny == start.y) {
+                    return false;
                 }
-                // If it's ROOM, only pass if it's the goal cell
-                // (meaning the boundary of the target room).
-                else if (neighborCell.getCellType() == GridCell.CellType.ROOM) {
-                    if (neighborCell.getCoordinate().equals(goal)) {
-                        result.add(goal);
-                    }
+                if (!isPassable(nx, ny, goal)) {
+                    continue;
+                }
+                int col = nx - x0;
+                int row = ny - y0;
+                if (col < 0 || row < 0 || col >= w || row >= h) {
+                    return false;
+                }
+                int next = row * w + col;
+                if (stamp[next] != epoch) {
+                    stamp[next] = epoch;
+                    queue[tail++] = next;
                 }
             }
         }
-        return result;
+        return true;
+    }
+
+    /**
+     * Whether the BFS may step onto (x, y): corridor or empty squares,
+     * or the goal square if it's a boundary room square.
+     */
+    private boolean isPassable(int x, int y, Point goal) {
+        // Squares never written read as empty (we can expand the map arbitrarily),
+        // unless the grid has a fixed extent and this square lies outside it.
+        if (!grid.isWritable(x, y)) {
+            return false;
+        }
+        GridCell.CellType type = grid.getCellType(x, y);
+        if (type == GridCell.CellType.CORRIDOR || type == GridCell.CellType.EMPTY) {
+            return true;
+        }
+        // If it's ROOM, only pass if it's the goal cell
+        // (meaning the boundary of the target room).
+        return type == GridCell.CellType.ROOM && x == goal.x && y == goal.y;
+    }
+
+    private static List<Point> reconstructPath(int[] parent, int goalIndex, int x0, int y0, int w) {
+        int length = 0;
+        for (int i = goalIndex; i >= 0; i = parent[i]) {
+            length++;
+        }
+        Point[] path = new Point[length];
+        for (int i = goalIndex; i >= 0; i = parent[i]) {
+            path[--length] = new Point(x0 + i % w, y0 + i / w);
+        }
+        return Arrays.asList(path);
     }
 
     private List<Point> reconstructPath(Map<Point, Point> cameFrom, Point goal) {
@@ -284,6 +484,229 @@ public class DungeonGridFitter implements DungeonFitter {
         return path;
     }
 
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ NETWORK ROUTING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Multi-source search from every allowed door of the source room and every corridor
+     * square already connected to one of those doors, to any allowed door of the target room.
+     * A route that starts on the network records the door that network leaves the room by, so
+     * network reuse respects the same wall and per-room door rules as a fresh door. Existing corridor
+     * squares cost {@link #REUSED_CELL_COST}, new squares {@link #NEW_CELL_COST}, so the
+     * cheapest route rides the network as far as it usefully can and only carves the rest.
+     * If the target room is already reachable through the network, nothing new is carved.
+     */
+    private List<Point> networkPath(int fromId, List<Point> fromBoundary, int toId, List<Point> toBoundary) {
+        List<DoorSelector.Door> fromDoors = doorSelector.allowedDoors(fromId, fromBoundary);
+        Map<Point, DoorSelector.Door> toDoors = new HashMap<>();
+        for (DoorSelector.Door d : doorSelector.allowedDoors(toId, toBoundary)) {
+            toDoors.put(d.cell(), d);
+        }
+        Rectangle goalRect = roomRects.get(toId);
+        if (goalRect == null) {
+            return Collections.emptyList();
+        }
+        Rectangle used = grid.getUsedBounds();
+        int minX = used.x - SEARCH_MARGIN;
+        int maxX = used.x + used.width - 1 + SEARCH_MARGIN;
+        int minY = used.y - SEARCH_MARGIN;
+        int maxY = used.y + used.height - 1 + SEARCH_MARGIN;
+
+        SearchScratch scratch = SCRATCH.get().reset();
+        PriorityQueue<SearchNode> open = scratch.open;
+        Map<Point, Integer> bestCost = scratch.bestCost;
+        Map<Point, Point> cameFrom = scratch.cameFrom;
+
+        // Seed with the room's doors plus the network hanging off them, all at zero cost.
+        // Each seed maps to the door a route starting there leaves by.
+        Map<Point, DoorSelector.Door> seeds = new LinkedHashMap<>();
+        for (DoorSelector.Door d : fromDoors) {
+            seeds.put(d.cell(), d);
+        }
+        collectAttachedNetwork(fromDoors, scratch, seeds);
+        for (Point seed : seeds.keySet()) {
+            if (!bestCost.containsKey(seed)) {
+                bestCost.put(seed, 0);
+                cameFrom.put(seed, null);
+                open.add(new SearchNode(seed, 0, heuristic(seed, goalRect)));
+            }
+        }
+
+        int[][] deltas = {{1,0},{-1,0},{0,1},{0,-1}};
+        while (!open.isEmpty()) {
+            SearchNode node = open.remove();
+            if (node.cost() > bestCost.get(node.point())) {
+                continue; // stale queue entry
+            }
+            stats.addSearchExpansions(1);
+            Point current = node.point();
+            if (grid.getCellType(current.x, current.y) == GridCell.CellType.ROOM
+                    && grid.getRoomId(current.x, current.y) == toId) {
+                List<Point> path = reconstructPath(cameFrom, current);
+                doorSelector.recordDoor(fromId, seeds.get(path.get(0)));
+                doorSelector.recordDoor(toId, toDoors.get(current));
+                return path;
+            }
+
+            for (int[] d : deltas) {
+                int nx = current.x + d[0];
+                int ny = current.y + d[1];
+                if (nx < minX || nx > maxX || ny < minY || ny > maxY || !grid.isWritable(nx, ny)) {
+                    continue;
+                }
+                GridCell.CellType neighborType = grid.getCellType(nx, ny);
+                Point neighbor = new Point(nx, ny);
+                int stepCost;
+                if (neighborType == GridCell.CellType.EMPTY) {
+                    stepCost = NEW_CELL_COST;
+                } else if (neighborType == GridCell.CellType.CORRIDOR) {
+                    stepCost = REUSED_CELL_COST;
+                } else if (grid.getRoomId(nx, ny) == toId && toDoors.containsKey(neighbor)) {
+                    stepCost = 0; // stepping through one of the target room's doors
+                } else {
+                    continue; // some other room, or a wall square that may not become a door
+                }
+
+                int newCost = node.cost() + stepCost;
+                Integer known = bestCost.get(neighbor);
+                if (known == null || newCost < known) {
+                    bestCost.put(neighbor, newCost);
+                    cameFrom.put(neighbor, current);
+                    open.add(new SearchNode(neighbor, newCost, newCost + heuristic(neighbor, goalRect)));
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Flood-fill the corridor squares reachable (via corridors only) from the squares just
+     * outside the room's allowed doors, adding each to {@code network} with the door its part
+     * of the network is attached through. Corridors touching the room anywhere else are not
+     * doors and don't count.
+     */
+    private void collectAttachedNetwork(List<DoorSelector.Door> doors, SearchScratch scratch,
+                                        Map<Point, DoorSelector.Door> network) {
+        Set<Point> visited = scratch.visited;
+        Queue<Point> queue = scratch.queue;
+        int[][] deltas = {{1,0},{-1,0},{0,1},{0,-1}};
+
+        for (DoorSelector.Door door : doors) {
+            Point p = door.cell();
+            for (int[] d : deltas) {
+                Point n = new Point(p.x + d[0], p.y + d[1]);
+                if (!isCorridor(n) || !visited.add(n)) {
+                    continue;
+                }
+                // Flood this door's part of the network before the next door claims any of it
+                queue.add(n);
+                while (!queue.isEmpty()) {
+                    Point current = queue.remove();
+                    network.putIfAbsent(current, door);
+                    for (int[] step : deltas) {
+                        Point next = new Point(current.x + step[0], current.y + step[1]);
+                        if (isCorridor(next) && visited.add(next)) {
+                            queue.add(next);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isCorridor(Point p) {
+        return grid.getCellType(p.x, p.y) == GridCell.CellType.CORRIDOR;
+    }
+
+    /**
+     * Admissible estimate of the remaining cost: every step but the last (which enters
+     * the room for free) costs at least {@link #REUSED_CELL_COST}.
+     */
+    private int heuristic(Point p, Rectangle goalRect) {
+        int dx = Math.max(0, Math.max(goalRect.x - p.x, p.x - (goalRect.x + goalRect.width - 1)));
+        int dy = Math.max(0, Math.max(goalRect.y - p.y, p.y - (goalRect.y + goalRect.height - 1)));
+        return Math.max(0, dx + dy - 1) * REUSED_CELL_COST;
+    }
+
+    private record SearchNode(Point point, int cost, int priority) implements Comparable<SearchNode> {
+        @Override
+        public int compareTo(SearchNode other) {
+            return Integer.compare(priority, other.priority);
+        }
+    }
+
+    /**
+     * The collections a corridor search needs, kept per thread so steady-state fitting doesn't
+     * reallocate them for every corridor. A search takes them with {@link #reset()}.
+     */
+    private static final class SearchScratch {
+        // Past this many entries a collection is dropped rather than cleared, so one huge
+        // search doesn't leave every later clear() walking an oversized table
+        private static final int TRIM_SIZE = 1 << 16;
+
+        final ArrayDeque<Point> queue = new ArrayDeque<>();
+        HashMap<Point, Point> cameFrom = new HashMap<>();
+        HashSet<Point> visited = new HashSet<>();
+        final PriorityQueue<SearchNode> open = new PriorityQueue<>();
+        HashMap<Point, Integer> bestCost = new HashMap<>();
+
+        // BFS arrays, indexed by square within the search rectangle. A square is visited in the
+        // current search when its stamp equals epoch, so nothing is cleared between searches.
+        private static final int TRIM_CELLS = 1 << 22;
+        int[] stamp = new int[0];
+        int[] parent = new int[0];
+        int[] fifo = new int[0];
+        private int epoch;
+
+        /**
+         * Makes room for {@code cells} squares and starts a new search; returns its stamp.
+         */
+        int nextEpoch(int cells) {
+            if (stamp.length < cells) {
+                int capacity = (int) Math.min(BFS_MAX_CELLS, Math.max(cells, 2L * stamp.length));
+                stamp = new int[capacity];
+                parent = new int[capacity];
+                fifo = new int[capacity];
+                epoch = 0;
+            }
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                epoch = 0;
+            }
+            return ++epoch;
+        }
+
+        /** Drops BFS arrays a huge search left behind. */
+        void trim() {
+            if (stamp.length > TRIM_CELLS) {
+                stamp = new int[0];
+                parent = new int[0];
+                fifo = new int[0];
+                epoch = 0;
+            }
+        }
+
+        SearchScratch reset() {
+            queue.clear();
+            open.clear();
+            if (cameFrom.size() > TRIM_SIZE) {
+                cameFrom = new HashMap<>();
+            } else {
+                cameFrom.clear();
+            }
+            if (visited.size() > TRIM_SIZE) {
+                visited = new HashSet<>();
+            } else {
+                visited.clear();
+            }
+            if (bestCost.size() > TRIM_SIZE) {
+                bestCost = new HashMap<>();
+            } else {
+                bestCost.clear();
+            }
+            return this;
+        }
+    }
+
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ ROOM BOUNDARIES ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
     /**
@@ -306,11 +729,15 @@ public class DungeonGridFitter implements DungeonFitter {
      */
     private List<Point> findRoomBoundary(int roomId) {
         List<Point> boundary = new ArrayList<>();
-        for (GridCell cell : gridMap.values()) {
-            if (cell.getRoomId() == roomId) {
-                Point p = cell.getCoordinate();
-                if (isBoundary(p.x, p.y, roomId)) {
-                    boundary.add(p);
+        Rectangle rect = roomRects.get(roomId);
+        if (rect == null) {
+            return boundary;
+        }
+        // Only the room's own rectangle can hold its squares
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            for (int x = rect.x; x < rect.x + rect.width; x++) {
+                if (grid.getRoomId(x, y) == roomId && isBoundary(x, y, roomId)) {
+                    boundary.add(new Point(x, y));
                 }
             }
         }
@@ -323,44 +750,62 @@ public class DungeonGridFitter implements DungeonFitter {
         for (int[] d : deltas) {
             int nx = x + d[0];
             int ny = y + d[1];
-            GridCell nc = getCell(nx, ny);
-            // If no cell => treat as empty => boundary
-            if (nc == null) {
-                return true;
-            }
-            // If the neighbor is not the same room => boundary
-            if (nc.getRoomId() != roomId) {
+            // If the neighbor is empty, corridor or another room => boundary
+            if (grid.getRoomId(nx, ny) != roomId) {
                 return true;
             }
         }
         return false;
     }
 
-    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ GRID ACCESS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ INCREMENTAL HOOKS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    // Used by IncrementalDungeonFitter to apply edits to an existing fit.
 
     /**
-     * Get or create cell in O(1).
+     * Called with each corridor routed by {@link #fitDungeon} and the path it follows;
+     * records the path. Overrides must call this.
      */
-    private GridCell getOrCreateCell(int x, int y) {
-        Point key = new Point(x, y);
-        GridCell cell = gridMap.get(key);
-        if (cell == null) {
-            cell = new GridCell(x, y);
-            gridMap.put(key, cell);
-        }
-        return cell;
+    void onCorridorRouted(Corridor corridor, CorridorPath path) {
+        corridorPaths.put(corridor, path);
     }
 
     /**
-     * Get cell in O(1), or null if it doesn't exist.
+     * The live route map, for edits that forget or replace routes.
      */
-    private GridCell getCell(int x, int y) {
-        return gridMap.get(new Point(x, y));
+    Map<Corridor, CorridorPath> corridorPaths() {
+        return corridorPaths;
+    }
+
+    CellGrid writableGrid() {
+        return grid;
+    }
+
+    Rectangle roomRect(int roomId) {
+        return roomRects.get(roomId);
+    }
+
+    /**
+     * Erase a placed room's squares and forget its rectangle, boundary and doors.
+     */
+    void clearRoom(int roomId) {
+        Rectangle rect = roomRects.remove(roomId);
+        roomBoundaryCache.remove(roomId);
+        doorSelector.forgetRoom(roomId);
+        if (rect == null) {
+            return;
+        }
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            for (int x = rect.x; x < rect.x + rect.width; x++) {
+                if (grid.getCellType(x, y) == GridCell.CellType.ROOM && grid.getRoomId(x, y) == roomId) {
+                    grid.setCell(x, y, GridCell.CellType.EMPTY, 0);
+                }
+            }
+        }
     }
 
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ ROOM DIMENSION PARSING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
-    private Dimension parseRoomDimensions(String dims) {
+    static Dimension parseRoomDimensions(String dims) {
         try {
             // e.g. "20' x 30'" => split on 'x'
             String[] tokens = dims.split("x");
@@ -380,19 +825,34 @@ public class DungeonGridFitter implements DungeonFitter {
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ UTILS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 
     public Collection<GridCell> getAllCells() {
-        return Collections.unmodifiableCollection(gridMap.values());
+        return Collections.unmodifiableCollection(grid.toGridCells());
+    }
+
+    @Override
+    public CellGridView getGrid() {
+        return grid;
     }
 
     @Override
     public Rectangle getBounds() {
-        return null;
+        return bounds;
+    }
+
+    @Override
+    public FitStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public Map<Corridor, CorridorPath> getCorridorPaths() {
+        return Collections.unmodifiableMap(corridorPaths);
     }
 
 
     /**
      * Simple integer dimension for (width, height).
      */
-    private static class Dimension {
+    static class Dimension {
         final int width;
         final int height;
         Dimension(int w, int h) {
@@ -2,16 +2,17 @@ package us.n8l.mapgenerator;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Logger;
 
 public class DungeonGridViewer extends JFrame {
@@ -24,19 +25,50 @@ public class DungeonGridViewer extends JFrame {
     // The current in-memory dungeon object
     private Dungeon dungeon;
 
-    // The current fitter (BFS or A*), and bounding rectangle
-    private DungeonFitter fitter;
+    // The current fitted layout (BFS or A*), and bounding rectangle
+    private FitResult fitResult;
     private Rectangle bounds;
 
+    // Shared BFS fitters; each fit works on its own state, so one instance per mode is enough
+    private final DungeonGridFitter bfsFitter = new DungeonGridFitter(false);
+    private final DungeonGridFitter networkFitter = new DungeonGridFitter(true);
+
     // Panel to display the cells
     private final DungeonPanel dungeonPanel;
 
+    // Whether BFS fits should route onto the existing corridor network
+    private final JCheckBox reuseCorridorsBox;
+
+    // Whether BFS fits should anneal the room placement first
+    private final JCheckBox optimizeLayoutBox;
+
+    // Deterministic fits already computed this session
+    private final FitCache fitCache = new FitCache(64L << 20);
+
     // Jackson for JSON load/save
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     // Each cell is drawn as a square of this many pixels
     private static final int CELL_SIZE = 16;
 
+    // Zoom steps are powers of two around CELL_SIZE: squares are CELL_SIZE * 2^zoom pixels
+    private static final int MIN_ZOOM = -16;
+    private static final int MAX_ZOOM = 2;
+    private int zoom = 0;
+
+    // Below this many pixels per square, draw from the mipmaps instead of square by square
+    private static final int MIN_CELL_PIXELS = 4;
+    // Grid lines are only drawn from this many pixels per square
+    private static final int GRID_LINE_PIXELS = 8;
+
+    // Run-length copy and downsampled levels of the displayed layout, built in the background
+    // after each fit or load
+    private RunLengthGrid runs;
+    private MipmapPyramid mipmaps;
+    private CellGridView mipmapSource;
+
+    private final JScrollPane scrollPane;
+
     public DungeonGridViewer(AdvancedDungeonGenerator generator) {
         this.generator = generator;
 
@@ -46,7 +78,7 @@ public class DungeonGridViewer extends JFrame {
 
         // Center: scrollable panel for dungeon
         dungeonPanel = new DungeonPanel();
-        JScrollPane scrollPane = new JScrollPane(dungeonPanel);
+        scrollPane = new JScrollPane(dungeonPanel);
         add(scrollPane, BorderLayout.CENTER);
 
         // Bottom: panel with buttons
@@ -62,16 +94,40 @@ public class DungeonGridViewer extends JFrame {
         fitBFSBtn.addActionListener(this::onFitWithBFS);
         buttonPanel.add(fitBFSBtn);
 
+        reuseCorridorsBox = new JCheckBox("Reuse corridors");
+        buttonPanel.add(reuseCorridorsBox);
+
+        optimizeLayoutBox = new JCheckBox("Optimize layout");
+        buttonPanel.add(optimizeLayoutBox);
+
         // 3) Fit with AStar
         JButton fitAStarBtn = new JButton("Fit with AStar");
         fitAStarBtn.addActionListener(this::onFitWithAStar);
         buttonPanel.add(fitAStarBtn);
 
+        // 3b) Multi-start AStar, keeping the most compact layout
+        JButton fitMultiBtn = new JButton("Fit Multi-Start");
+        fitMultiBtn.addActionListener(this::onFitMultiStart);
+        buttonPanel.add(fitMultiBtn);
+
+        // 3c) Zoom; ctrl + mouse wheel does the same
+        JButton zoomInBtn = new JButton("Zoom In");
+        zoomInBtn.addActionListener(e -> zoomBy(1));
+        buttonPanel.add(zoomInBtn);
+        JButton zoomOutBtn = new JButton("Zoom Out");
+        zoomOutBtn.addActionListener(e -> zoomBy(-1));
+        buttonPanel.add(zoomOutBtn);
+
         // 4) Save PNG
         JButton savePngBtn = new JButton("Save as PNG");
         savePngBtn.addActionListener(this::onSaveAsPNG);
         buttonPanel.add(savePngBtn);
 
+        // 4b) Save SVG
+        JButton saveSvgBtn = new JButton("Save as SVG");
+        saveSvgBtn.addActionListener(this::onSaveAsSVG);
+        buttonPanel.add(saveSvgBtn);
+
         // 5) Save JSON
         JButton saveJsonBtn = new JButton("Save JSON");
         saveJsonBtn.addActionListener(this::onSaveAsJSON);
@@ -82,6 +138,21 @@ public class DungeonGridViewer extends JFrame {
         loadJsonBtn.addActionListener(this::onLoadJSON);
         buttonPanel.add(loadJsonBtn);
 
+        // 7) Save binary map
+        JButton saveBinaryBtn = new JButton("Save Binary");
+        saveBinaryBtn.addActionListener(this::onSaveAsBinary);
+        buttonPanel.add(saveBinaryBtn);
+
+        // 8) Load binary map
+        JButton loadBinaryBtn = new JButton("Load Binary");
+        loadBinaryBtn.addActionListener(this::onLoadBinary);
+        buttonPanel.add(loadBinaryBtn);
+
+        // 9) Pan around an endless chunked world
+        JButton exploreWorldBtn = new JButton("Explore World");
+        exploreWorldBtn.addActionListener(this::onExploreWorld);
+        buttonPanel.add(exploreWorldBtn);
+
         add(buttonPanel, BorderLayout.SOUTH);
 
         // Initially, generate a dungeon and fit with BFS by default (or none)
@@ -102,6 +173,7 @@ public class DungeonGridViewer extends JFrame {
 
     private void regenerateDungeon() {
         LOG.info("Regenerating a new dungeon...");
+        world = null;
         dungeon = generator.generateDungeon();
         // Let's not fit automatically here, so the user can choose BFS or A*
         // If you prefer an immediate fit, call onFitWithBFS(null) or onFitWithAStar(null).
@@ -117,8 +189,20 @@ public class DungeonGridViewer extends JFrame {
             return;
         }
         LOG.info("Fitting dungeon with BFS approach...");
-        fitter = new DungeonGridFitter();
-        bounds = fitter.fitDungeon(dungeon);
+        AnnealingLayoutOptimizer optimizer = optimizeLayoutBox.isSelected()
+                ? new AnnealingLayoutOptimizer(System.nanoTime(), AnnealingLayoutOptimizer.DEFAULT_MOVES,
+                                               Runtime.getRuntime().availableProcessors())
+                : null;
+        boolean reuse = reuseCorridorsBox.isSelected();
+        if (optimizer == null) {
+            // Plain BFS is deterministic, so refitting the same dungeon is a cache lookup
+            fitResult = fitCache.fit(dungeon, "bfs", 0L, "reuse=" + reuse, reuse ? networkFitter : bfsFitter);
+            LOG.info(fitCache.toString());
+        } else {
+            fitResult = new DungeonGridFitter(reuse, optimizer).fit(dungeon);
+        }
+        bounds = fitResult.getBounds();
+        reportConnectivity();
         updatePanelSizeAndRepaint();
     }
 
@@ -131,8 +215,25 @@ public class DungeonGridViewer extends JFrame {
             return;
         }
         LOG.info("Fitting dungeon with A* approach...");
-        fitter = new AStarDungeonGridFitter();
-        bounds = fitter.fitDungeon(dungeon);
+        fitResult = new AStarDungeonGridFitter().fit(dungeon);
+        bounds = fitResult.getBounds();
+        reportConnectivity();
+        updatePanelSizeAndRepaint();
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //               FIT MULTI-START
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    private void onFitMultiStart(ActionEvent e) {
+        if (dungeon == null) {
+            LOG.warning("No dungeon in memory to fit!");
+            return;
+        }
+        LOG.info("Fitting dungeon with multi-start A* approach...");
+        // A fresh seed per click, so pressing again can still find a better layout
+        fitResult = new MultiStartDungeonFitter(System.nanoTime()).fit(dungeon);
+        bounds = fitResult.getBounds();
+        reportConnectivity();
         updatePanelSizeAndRepaint();
     }
 
@@ -140,7 +241,8 @@ public class DungeonGridViewer extends JFrame {
     //               SAVE PNG
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     private void onSaveAsPNG(ActionEvent e) {
-        if (fitter == null) {
+        CellGridView grid = (fitResult != null) ? fitResult : loadedMap;
+        if (grid == null) {
             JOptionPane.showMessageDialog(this,
                     "No fitted layout to save. Fit the dungeon first.",
                     "No Fitter",
@@ -151,22 +253,14 @@ public class DungeonGridViewer extends JFrame {
         fc.setSelectedFile(new File("dungeon.png"));
         int choice = fc.showSaveDialog(this);
         if (choice == JFileChooser.APPROVE_OPTION) {
-            savePanelAsPNG(dungeonPanel, fc.getSelectedFile());
+            savePNG(grid, fc.getSelectedFile());
         }
     }
 
-    private void savePanelAsPNG(JPanel panel, File outFile) {
-        BufferedImage image = new BufferedImage(
-                panel.getWidth(),
-                panel.getHeight(),
-                BufferedImage.TYPE_INT_ARGB
-        );
-        Graphics2D g2 = image.createGraphics();
-        panel.paint(g2);
-        g2.dispose();
-
+    private void savePNG(CellGridView grid, File outFile) {
         try {
-            ImageIO.write(image, "png", outFile);
+            // Rendered straight from the cells in strips, so the panel never has to fit in memory
+            PngExporter.write(grid, grid.getUsedBounds(), CELL_SIZE, true, outFile.toPath());
             JOptionPane.showMessageDialog(this,
                     "Saved to " + outFile.getAbsolutePath(),
                     "PNG Saved",
@@ -180,11 +274,44 @@ public class DungeonGridViewer extends JFrame {
         }
     }
 
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //               SAVE SVG
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    private void onSaveAsSVG(ActionEvent e) {
+        CellGridView grid = (fitResult != null) ? fitResult : loadedMap;
+        if (grid == null) {
+            JOptionPane.showMessageDialog(this,
+                    "No fitted layout to save. Fit the dungeon first.",
+                    "No Fitter",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new File("dungeon.svg"));
+        int choice = fc.showSaveDialog(this);
+        if (choice == JFileChooser.APPROVE_OPTION) {
+            File outFile = fc.getSelectedFile();
+            try {
+                SvgExporter.write(grid, CELL_SIZE, outFile.toPath());
+                JOptionPane.showMessageDialog(this,
+                        "Saved to " + outFile.getAbsolutePath(),
+                        "SVG Saved",
+                        JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this,
+                        "Error: " + ex.getMessage(),
+                        "Save Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     //               SAVE JSON
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     private void onSaveAsJSON(ActionEvent e) {
-        if (fitter == null) {
+        if (fitResult == null) {
             JOptionPane.showMessageDialog(this,
                     "No fitted layout to save. Fit the dungeon first.",
                     "No Fitter",
@@ -202,7 +329,7 @@ public class DungeonGridViewer extends JFrame {
 
     private void saveDungeonAsJSON(File outFile) {
         try {
-            DungeonGridData data = buildDungeonGridData();
+            DungeonGridData data = DungeonGridData.of(fitResult, (dungeon != null) ? dungeon.getRooms() : null);
             objectMapper.writerWithDefaultPrettyPrinter().writeValue(outFile, data);
 
             JOptionPane.showMessageDialog(this,
@@ -218,39 +345,6 @@ public class DungeonGridViewer extends JFrame {
         }
     }
 
-    // Gathers the bounding rect and all cells from the fitter
-    // plus a list of rooms from the dungeon.
-    private DungeonGridData buildDungeonGridData() {
-        DungeonGridData data = new DungeonGridData();
-        if (bounds != null) {
-            data.rect = new RectDto(bounds.x, bounds.y, bounds.width, bounds.height);
-        }
-        if (fitter != null) {
-            List<GridCellDto> cellDtos = new ArrayList<>();
-            for (GridCell c : fitter.getAllCells()) {
-                GridCellDto dto = new GridCellDto();
-                dto.x = c.getCoordinate().x;
-                dto.y = c.getCoordinate().y;
-                dto.roomId = c.getRoomId();
-                dto.cellType = c.getCellType().name();
-                cellDtos.add(dto);
-            }
-            data.cells = cellDtos;
-        }
-        if (dungeon != null) {
-            List<RoomDto> roomDtos = new ArrayList<>();
-            for (Room r : dungeon.getRooms()) {
-                RoomDto rd = new RoomDto();
-                rd.id = r.getId();
-                rd.shape = (r.getShape() != null) ? r.getShape().name() : null;
-                rd.dimensions = r.getDimensions();
-                roomDtos.add(rd);
-            }
-            data.rooms = roomDtos;
-        }
-        return data;
-    }
-
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     //               LOAD JSON
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -268,26 +362,9 @@ public class DungeonGridViewer extends JFrame {
             DungeonGridData data = objectMapper.readValue(inFile, DungeonGridData.class);
 
             // rebuild dungeon: new memory
-            dungeon = new Dungeon();
-            // Rebuild rooms
-            if (data.rooms != null) {
-                for (RoomDto rd : data.rooms) {
-                    RoomShape shape;
-                    try {
-                        shape = (rd.shape != null) ? RoomShape.valueOf(rd.shape) : RoomShape.UNUSUAL;
-                    } catch (Exception ex) {
-                        shape = RoomShape.UNUSUAL;
-                    }
-                    // We'll create a new Room, hack the id if needed
-                    Room newRoom = new Room(shape, rd.dimensions) {
-                        @Override
-                        public int getId() {
-                            return rd.id;
-                        }
-                    };
-                    dungeon.addRoom(newRoom);
-                }
-            }
+            dungeon = rebuildDungeon(data.rooms);
+            closeLoadedMap();
+            world = null;
 
             // We'll keep the cell data for the fitter, but to unify with BFS/AStar approach,
             // let's just store them in a separate map so we can display them if we want
@@ -328,16 +405,148 @@ public class DungeonGridViewer extends JFrame {
         }
     }
 
+    // Rebuilds a dungeon (rooms only) from a saved room table
+    private static Dungeon rebuildDungeon(List<RoomDto> rooms) {
+        Dungeon rebuilt = new Dungeon();
+        if (rooms != null) {
+            for (RoomDto rd : rooms) {
+                RoomShape shape;
+                try {
+                    shape = (rd.shape != null) ? RoomShape.valueOf(rd.shape) : RoomShape.UNUSUAL;
+                } catch (Exception ex) {
+                    shape = RoomShape.UNUSUAL;
+                }
+                // We'll create a new Room, hack the id if needed
+                Room newRoom = new Room(shape, rd.dimensions) {
+                    @Override
+                    public int getId() {
+                        return rd.id;
+                    }
+                };
+                rebuilt.addRoom(newRoom);
+            }
+        }
+        return rebuilt;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //               SAVE / LOAD BINARY
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    private void onSaveAsBinary(ActionEvent e) {
+        if (fitResult == null) {
+            JOptionPane.showMessageDialog(this,
+                    "No fitted layout to save. Fit the dungeon first.",
+                    "No Fitter",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new File("dungeon.dmap"));
+        int choice = fc.showSaveDialog(this);
+        if (choice == JFileChooser.APPROVE_OPTION) {
+            File outFile = fc.getSelectedFile();
+            try {
+                BinaryMapFile.write(outFile.toPath(), fitResult, dungeon.getRooms(), true);
+                // Room-to-room distances go alongside, so route queries never need the grid
+                NavigationGraph.build(fitResult.getMap()).write(NavigationGraph.sidecarFor(outFile.toPath()));
+                JOptionPane.showMessageDialog(this,
+                        "Saved binary map to " + outFile.getAbsolutePath(),
+                        "Map Saved",
+                        JOptionPane.INFORMATION_MESSAGE);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                JOptionPane.showMessageDialog(this,
+                        "Error: " + ex.getMessage(),
+                        "Save Error",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private void onLoadBinary(ActionEvent e) {
+        JFileChooser fc = new JFileChooser();
+        fc.setSelectedFile(new File("dungeon.dmap"));
+        int choice = fc.showOpenDialog(this);
+        if (choice != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File inFile = fc.getSelectedFile();
+        try {
+            // Opening only maps the header and tile index; tiles page in as they are drawn
+            BinaryMapFile map = BinaryMapFile.open(inFile.toPath());
+            closeLoadedMap();
+            world = null;
+            loadedMap = map;
+            loadedCells.clear();
+            loadedBounds = null;
+            dungeon = rebuildDungeon(map.getRooms());
+            clearFitterData();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(this,
+                    "Error loading: " + ex.getMessage(),
+                    "Load Error",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void closeLoadedMap() {
+        if (loadedMap != null) {
+            try {
+                loadedMap.close();
+            } catch (IOException ex) {
+                LOG.warning("Failed to close binary map: " + ex.getMessage());
+            }
+            loadedMap = null;
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //               EXPLORE WORLD
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    private void onExploreWorld(ActionEvent e) {
+        LOG.info("Opening a new chunked world; drag to pan...");
+        world = new ChunkedWorld(System.nanoTime());
+        // Start with chunk (0, 0) in view
+        worldPixelX = 0;
+        worldPixelY = 0;
+        closeLoadedMap();
+        loadedCells.clear();
+        loadedBounds = null;
+        clearFitterData();
+    }
+
+    // An endless world, drawn when there's no fitter; chunks are generated as they scroll into view
+    private ChunkedWorld world;
+    // World pixel shown at the panel's top-left corner
+    private long worldPixelX;
+    private long worldPixelY;
+
+    // A memory-mapped binary map, drawn when there's no fitter
+    private BinaryMapFile loadedMap;
+
     // If you want to display the loaded cells exactly, you'd do it in the panel
     // if there's no new fitter. We'll keep them in memory and draw them if no fitter is chosen.
     private final List<GridCellDto> loadedCells = new ArrayList<>();
     private Rectangle loadedBounds = null;
 
+    /**
+     * Logs rooms the fit left unreachable and corridors it could not route.
+     */
+    private void reportConnectivity() {
+        ConnectivityValidator.Report report = ConnectivityValidator.validate(fitResult, dungeon);
+        if (report.isConnected()) {
+            LOG.info("Fitted layout is fully connected.");
+        } else {
+            LOG.warning("Fitted layout is not fully connected: " + report);
+        }
+    }
+
     /**
      * Clears the current fitter, so we revert to no fitted data.
      */
     private void clearFitterData() {
-        fitter = null;
+        fitResult = null;
         bounds = null;
         updatePanelSizeAndRepaint();
     }
@@ -347,35 +556,171 @@ public class DungeonGridViewer extends JFrame {
      */
     private void updatePanelSizeAndRepaint() {
         // If we have a fitter & bounds, size accordingly
-        if (fitter != null && bounds != null) {
-            int w = bounds.width * CELL_SIZE + 1;
-            int h = bounds.height * CELL_SIZE + 1;
-            dungeonPanel.setPreferredSize(new Dimension(w, h));
+        if (fitResult != null && bounds != null) {
+            dungeonPanel.setPreferredSize(zoomedSize(bounds));
         }
         // else if we only have loadedCells, we might adapt to loadedBounds
         else if (!loadedCells.isEmpty() && loadedBounds != null) {
             int w = loadedBounds.width * CELL_SIZE + 1;
             int h = loadedBounds.height * CELL_SIZE + 1;
             dungeonPanel.setPreferredSize(new Dimension(w, h));
+        }
+        // else if we're exploring a world, fill the visible area; panning replaces scrolling
+        else if (world != null) {
+            Container viewport = dungeonPanel.getParent();
+            dungeonPanel.setPreferredSize((viewport != null && viewport.getWidth() > 0)
+                    ? viewport.getSize() : new Dimension(1024, 768));
+        }
+        // else if we have a binary map open, size to its bounds
+        else if (loadedMap != null) {
+            dungeonPanel.setPreferredSize(zoomedSize(loadedMap.getUsedBounds()));
         } else {
             // default
             dungeonPanel.setPreferredSize(new Dimension(400, 300));
         }
+        CellGridView shown = (fitResult != null) ? fitResult : loadedMap;
+        if (shown != mipmapSource) {
+            startMipmapBuild(shown);
+        }
         dungeonPanel.revalidate();
         dungeonPanel.repaint();
     }
 
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+    //               ZOOM
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Pixels per square at the current zoom; a fraction when zoomed out past one square per pixel.
+     */
+    private double cellPixels() {
+        return Math.scalb((double) CELL_SIZE, zoom);
+    }
+
+    private Dimension zoomedSize(Rectangle area) {
+        double p = cellPixels();
+        int extra = (p >= GRID_LINE_PIXELS) ? 1 : 0;
+        return new Dimension((int) Math.min(Integer.MAX_VALUE / 2, Math.ceil(area.width * p) + extra),
+                (int) Math.min(Integer.MAX_VALUE / 2, Math.ceil(area.height * p) + extra));
+    }
+
+    /**
+     * Zooms by {@code steps} powers of two, keeping the square at the centre of the view in place.
+     * Only a fitted layout or an open binary map zooms; the endless world and cells loaded from
+     * JSON always show at the default zoom.
+     */
+    private void zoomBy(int steps) {
+        int newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom + steps));
+        boolean zoomable = fitResult != null || world == null && loadedMap != null;
+        if (newZoom == zoom || !zoomable) {
+            return;
+        }
+        JViewport viewport = scrollPane.getViewport();
+        Point pos = viewport.getViewPosition();
+        Dimension extent = viewport.getExtentSize();
+        double centreX = (pos.x + extent.width / 2.0) / cellPixels();
+        double centreY = (pos.y + extent.height / 2.0) / cellPixels();
+        zoom = newZoom;
+        updatePanelSizeAndRepaint();
+        scrollPane.validate();
+        Dimension size = dungeonPanel.getPreferredSize();
+        int x = (int) Math.round(centreX * cellPixels() - extent.width / 2.0);
+        int y = (int) Math.round(centreY * cellPixels() - extent.height / 2.0);
+        viewport.setViewPosition(new Point(Math.max(0, Math.min(x, size.width - extent.width)),
+                Math.max(0, Math.min(y, size.height - extent.height))));
+        LOG.fine("Zoom " + zoom + ": " + cellPixels() + " pixels per square");
+    }
+
+    private record Overview(RunLengthGrid runs, MipmapPyramid mipmaps) {
+    }
+
+    /**
+     * Builds the run-length copy and the mipmaps of a newly shown layout off the event thread;
+     * until they arrive, views are drawn square by square or point-sampled from the squares.
+     */
+    private void startMipmapBuild(CellGridView grid) {
+        runs = null;
+        mipmaps = null;
+        mipmapSource = grid;
+        if (grid == null) {
+            return;
+        }
+        new SwingWorker<Overview, Void>() {
+            @Override
+            protected Overview doInBackground() {
+                RunLengthGrid encoded = RunLengthGrid.of(grid);
+                return new Overview(encoded, MipmapPyramid.build(encoded));
+            }
+
+            @Override
+            protected void done() {
+                if (mipmapSource != grid) {
+                    return; // another layout replaced it meanwhile
+                }
+                try {
+                    Overview overview = get();
+                    runs = overview.runs();
+                    mipmaps = overview.mipmaps();
+                    dungeonPanel.repaint();
+                } catch (InterruptedException | ExecutionException ex) {
+                    LOG.warning("Failed to build mipmaps: " + ex.getMessage());
+                }
+            }
+        }.execute();
+    }
+
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     //               RENDER PANEL
     // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
     private class DungeonPanel extends JPanel {
+
+        DungeonPanel() {
+            // Dragging pans the world view
+            MouseAdapter panner = new MouseAdapter() {
+                private Point last;
+
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    last = e.getPoint();
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    if (world == null || last == null || fitResult != null) {
+                        return;
+                    }
+                    worldPixelX -= e.getX() - last.x;
+                    worldPixelY -= e.getY() - last.y;
+                    last = e.getPoint();
+                    repaint();
+                }
+            };
+            addMouseListener(panner);
+            addMouseMotionListener(panner);
+
+            // Ctrl + wheel zooms; a plain wheel still scrolls
+            addMouseWheelListener(e -> {
+                if (e.isControlDown()) {
+                    zoomBy(-e.getWheelRotation());
+                } else {
+                    scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(this, e, scrollPane));
+                }
+            });
+        }
+
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
 
-            if (fitter != null && bounds != null) {
+            if (fitResult != null && bounds != null) {
                 // We have an actively fitted layout. Draw from the fitter's cells.
-                drawFitterCells(g);
+                drawGridCells(g, fitResult, bounds);
+            } else if (world != null) {
+                // Only the chunks under the visible squares are generated (or kept cached)
+                drawWorld(g);
+            } else if (loadedMap != null) {
+                // We have a binary map open; only the visible tiles get paged in.
+                drawGridCells(g, loadedMap, loadedMap.getUsedBounds());
             } else if (!loadedCells.isEmpty() && loadedBounds != null) {
                 // We have a loaded layout from JSON, but haven't re-fitted.
                 // Draw from loaded cells.
@@ -387,21 +732,120 @@ public class DungeonGridViewer extends JFrame {
             }
         }
 
-        private void drawFitterCells(Graphics g) {
-            // We'll just loop over the bounding rect
-            for (int row = 0; row < bounds.height; row++) {
-                for (int col = 0; col < bounds.width; col++) {
-                    int xGrid = bounds.x + col;
-                    int yGrid = bounds.y + row;
+        private void drawGridCells(Graphics g, CellGridView grid, Rectangle area) {
+            double p = cellPixels();
+            if (p < MIN_CELL_PIXELS) {
+                drawZoomedOut(g, grid, area, p);
+                return;
+            }
+            int size = (int) p;
+            boolean gridLines = size >= GRID_LINE_PIXELS;
+            // Loop over the part of the bounding rect inside the clip
+            java.awt.Rectangle clip = g.getClipBounds();
+            int firstRow = 0, lastRow = area.height, firstCol = 0, lastCol = area.width;
+            if (clip != null) {
+                firstRow = Math.max(0, clip.y / size);
+                lastRow = Math.min(area.height, (clip.y + clip.height) / size + 1);
+                firstCol = Math.max(0, clip.x / size);
+                lastCol = Math.min(area.width, (clip.x + clip.width) / size + 1);
+            }
+            if (runs != null && mipmapSource == grid) {
+                drawRuns(g, area, size, gridLines, firstRow, lastRow, firstCol, lastCol);
+                return;
+            }
+            for (int row = firstRow; row < lastRow; row++) {
+                for (int col = firstCol; col < lastCol; col++) {
+                    int xGrid = area.x + col;
+                    int yGrid = area.y + row;
 
-                    // Find cell if it exists
-                    GridCell cell = findCell(fitter.getAllCells(), xGrid, yGrid);
-                    GridCell.CellType cellType = (cell != null)
-                            ? cell.getCellType()
-                            : GridCell.CellType.EMPTY;
+                    // O(1) lookup in the grid
+                    GridCell.CellType cellType = grid.getCellType(xGrid, yGrid);
 
-                    int px = col * CELL_SIZE;
-                    int py = row * CELL_SIZE;
+                    int px = col * size;
+                    int py = row * size;
+
+                    Color fill = switch (cellType) {
+                        case ROOM -> new Color(220, 220, 220);
+                        case CORRIDOR -> new Color(200, 200, 255);
+                        default -> new Color(48, 48, 48);
+                    };
+                    g.setColor(fill);
+                    g.fillRect(px, py, size, size);
+
+                    if (gridLines) {
+                        g.setColor(Color.BLACK);
+                        g.drawRect(px, py, size, size);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Draws the visible rows and columns from the run-length copy: one fill for the empty
+         * background, one per run in view and one line per grid row and column, however many
+         * squares are visible.
+         */
+        private void drawRuns(Graphics g, Rectangle area, int size, boolean gridLines,
+                              int firstRow, int lastRow, int firstCol, int lastCol) {
+            if (firstRow >= lastRow || firstCol >= lastCol) {
+                return;
+            }
+            g.setColor(new Color(48, 48, 48));
+            g.fillRect(firstCol * size, firstRow * size, (lastCol - firstCol) * size, (lastRow - firstRow) * size);
+            Color room = new Color(220, 220, 220);
+            Color corridor = new Color(200, 200, 255);
+            Rectangle visible = new Rectangle(area.x + firstCol, area.y + firstRow, lastCol - firstCol, lastRow - firstRow);
+            runs.forEachRun(visible, (y, x, length, type, roomId) -> {
+                g.setColor(type == GridCell.CellType.ROOM ? room : corridor);
+                g.fillRect((x - area.x) * size, (y - area.y) * size, length * size, size);
+            });
+            if (gridLines) {
+                g.setColor(Color.BLACK);
+                for (int row = firstRow; row <= lastRow; row++) {
+                    g.drawLine(firstCol * size, row * size, lastCol * size, row * size);
+                }
+                for (int col = firstCol; col <= lastCol; col++) {
+                    g.drawLine(col * size, firstRow * size, col * size, lastRow * size);
+                }
+            }
+        }
+
+        /**
+         * Far zoom: one scaled blit of the matching mipmap level, with no grid lines. Before the
+         * mipmaps are ready, the visible area is point-sampled instead.
+         */
+        private void drawZoomedOut(Graphics g, CellGridView grid, Rectangle area, double p) {
+            int level = (mipmaps != null && mipmapSource == grid) ? mipmaps.levelFor(1 / p) : -1;
+            if (level >= 0) {
+                BufferedImage image = mipmaps.getLevel(level);
+                double scale = Math.scalb(p, level);
+                g.drawImage(image, 0, 0, (int) Math.ceil(image.getWidth() * scale),
+                        (int) Math.ceil(image.getHeight() * scale), null);
+                return;
+            }
+            java.awt.Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new java.awt.Rectangle(0, 0, getWidth(), getHeight());
+            }
+            if (clip.width > 0 && clip.height > 0) {
+                g.drawImage(MipmapPyramid.sample(grid, area, p, clip.x, clip.y, clip.width, clip.height),
+                        clip.x, clip.y, null);
+            }
+        }
+
+        private void drawWorld(Graphics g) {
+            int firstCol = (int) Math.floorDiv(worldPixelX, CELL_SIZE);
+            int firstRow = (int) Math.floorDiv(worldPixelY, CELL_SIZE);
+            int shiftX = Math.floorMod(worldPixelX, CELL_SIZE);
+            int shiftY = Math.floorMod(worldPixelY, CELL_SIZE);
+            int cols = getWidth() / CELL_SIZE + 2;
+            int rows = getHeight() / CELL_SIZE + 2;
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    GridCell.CellType cellType = world.getCellType(firstCol + col, firstRow + row);
+
+                    int px = col * CELL_SIZE - shiftX;
+                    int py = row * CELL_SIZE - shiftY;
 
                     Color fill = switch (cellType) {
                         case ROOM -> new Color(220, 220, 220);
@@ -415,6 +859,8 @@ public class DungeonGridViewer extends JFrame {
                     g.drawRect(px, py, CELL_SIZE, CELL_SIZE);
                 }
             }
+            g.setColor(Color.WHITE);
+            g.drawString("(" + firstCol + "," + firstRow + ")  chunks cached: " + world.cachedChunks(), 8, 16);
         }
 
         private void drawLoadedCells(Graphics g) {
@@ -446,15 +892,6 @@ public class DungeonGridViewer extends JFrame {
             }
         }
 
-        private GridCell findCell(Collection<GridCell> cells, int x, int y) {
-            for (GridCell c : cells) {
-                if (c.getCoordinate().x == x && c.getCoordinate().y == y) {
-                    return c;
-                }
-            }
-            return null;
-        }
-
         private GridCellDto findLoadedCell(int x, int y) {
             for (GridCellDto dto : loadedCells) {
                 if (dto.x == x && dto.y == y) {
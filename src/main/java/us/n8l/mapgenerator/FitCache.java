@@ -0,0 +1,337 @@
+package us.n8l.mapgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Caches fitted layouts so refitting the same dungeon with the same deterministic fitter
+ * becomes a lookup.
+ * <p>
+ * Entries are keyed by a canonical {@link #contentHash(Dungeon) content hash} of the dungeon
+ * plus the fitter type, seed and config. The hash uses each room's position in the room list
+ * rather than its (process-global) id, so two identical dungeons built at different times hash
+ * the same; cached grids store room positions too and are mapped back to the caller's room ids
+ * on a hit. Corridor routes are stored by corridor position and handed back against the
+ * caller's corridors in the same way.
+ * <p>
+ * Grids are held as {@link RunLengthGrid}s, so an entry's size follows the layout's rooms and
+ * corridors rather than its bounding box. The in-memory tier is an LRU bounded by grid and route
+ * bytes. With a directory, entries are also written through to disk (a small key/stats/routes
+ * prefix followed by the runs) and
+ * memory misses fall back to it; the directory is not size-bounded. Thread-safe; concurrent
+ * misses on one key may both fit.
+ */
+public class FitCache {
+
+    private static final Logger LOG = Logger.getLogger(FitCache.class.getName());
+
+    private static final int DISK_MAGIC = 0x46495434; // "FIT4"; older entries are refitted
+
+    /**
+     * What a cached fit is keyed by. Only deterministic fits (fixed seed, or no randomness) belong here.
+     */
+    public record Key(long contentHash, String fitterType, long seed, String config) {
+    }
+
+    /**
+     * A fit with room positions (1-based, 0 for none) in place of room ids, and corridor routes
+     * by corridor position (empty if the fitter keeps none).
+     */
+    private record Entry(RunLengthGrid grid, Rectangle bounds, FitStats stats, CorridorPath[] paths) {
+        long sizeInBytes() {
+            long size = grid.sizeInBytes();
+            for (CorridorPath path : paths) {
+                size += path.sizeInBytes();
+            }
+            return size;
+        }
+    }
+
+    private final long maxBytes;
+    private final Path directory; // null for memory only
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * A memory-only cache holding at most {@code maxBytes} of grid data.
+     */
+    public FitCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * A cache with an on-disk tier in {@code directory} (created if needed).
+     */
+    public FitCache(long maxBytes, Path directory) {
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot create cache directory " + directory, e);
+            }
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ LOOKUP ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Returns the cached fit of {@code dungeon} under (fitterType, seed, config), or fits it with
+     * {@code fitter} (via {@link DungeonFitter#fit}, so a shared fitter is fine) and caches the result.
+     */
+    public FitResult fit(Dungeon dungeon, String fitterType, long seed, String config, DungeonFitter fitter) {
+        Key key = new Key(contentHash(dungeon), fitterType, seed, config);
+        List<Room> rooms = dungeon.getRooms();
+        List<Corridor> corridors = dungeon.getCorridors();
+
+        Entry entry = lookup(key);
+        if (entry != null) {
+            RunLengthGrid grid = entry.grid().mapRoomIds(
+                    position -> (position <= rooms.size()) ? rooms.get(position - 1).getId() : 0);
+            Map<Corridor, CorridorPath> paths = new LinkedHashMap<>();
+            for (int i = 0; i < entry.paths().length; i++) {
+                paths.put(corridors.get(i), entry.paths()[i]);
+            }
+            return new FitResult(FittedMap.of(grid), entry.bounds(), FitResult.copyOf(entry.stats()), paths);
+        }
+
+        FitResult result = fitter.fit(dungeon);
+
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            positions.put(rooms.get(i).getId(), i + 1);
+        }
+        RunLengthGrid snapshot = RunLengthGrid.of(result.getMap()).mapRoomIds(id -> positions.getOrDefault(id, 0));
+        CorridorPath[] paths = new CorridorPath[result.getCorridorPaths().isEmpty() ? 0 : corridors.size()];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = result.getCorridorPaths().getOrDefault(corridors.get(i), CorridorPath.EMPTY);
+        }
+        Entry fresh = new Entry(snapshot, result.getBounds(), FitResult.copyOf(result.getStats()), paths);
+        store(key, fresh);
+        if (directory != null) {
+            writeToDisk(key, fresh);
+        }
+        return result;
+    }
+
+    private Entry lookup(Key key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+        }
+        Entry entry = (directory != null) ? readFromDisk(key) : null;
+        synchronized (this) {
+            if (entry != null) {
+                diskHits++;
+            } else {
+                misses++;
+            }
+        }
+        if (entry != null) {
+            store(key, entry);
+        }
+        return entry;
+    }
+
+    private synchronized void store(Key key, Entry entry) {
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.sizeInBytes();
+        }
+        bytes += entry.sizeInBytes();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && entries.size() > 1) {
+            bytes -= eldest.next().sizeInBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ STATS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FitCache[entries=" + entries.size() + ", bytes=" + bytes + ", hits=" + hits
+               + ", diskHits=" + diskHits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ CONTENT HASH ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * A 64-bit FNV-1a hash of the dungeon's rooms (shape, dimensions) and corridors (end room
+     * positions, length, kind and its details), in list order. Independent of room ids.
+     */
+    public static long contentHash(Dungeon dungeon) {
+        Map<Room, Integer> positions = new IdentityHashMap<>();
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, dungeon.getRooms().size());
+        for (Room r : dungeon.getRooms()) {
+            positions.put(r, positions.size());
+            h = mix(h, (r.getShape() == null) ? -1 : r.getShape().ordinal());
+            h = mix(h, r.getDimensions());
+        }
+        h = mix(h, dungeon.getCorridors().size());
+        for (Corridor c : dungeon.getCorridors()) {
+            h = mix(h, (c.getFromRoom() == null) ? -1 : positions.getOrDefault(c.getFromRoom(), -2));
+            h = mix(h, (c.getToRoom() == null) ? -1 : positions.getOrDefault(c.getToRoom(), -2));
+            h = mix(h, c.getLengthFeet());
+            h = mix(h, c.getKind().ordinal());
+            h = mix(h, ordinalOf(c.getDoorLocation()));
+            h = mix(h, ordinalOf(c.getSidePassageDirection()));
+            h = mix(h, ordinalOf(c.getTurnType()));
+            h = mix(h, ordinalOf(c.getStairsType()));
+            h = mix(h, c.getWidthFeet());
+            h = mix(h, c.getAngleDegrees());
+            h = mix(h, (c.getKind() == Corridor.Kind.CUSTOM) ? c.getDescription() : null);
+        }
+        return h;
+    }
+
+    private static int ordinalOf(Enum<?> value) {
+        return (value == null) ? -1 : value.ordinal();
+    }
+
+    private static long mix(long h, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            h ^= (value >>> shift) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long mix(long h, String value) {
+        if (value == null) {
+            return mix(h, -1);
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        h = mix(h, utf8.length);
+        for (byte b : utf8) {
+            h ^= (b & 0xFF);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ DISK TIER ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private Path fileFor(Key key) {
+        long h = mix(mix(mix(key.contentHash() ^ 0xcbf29ce484222325L, key.fitterType()),
+                (int) key.seed() ^ (int) (key.seed() >>> 32)), key.config());
+        return directory.resolve(String.format("%016x.fit", h));
+    }
+
+    private void writeToDisk(Key key, Entry entry) {
+        Path file = fileFor(key);
+        try {
+            Path tmp = Files.createTempFile(directory, "fit", ".tmp");
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                out.writeInt(DISK_MAGIC);
+                out.writeLong(key.contentHash());
+                out.writeUTF(key.fitterType());
+                out.writeLong(key.seed());
+                out.writeUTF(key.config());
+                Rectangle b = entry.bounds();
+                out.writeInt(b.x);
+                out.writeInt(b.y);
+                out.writeInt(b.width);
+                out.writeInt(b.height);
+                FitStats s = entry.stats();
+                out.writeLong(s.getPlacedArea());
+                out.writeInt(s.getOverlapCells());
+                out.writeInt(s.getCorridorsRouted());
+                out.writeInt(s.getFailedCorridors());
+                out.writeInt(s.getCorridorCells());
+                out.writeLong(s.getSearchExpansions());
+                out.writeInt(entry.paths().length);
+                for (CorridorPath path : entry.paths()) {
+                    path.write(out);
+                }
+                entry.grid().write(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warning("Could not write fit cache entry " + file + ": " + e.getMessage());
+        }
+    }
+
+    private Entry readFromDisk(Key key) {
+        Path file = fileFor(key);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (in.getInt() != DISK_MAGIC) {
+                return null;
+            }
+            // The file name is only a hash; make sure the entry really is for this key
+            if (in.getLong() != key.contentHash()
+                || !BinaryMapFile.readUTF(in).equals(key.fitterType())
+                || in.getLong() != key.seed()
+                || !BinaryMapFile.readUTF(in).equals(key.config())) {
+                return null;
+            }
+            Rectangle bounds = new Rectangle(in.getInt(), in.getInt(), in.getInt(), in.getInt());
+            FitStats stats = new FitStats(in.getLong(), in.getInt(), in.getInt(), in.getInt(), in.getInt(), in.getLong());
+            CorridorPath[] paths = new CorridorPath[in.getInt()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = CorridorPath.read(in);
+            }
+            return new Entry(RunLengthGrid.read(in), bounds, stats, paths);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            LOG.warning("Ignoring unreadable fit cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package us.n8l.mapgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A finished, immutable layout as returned by {@link DungeonFitter#fit}: the fitted squares,
+ * their bounding rectangle, the route of each corridor and the counters collected while fitting.
+ * <p>
+ * The squares are held in a {@link FittedMap}, so a result is safe to share between threads
+ * and stays valid however the fitter that produced it is used next.
+ */
+public final class FitResult implements CellGridView {
+
+    private final FittedMap map;
+    private final Rectangle bounds;
+    private final FitStats stats;
+    private final Map<Corridor, CorridorPath> corridorPaths;
+
+    FitResult(FittedMap map, Rectangle bounds, FitStats stats, Map<Corridor, CorridorPath> corridorPaths) {
+        this.map = map;
+        this.bounds = bounds;
+        this.stats = stats;
+        this.corridorPaths = Collections.unmodifiableMap(new LinkedHashMap<>(corridorPaths));
+    }
+
+    /**
+     * Snapshots a fitter whose {@code fitDungeon} has just run.
+     */
+    static FitResult of(DungeonFitter finished) {
+        FittedMap snapshot = FittedMap.of(finished.getGrid());
+        return new FitResult(snapshot, snapshot.getUsedBounds(), copyOf(finished.getStats()),
+                finished.getCorridorPaths());
+    }
+
+    /**
+     * Closes a grid made for a single {@link DungeonFitter#fit} call once it has been
+     * snapshotted, if it holds resources (e.g. a file-backed {@link OffHeapCellGrid}).
+     */
+    static void release(CellGrid grid) {
+        if (grid instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    static FitStats copyOf(FitStats s) {
+        return new FitStats(s.getPlacedArea(), s.getOverlapCells(), s.getCorridorsRouted(),
+                s.getFailedCorridors(), s.getCorridorCells(), s.getSearchExpansions());
+    }
+
+    /**
+     * Bounding rectangle of every placed square.
+     */
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    public FitStats getStats() {
+        return stats;
+    }
+
+    /**
+     * The route of each corridor in routing order, {@link CorridorPath#EMPTY} for corridors
+     * that could not be routed. Empty if the fitter does not keep routes.
+     */
+    public Map<Corridor, CorridorPath> getCorridorPaths() {
+        return corridorPaths;
+    }
+
+    /**
+     * The route of one corridor, or null if it was not fitted.
+     */
+    public CorridorPath getCorridorPath(Corridor corridor) {
+        return corridorPaths.get(corridor);
+    }
+
+    /**
+     * The fitted squares as bitset layers, a room raster and per-room bounding boxes.
+     */
+    public FittedMap getMap() {
+        return map;
+    }
+
+    /**
+     * The non-EMPTY squares as GridCell objects (allocated on each call).
+     */
+    public Collection<GridCell> getAllCells() {
+        return Collections.unmodifiableCollection(map.toGridCells());
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ CellGridView ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        return map.getCellType(x, y);
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        return map.getRoomId(x, y);
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        return bounds;
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        return map.toGridCells();
+    }
+
+    @Override
+    public String toString() {
+        return "FitResult[bounds=" + bounds + ", " + stats + "]";
+    }
+}
@@ -0,0 +1,85 @@
+package us.n8l.mapgenerator;
+
+/**
+ * Counters collected by a fitter while it places rooms and routes corridors.
+ * Used to compare layouts (see {@link MultiStartDungeonFitter}) and for logging.
+ */
+public class FitStats {
+    private long placedArea;       // bounding area covered by the rooms alone
+    private int overlapCells;      // room squares that overwrote another room
+    private int corridorsRouted;
+    private int failedCorridors;
+    private int corridorCells;     // corridor squares carved (not counting reused ones)
+    private long searchExpansions; // nodes visited by the corridor searches
+
+    public FitStats() {
+    }
+
+    /**
+     * Restores saved counters (e.g. from a cached fit).
+     */
+    FitStats(long placedArea, int overlapCells, int corridorsRouted, int failedCorridors,
+             int corridorCells, long searchExpansions) {
+        this.placedArea = placedArea;
+        this.overlapCells = overlapCells;
+        this.corridorsRouted = corridorsRouted;
+        this.failedCorridors = failedCorridors;
+        this.corridorCells = corridorCells;
+        this.searchExpansions = searchExpansions;
+    }
+
+    public long getPlacedArea() {
+        return placedArea;
+    }
+
+    public int getOverlapCells() {
+        return overlapCells;
+    }
+
+    public int getCorridorsRouted() {
+        return corridorsRouted;
+    }
+
+    public int getFailedCorridors() {
+        return failedCorridors;
+    }
+
+    public int getCorridorCells() {
+        return corridorCells;
+    }
+
+    public long getSearchExpansions() {
+        return searchExpansions;
+    }
+
+    void setPlacedArea(long placedArea) {
+        this.placedArea = placedArea;
+    }
+
+    void addOverlapCell() {
+        overlapCells++;
+    }
+
+    void addCorridorRouted() {
+        corridorsRouted++;
+    }
+
+    void addFailedCorridor() {
+        failedCorridors++;
+    }
+
+    void addCorridorCell() {
+        corridorCells++;
+    }
+
+    void addSearchExpansions(long n) {
+        searchExpansions += n;
+    }
+
+    @Override
+    public String toString() {
+        return "FitStats[placedArea=" + placedArea + ", overlaps=" + overlapCells
+               + ", routed=" + corridorsRouted + ", failed=" + failedCorridors
+               + ", corridorCells=" + corridorCells + ", expansions=" + searchExpansions + "]";
+    }
+}
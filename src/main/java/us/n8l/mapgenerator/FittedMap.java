@@ -0,0 +1,444 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable snapshot of a fitted layout over its bounds: one bitset {@link Layer} per
+ * {@link GridCell.CellType}, a room-id raster and each room's bounding box.
+ * <p>
+ * Point queries are a bit test, rows can be walked a 64-square word at a time, and layers
+ * combine with word-parallel set operations (union, intersection, difference, dilation).
+ * Nothing changes after construction, so one map can be shared freely between the renderer,
+ * serializers and analysis threads.
+ */
+public final class FittedMap implements CellGridView {
+
+    private static final GridCell.CellType[] TYPES = GridCell.CellType.values();
+
+    private final Rectangle bounds;
+    private final Layer[] layers;      // indexed by CellType ordinal
+    private final int[] roomIds;       // row-major over bounds
+    private final Map<Integer, Rectangle> roomBounds;
+
+    private FittedMap(Rectangle bounds, Layer[] layers, int[] roomIds, Map<Integer, Rectangle> roomBounds) {
+        this.bounds = bounds;
+        this.layers = layers;
+        this.roomIds = roomIds;
+        this.roomBounds = roomBounds;
+    }
+
+    /**
+     * Snapshots the used area of any grid.
+     */
+    public static FittedMap of(CellGridView source) {
+        if (source instanceof RunLengthGrid runs) {
+            return of(runs);
+        }
+        Rectangle used = source.getUsedBounds();
+        long[][] words = new long[TYPES.length][];
+        int wordsPerRow = Layer.wordsPerRow(used.width);
+        for (int t = 0; t < TYPES.length; t++) {
+            words[t] = new long[Math.multiplyExact(wordsPerRow, used.height)];
+        }
+        int[] roomIds = new int[Math.multiplyExact(used.width, used.height)];
+        Map<Integer, int[]> boxes = new HashMap<>(); // id -> minX, minY, maxX, maxY
+
+        for (int row = 0; row < used.height; row++) {
+            int y = used.y + row;
+            for (int col = 0; col < used.width; col++) {
+                int x = used.x + col;
+                GridCell.CellType type = source.getCellType(x, y);
+                words[type.ordinal()][row * wordsPerRow + (col >>> 6)] |= 1L << col;
+                int id = source.getRoomId(x, y);
+                roomIds[row * used.width + col] = id;
+                if (id != 0 && type == GridCell.CellType.ROOM) {
+                    int[] box = boxes.get(id);
+                    if (box == null) {
+                        boxes.put(id, new int[]{x, y, x, y});
+                    } else {
+                        box[0] = Math.min(box[0], x);
+                        box[2] = Math.max(box[2], x);
+                        box[3] = y; // rows are visited in order
+                    }
+                }
+            }
+        }
+
+        Layer[] layers = new Layer[TYPES.length];
+        for (int t = 0; t < TYPES.length; t++) {
+            layers[t] = new Layer(used, wordsPerRow, words[t]);
+        }
+        Map<Integer, Rectangle> roomBounds = new HashMap<>();
+        boxes.forEach((id, b) -> roomBounds.put(id, new Rectangle(b[0], b[1], b[2] - b[0] + 1, b[3] - b[1] + 1)));
+        return new FittedMap(used, layers, roomIds, Collections.unmodifiableMap(roomBounds));
+    }
+
+    /**
+     * Builds from runs: whole runs are set at once and EMPTY squares are never visited one by one.
+     */
+    private static FittedMap of(RunLengthGrid runs) {
+        Rectangle used = runs.getUsedBounds();
+        long[][] words = new long[TYPES.length][];
+        int wordsPerRow = Layer.wordsPerRow(used.width);
+        for (int t = 0; t < TYPES.length; t++) {
+            words[t] = new long[Math.multiplyExact(wordsPerRow, used.height)];
+        }
+        long[] empty = words[GridCell.CellType.EMPTY.ordinal()];
+        for (int row = 0; row < used.height; row++) {
+            setBits(empty, row * wordsPerRow, 0, used.width, true);
+        }
+        int[] roomIds = new int[Math.multiplyExact(used.width, used.height)];
+        Map<Integer, int[]> boxes = new HashMap<>(); // id -> minX, minY, maxX, maxY
+
+        runs.forEachRun((y, x, length, type, id) -> {
+            int row = y - used.y;
+            int col = x - used.x;
+            setBits(words[type.ordinal()], row * wordsPerRow, col, col + length, true);
+            setBits(empty, row * wordsPerRow, col, col + length, false);
+            Arrays.fill(roomIds, row * used.width + col, row * used.width + col + length, id);
+            if (id != 0 && type == GridCell.CellType.ROOM) {
+                int[] box = boxes.get(id);
+                if (box == null) {
+                    boxes.put(id, new int[]{x, y, x + length - 1, y});
+                } else {
+                    box[0] = Math.min(box[0], x);
+                    box[2] = Math.max(box[2], x + length - 1);
+                    box[3] = y; // runs are visited in row order
+                }
+            }
+        });
+
+        Layer[] layers = new Layer[TYPES.length];
+        for (int t = 0; t < TYPES.length; t++) {
+            layers[t] = new Layer(used, wordsPerRow, words[t]);
+        }
+        Map<Integer, Rectangle> roomBounds = new HashMap<>();
+        boxes.forEach((id, b) -> roomBounds.put(id, new Rectangle(b[0], b[1], b[2] - b[0] + 1, b[3] - b[1] + 1)));
+        return new FittedMap(used, layers, roomIds, Collections.unmodifiableMap(roomBounds));
+    }
+
+    /** Sets or clears columns [from, to) of the row whose first word is {@code base}. */
+    private static void setBits(long[] words, int base, int from, int to, boolean value) {
+        while (from < to) {
+            int w = from >>> 6;
+            int end = Math.min(to, (w + 1) << 6);
+            long mask = (-1L << from) & (-1L >>> (64 - (end - (w << 6))));
+            if (value) {
+                words[base + w] |= mask;
+            } else {
+                words[base + w] &= ~mask;
+            }
+            from = end;
+        }
+    }
+
+    /**
+     * The squares of one type, as a bitset over {@link #getUsedBounds()}.
+     */
+    public Layer layer(GridCell.CellType type) {
+        return layers[type.ordinal()];
+    }
+
+    /**
+     * Squares you can walk on: rooms and corridors.
+     */
+    public Layer walkable() {
+        return layer(GridCell.CellType.ROOM).union(layer(GridCell.CellType.CORRIDOR));
+    }
+
+    /**
+     * Ids of every room with at least one square on the map.
+     */
+    public Collection<Integer> getRoomIds() {
+        return roomBounds.keySet();
+    }
+
+    /**
+     * Bounding box of a room's squares, or null if it has none.
+     */
+    public Rectangle getRoomBounds(int roomId) {
+        return roomBounds.get(roomId);
+    }
+
+    /**
+     * The squares of one room, as a layer.
+     */
+    public Layer roomMask(int roomId) {
+        int wordsPerRow = Layer.wordsPerRow(bounds.width);
+        long[] words = new long[wordsPerRow * bounds.height];
+        Rectangle box = roomBounds.get(roomId);
+        if (box != null) {
+            long[] rooms = layer(GridCell.CellType.ROOM).words;
+            for (int y = box.y; y < box.y + box.height; y++) {
+                int row = y - bounds.y;
+                for (int x = box.x; x < box.x + box.width; x++) {
+                    int col = x - bounds.x;
+                    int word = row * wordsPerRow + (col >>> 6);
+                    if ((rooms[word] & (1L << col)) != 0 && roomIds[row * bounds.width + col] == roomId) {
+                        words[word] |= 1L << col;
+                    }
+                }
+            }
+        }
+        return new Layer(bounds, wordsPerRow, words);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ CellGridView ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        if (layers[GridCell.CellType.ROOM.ordinal()].get(x, y)) {
+            return GridCell.CellType.ROOM;
+        }
+        if (layers[GridCell.CellType.CORRIDOR.ordinal()].get(x, y)) {
+            return GridCell.CellType.CORRIDOR;
+        }
+        return GridCell.CellType.EMPTY;
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        int col = x - bounds.x;
+        int row = y - bounds.y;
+        if (col < 0 || row < 0 || col >= bounds.width || row >= bounds.height) {
+            return 0;
+        }
+        return roomIds[row * bounds.width + col];
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        return bounds;
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>();
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            int row = y;
+            IntConsumer add = x -> {
+                GridCell cell = new GridCell(x, row);
+                cell.setCellType(getCellType(x, row));
+                cell.setRoomId(getRoomId(x, row));
+                result.add(cell);
+            };
+            layer(GridCell.CellType.ROOM).forEachInRow(y, add);
+            layer(GridCell.CellType.CORRIDOR).forEachInRow(y, add);
+        }
+        return result;
+    }
+
+    /**
+     * Heap bytes held by the layers and the room raster.
+     */
+    public long sizeInBytes() {
+        long bytes = (long) roomIds.length * Integer.BYTES;
+        for (Layer layer : layers) {
+            bytes += (long) layer.words.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ LAYER ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * An immutable bitset over a rectangle of squares, row-major, 64 squares per word with
+     * bit i of a word standing for the i-th square of that word. Set operations need both
+     * layers to cover the same rectangle, as all layers of one {@link FittedMap} do.
+     */
+    public static final class Layer {
+        private final Rectangle bounds;
+        private final int wordsPerRow;
+        private final long[] words;
+
+        private Layer(Rectangle bounds, int wordsPerRow, long[] words) {
+            this.bounds = bounds;
+            this.wordsPerRow = wordsPerRow;
+            this.words = words;
+        }
+
+        static int wordsPerRow(int width) {
+            return (width + 63) >>> 6;
+        }
+
+        public Rectangle getBounds() {
+            return bounds;
+        }
+
+        /** The backing words, row-major, {@link #wordsPerRow()} per row. Never written to. */
+        long[] words() {
+            return words;
+        }
+
+        int wordsPerRow() {
+            return wordsPerRow;
+        }
+
+        /**
+         * Whether (x, y) is set; squares outside the bounds never are.
+         */
+        public boolean get(int x, int y) {
+            int col = x - bounds.x;
+            int row = y - bounds.y;
+            if (col < 0 || row < 0 || col >= bounds.width || row >= bounds.height) {
+                return false;
+            }
+            return (words[row * wordsPerRow + (col >>> 6)] & (1L << col)) != 0;
+        }
+
+        /**
+         * Number of set squares.
+         */
+        public int cardinality() {
+            int n = 0;
+            for (long w : words) {
+                n += Long.bitCount(w);
+            }
+            return n;
+        }
+
+        public boolean isEmpty() {
+            for (long w : words) {
+                if (w != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Calls {@code action} with the x of each set square in row y, left to right.
+         */
+        public void forEachInRow(int y, IntConsumer action) {
+            int row = y - bounds.y;
+            if (row < 0 || row >= bounds.height) {
+                return;
+            }
+            int base = row * wordsPerRow;
+            for (int w = 0; w < wordsPerRow; w++) {
+                long word = words[base + w];
+                while (word != 0) {
+                    action.accept(bounds.x + (w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        /**
+         * Smallest set x >= fromX in row y, or {@code Integer.MIN_VALUE} if there is none
+         * (negative columns are valid, so -1 can't mean "none").
+         */
+        public int nextSetX(int y, int fromX) {
+            int row = y - bounds.y;
+            if (row < 0 || row >= bounds.height) {
+                return Integer.MIN_VALUE;
+            }
+            int col = Math.max(0, fromX - bounds.x);
+            if (col >= bounds.width) {
+                return Integer.MIN_VALUE;
+            }
+            int base = row * wordsPerRow;
+            int w = col >>> 6;
+            long word = words[base + w] & (-1L << col);
+            while (true) {
+                if (word != 0) {
+                    return bounds.x + (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == wordsPerRow) {
+                    return Integer.MIN_VALUE;
+                }
+                word = words[base + w];
+            }
+        }
+
+        public Layer union(Layer other) {
+            long[] a = sameShape(other);
+            long[] out = new long[words.length];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = words[i] | a[i];
+            }
+            return new Layer(bounds, wordsPerRow, out);
+        }
+
+        public Layer intersect(Layer other) {
+            long[] a = sameShape(other);
+            long[] out = new long[words.length];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = words[i] & a[i];
+            }
+            return new Layer(bounds, wordsPerRow, out);
+        }
+
+        /**
+         * Squares set here but not in {@code other}.
+         */
+        public Layer minus(Layer other) {
+            long[] a = sameShape(other);
+            long[] out = new long[words.length];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = words[i] & ~a[i];
+            }
+            return new Layer(bounds, wordsPerRow, out);
+        }
+
+        /**
+         * Grows the set by one square in the four compass directions, clipped to the bounds.
+         */
+        public Layer dilate() {
+            long[] out = new long[words.length];
+            int height = bounds.height;
+            for (int row = 0; row < height; row++) {
+                int base = row * wordsPerRow;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    long word = words[base + w];
+                    long lower = (w > 0) ? words[base + w - 1] : 0L;  // squares to the left
+                    long upper = (w + 1 < wordsPerRow) ? words[base + w + 1] : 0L;
+                    long d = word
+                             | (word << 1) | (lower >>> 63)     // each square spreads one to the right
+                             | (word >>> 1) | (upper << 63);    // and one to the left
+                    if (row > 0) {
+                        d |= words[base - wordsPerRow + w];
+                    }
+                    if (row + 1 < height) {
+                        d |= words[base + wordsPerRow + w];
+                    }
+                    out[base + w] = d;
+                }
+                // Drop anything that spread past the right-hand edge
+                int tail = bounds.width & 63;
+                if (tail != 0 && wordsPerRow > 0) {
+                    out[base + wordsPerRow - 1] &= (1L << tail) - 1;
+                }
+            }
+            return new Layer(bounds, wordsPerRow, out);
+        }
+
+        private long[] sameShape(Layer other) {
+            if (other.bounds.x != bounds.x || other.bounds.y != bounds.y
+                || other.bounds.width != bounds.width || other.bounds.height != bounds.height) {
+                throw new IllegalArgumentException("Layers cover different areas: " + bounds + " vs " + other.bounds);
+            }
+            return other.words;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Layer other
+                   && other.bounds.x == bounds.x && other.bounds.y == bounds.y
+                   && other.bounds.width == bounds.width && other.bounds.height == bounds.height
+                   && Arrays.equals(words, other.words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The default, unbounded grid: an open-addressing hash table from (x, y), packed into one
+ * long, to GridCell, created on first write. Grows in any direction and costs a GridCell plus
+ * two table slots per written square; reads allocate nothing, so searches can probe it freely.
+ */
+public class HashCellGrid implements CellGrid {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    // Linear probing, at most half full; a slot is free when its cell is null
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private GridCell[] cells = new GridCell[INITIAL_CAPACITY];
+    private int size;
+    private final UsedBounds usedBounds = new UsedBounds();
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        GridCell cell = find(x, y);
+        return (cell == null) ? GridCell.CellType.EMPTY : cell.getCellType();
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        GridCell cell = find(x, y);
+        return (cell == null) ? 0 : cell.getRoomId();
+    }
+
+    @Override
+    public void setCell(int x, int y, GridCell.CellType type, int roomId) {
+        GridCell cell = find(x, y);
+        if (cell == null) {
+            if (type == GridCell.CellType.EMPTY && roomId == 0) {
+                return; // nothing to store
+            }
+            cell = new GridCell(x, y);
+            insert(key(x, y), cell);
+        }
+        usedBounds.onWrite(x, y, cell.getCellType(), type);
+        cell.setCellType(type);
+        cell.setRoomId(roomId);
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        if (usedBounds.isStale()) {
+            usedBounds.reset();
+            for (GridCell cell : cells) {
+                if (cell != null && cell.getCellType() != GridCell.CellType.EMPTY) {
+                    usedBounds.include(cell.getCoordinate().x, cell.getCoordinate().y);
+                }
+            }
+        }
+        return usedBounds.toRectangle();
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>(size);
+        for (GridCell cell : cells) {
+            if (cell != null && cell.getCellType() != GridCell.CellType.EMPTY) {
+                result.add(cell);
+            }
+        }
+        return result;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ TABLE ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /** Spreads the packed key over the table (the MurmurHash3 finalizer). */
+    private static int slot(long key, int mask) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private GridCell find(int x, int y) {
+        long key = key(x, y);
+        int mask = cells.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            GridCell cell = cells[i];
+            if (cell == null || keys[i] == key) {
+                return cell;
+            }
+        }
+    }
+
+    private void insert(long key, GridCell cell) {
+        if (2 * (size + 1) > cells.length) {
+            grow();
+        }
+        int mask = cells.length - 1;
+        int i = slot(key, mask);
+        while (cells[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        cells[i] = cell;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        GridCell[] oldCells = cells;
+        keys = new long[oldCells.length * 2];
+        cells = new GridCell[oldCells.length * 2];
+        size = 0;
+        for (int i = 0; i < oldCells.length; i++) {
+            if (oldCells[i] != null) {
+                insert(oldKeys[i], oldCells[i]);
+            }
+        }
+    }
+}
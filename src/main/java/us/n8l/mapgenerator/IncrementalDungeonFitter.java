@@ -0,0 +1,349 @@
+package us.n8l.mapgenerator;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A {@link DungeonGridFitter} that keeps its state after {@link #fitDungeon} and accepts edits:
+ * rooms added, removed or resized, corridors added or removed. Each edit touches only what it
+ * has to: a new room goes into free space near an anchor, a removed corridor releases only the
+ * squares no other corridor uses, and a resized room re-routes only the corridors attached to it
+ * or whose paths run through its new footprint.
+ * <p>
+ * Edits are applied to the fitted {@link Dungeon} as well. A room's fitted size is owned by the
+ * fitter, so after {@link #resizeRoom} its dimensions string still describes the original size.
+ * Stats accumulate over the initial fit and all edits. Not thread-safe.
+ */
+public class IncrementalDungeonFitter extends DungeonGridFitter {
+
+    private static final Logger LOG = Logger.getLogger(IncrementalDungeonFitter.class.getName());
+
+    // Clear squares kept around a newly placed room, as in the row layout
+    private static final int ROOM_GAP = 2;
+    // How far from its anchor a room may be placed before we give up
+    private static final int MAX_SEARCH_RADIUS = 1000;
+
+    private static final int[][] DELTAS = {{1,0},{-1,0},{0,1},{0,-1}};
+
+    private Dungeon dungeon;
+
+    // How many routed paths run over each corridor square; the paths themselves are the
+    // superclass's corridor routes, in routing order
+    private final Map<Point, Integer> corridorUse = new HashMap<>();
+
+    public IncrementalDungeonFitter() {
+        this(false);
+    }
+
+    public IncrementalDungeonFitter(boolean reuseCorridorNetwork) {
+        super(reuseCorridorNetwork);
+    }
+
+    /**
+     * The initial full fit. Call once; later changes go through the edit methods.
+     */
+    @Override
+    public Rectangle fitDungeon(Dungeon dungeon) {
+        if (this.dungeon != null) {
+            throw new IllegalStateException("Already fitted; apply edits instead");
+        }
+        this.dungeon = dungeon;
+        return super.fitDungeon(dungeon);
+    }
+
+    /**
+     * The current used area, which follows the edits (null before {@link #fitDungeon}).
+     */
+    @Override
+    public Rectangle getBounds() {
+        return (dungeon == null) ? null : writableGrid().getUsedBounds();
+    }
+
+    /**
+     * The dungeon being edited (null before {@link #fitDungeon}).
+     */
+    public Dungeon getDungeon() {
+        return dungeon;
+    }
+
+    @Override
+    void onCorridorRouted(Corridor corridor, CorridorPath path) {
+        super.onCorridorRouted(corridor, path);
+        CellGrid grid = writableGrid();
+        path.forEachSquare((x, y) -> {
+            if (grid.getCellType(x, y) == GridCell.CellType.CORRIDOR) {
+                corridorUse.merge(new Point(x, y), 1, Integer::sum);
+            }
+        });
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ EDITS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public void addRoom(Room room) {
+        addRoom(room, null);
+    }
+
+    /**
+     * Places a new room in free space as close as possible to {@code near} (or to the middle of
+     * the map if null). Nothing else moves.
+     */
+    public void addRoom(Room room, Room near) {
+        requireFitted();
+        long start = System.nanoTime();
+        Dimension dims = parseRoomDimensions(room.getDimensions());
+        Point anchor = anchorFor(near);
+        Rectangle spot = findFreeSpot(dims.width, dims.height, anchor.x, anchor.y);
+        dungeon.addRoom(room);
+        placeRoom(room.getId(), spot.width, spot.height, spot.x, spot.y);
+        LOG.fine("Added room#" + room.getId() + " at (" + spot.x + "," + spot.y + ") in "
+                 + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Removes a room and every corridor attached to it.
+     */
+    public void removeRoom(Room room) {
+        requireFitted();
+        for (Corridor c : new ArrayList<>(dungeon.getCorridors())) {
+            if (c.getFromRoom() == room || c.getToRoom() == room) {
+                removeCorridor(c);
+            }
+        }
+        clearRoom(room.getId());
+        dungeon.removeRoom(room);
+    }
+
+    /**
+     * Routes one new corridor against the current grid.
+     */
+    public void addCorridor(Corridor corridor) {
+        requireFitted();
+        dungeon.addCorridor(corridor);
+        route(corridor);
+    }
+
+    /**
+     * Removes a corridor, keeping any squares other corridors still run over.
+     */
+    public void removeCorridor(Corridor corridor) {
+        requireFitted();
+        dungeon.removeCorridor(corridor);
+        Set<Point> released = new HashSet<>();
+        release(corridor, released);
+        repairDependents(released);
+    }
+
+    /**
+     * Changes a room's fitted size, keeping its top-left corner if the new size still clears
+     * the other rooms and moving it to the nearest free spot otherwise. Corridors attached to
+     * the room, and corridors whose paths cross its new footprint, are re-routed.
+     */
+    public void resizeRoom(Room room, int width, int height) {
+        requireFitted();
+        long start = System.nanoTime();
+        int roomId = room.getId();
+        Rectangle old = roomRect(roomId);
+        if (old == null) {
+            throw new IllegalArgumentException("Room#" + roomId + " is not placed");
+        }
+
+        List<Corridor> affected = new ArrayList<>();
+        for (Corridor c : corridorPaths().keySet()) {
+            if (c.getFromRoom() == room || c.getToRoom() == room) {
+                affected.add(c);
+            }
+        }
+        Set<Point> released = new HashSet<>();
+        for (Corridor c : affected) {
+            release(c, released);
+        }
+        clearRoom(roomId);
+
+        Rectangle target = new Rectangle(old.x, old.y, width, height);
+        if (!clearOfRooms(target)) {
+            target = findFreeSpot(width, height, old.x + old.width / 2, old.y + old.height / 2);
+        }
+
+        // Corridors running through the new footprint have to go around it (the footprint
+        // is clear of rooms, so whatever a path has there is corridor)
+        List<Corridor> crossing = new ArrayList<>();
+        for (Map.Entry<Corridor, CorridorPath> e : corridorPaths().entrySet()) {
+            if (e.getValue().intersects(target)) {
+                crossing.add(e.getKey());
+            }
+        }
+        for (Corridor c : crossing) {
+            release(c, released);
+        }
+        affected.addAll(crossing);
+
+        placeRoom(roomId, target.width, target.height, target.x, target.y);
+        repairDependents(released);
+        // Re-route in the dungeon's order so results don't depend on how we found them
+        for (Corridor c : dungeon.getCorridors()) {
+            if (affected.contains(c)) {
+                route(c);
+            }
+        }
+        LOG.fine("Resized room#" + roomId + " to " + width + "x" + height + ", re-routed "
+                 + affected.size() + " corridors in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ BOOKKEEPING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private void requireFitted() {
+        if (dungeon == null) {
+            throw new IllegalStateException("Call fitDungeon before applying edits");
+        }
+    }
+
+    private void route(Corridor corridor) {
+        onCorridorRouted(corridor, CorridorPath.of(connectCorridor(corridor)));
+    }
+
+    /**
+     * Forgets a corridor's path and erases the squares no other path uses, adding them to {@code released}.
+     */
+    private void release(Corridor corridor, Set<Point> released) {
+        CorridorPath path = corridorPaths().remove(corridor);
+        if (path == null) {
+            return;
+        }
+        CellGrid grid = writableGrid();
+        path.forEachSquare((x, y) -> {
+            Point p = new Point(x, y);
+            Integer uses = corridorUse.get(p);
+            if (uses == null) {
+                return; // a door square
+            }
+            if (uses > 1) {
+                corridorUse.put(p, uses - 1);
+            } else {
+                corridorUse.remove(p);
+                grid.setCell(x, y, GridCell.CellType.EMPTY, 0);
+                released.add(p);
+            }
+        });
+    }
+
+    /**
+     * In network mode a path may start on another corridor instead of at its room. If squares
+     * next to such a path were erased, the network it hung off may be gone: re-route it.
+     */
+    private void repairDependents(Set<Point> released) {
+        if (released.isEmpty()) {
+            return;
+        }
+        CellGrid grid = writableGrid();
+        List<Corridor> broken = new ArrayList<>();
+        for (Map.Entry<Corridor, CorridorPath> e : corridorPaths().entrySet()) {
+            CorridorPath path = e.getValue();
+            if (path.isEmpty()) {
+                continue;
+            }
+            int x = path.getStartX();
+            int y = path.getStartY();
+            int fromId = e.getKey().getFromRoom().getId();
+            if (grid.getCellType(x, y) == GridCell.CellType.ROOM && grid.getRoomId(x, y) == fromId) {
+                continue; // starts at its own room
+            }
+            if (touches(path, released)) {
+                broken.add(e.getKey());
+            }
+        }
+        Set<Point> more = new HashSet<>();
+        for (Corridor c : broken) {
+            release(c, more);
+        }
+        for (Corridor c : broken) {
+            route(c);
+        }
+        repairDependents(more);
+    }
+
+    private static boolean touches(CorridorPath path, Set<Point> squares) {
+        for (Point p : squares) {
+            if (path.contains(p.x, p.y)) {
+                return true;
+            }
+            for (int[] d : DELTAS) {
+                if (path.contains(p.x + d[0], p.y + d[1])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ PLACEMENT ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private Point anchorFor(Room near) {
+        Rectangle r = (near != null) ? roomRect(near.getId()) : null;
+        if (r == null) {
+            r = writableGrid().getUsedBounds();
+        }
+        return new Point(r.x + r.width / 2, r.y + r.height / 2);
+    }
+
+    /**
+     * Nearest top-left corner (in rings around the anchor) where a w x h room plus its gap
+     * lands entirely on empty squares.
+     */
+    private Rectangle findFreeSpot(int w, int h, int anchorX, int anchorY) {
+        int cx = anchorX - w / 2;
+        int cy = anchorY - h / 2;
+        for (int r = 0; r <= MAX_SEARCH_RADIUS; r++) {
+            for (int dy = -r; dy <= r; dy++) {
+                // Full rows at the top and bottom of the ring, just the two ends in between
+                int step = (dy == -r || dy == r) ? 1 : 2 * r;
+                for (int dx = -r; dx <= r; dx += Math.max(1, step)) {
+                    Rectangle candidate = new Rectangle(cx + dx, cy + dy, w, h);
+                    if (isFree(candidate)) {
+                        return candidate;
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("No free space for a " + w + "x" + h + " room within "
+                                        + MAX_SEARCH_RADIUS + " squares of (" + anchorX + "," + anchorY + ")");
+    }
+
+    private boolean isFree(Rectangle rect) {
+        CellGrid grid = writableGrid();
+        for (int y = rect.y - ROOM_GAP; y < rect.y + rect.height + ROOM_GAP; y++) {
+            for (int x = rect.x - ROOM_GAP; x < rect.x + rect.width + ROOM_GAP; x++) {
+                if (grid.getCellType(x, y) != GridCell.CellType.EMPTY) {
+                    return false;
+                }
+            }
+        }
+        return isWritable(rect);
+    }
+
+    /**
+     * Whether the rectangle plus its gap holds no room squares (corridors can be re-routed).
+     */
+    private boolean clearOfRooms(Rectangle rect) {
+        CellGrid grid = writableGrid();
+        for (int y = rect.y - ROOM_GAP; y < rect.y + rect.height + ROOM_GAP; y++) {
+            for (int x = rect.x - ROOM_GAP; x < rect.x + rect.width + ROOM_GAP; x++) {
+                if (grid.getCellType(x, y) == GridCell.CellType.ROOM) {
+                    return false;
+                }
+            }
+        }
+        return isWritable(rect);
+    }
+
+    private boolean isWritable(Rectangle rect) {
+        CellGrid grid = writableGrid();
+        return grid.isWritable(rect.x, rect.y)
+               && grid.isWritable(rect.x + rect.width - 1, rect.y + rect.height - 1);
+    }
+}
@@ -0,0 +1,431 @@
+package us.n8l.mapgenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small embedded HTTP service that generates, fits and renders dungeons by seed, on the
+ * JDK's built-in {@link HttpServer}.
+ * <p>
+ * Endpoints (GET; {@code seed} is required, {@code rooms} defaults to 25, {@code fitter} is
+ * {@code bfs}, {@code network} or {@code astar}, {@code scale} is pixels per square):
+ * <pre>
+ *   /dungeon      the generated rooms, as JSON
+ *   /map.json     the fitted layout, in the viewer's JSON format
+ *   /map.dmap     the fitted layout as a {@link BinaryMapFile}
+ *   /map.png      rendered by {@link PngExporter} (scale defaults to 4)
+ *   /map.svg      rendered by {@link SvgExporter} (scale defaults to 16)
+ *   /stats        cache and coalescing counters, as text
+ * </pre>
+ * Every response is a pure function of its parameters, so finished artifacts sit in an LRU
+ * cache bounded by bytes, and identical requests arriving while one is being computed wait for
+ * that computation instead of starting their own. Fits are shared the same way between formats
+ * and go through a {@link FitCache}. Requests run on virtual threads when the JDK has them (found
+ * by reflection, so the library still targets 17) and on a cached thread pool otherwise; actual
+ * generation is limited to one computation per processor so a burst cannot oversubscribe the CPU.
+ */
+public class MapService implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(MapService.class.getName());
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final long DEFAULT_CACHE_BYTES = 256L << 20;
+
+    public static final int DEFAULT_ROOMS = 25;
+    public static final int MAX_ROOMS = 1000;
+    public static final int MAX_SCALE = 64;
+
+    /** What a response depends on; {@code scale} is 0 for formats without one. */
+    private record ArtifactKey(String format, long seed, int rooms, String fitter, int scale) {
+    }
+
+    private record LayoutKey(long seed, int rooms, String fitter) {
+    }
+
+    /** A fit together with the dungeon whose room ids it uses. */
+    private record Layout(Dungeon dungeon, FitResult fit) {
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore computeSlots = new Semaphore(Runtime.getRuntime().availableProcessors());
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ArtifactCache artifacts;
+    private final FitCache fitCache;
+    private final ConcurrentHashMap<ArtifactKey, CompletableFuture<byte[]>> artifactsInFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<LayoutKey, CompletableFuture<Layout>> layoutsInFlight = new ConcurrentHashMap<>();
+
+    // Shared fitters; fit() keeps no state in them
+    private final DungeonGridFitter bfsFitter = new DungeonGridFitter(false);
+    private final DungeonGridFitter networkFitter = new DungeonGridFitter(true);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * A service on {@code port} (0 for any free port) caching up to {@code maxCacheBytes} of
+     * artifacts, plus as much again of fitted layouts. Call {@link #start()} to begin serving.
+     */
+    public MapService(int port, long maxCacheBytes) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newRequestExecutor();
+        this.artifacts = new ArtifactCache(maxCacheBytes);
+        this.fitCache = new FitCache(maxCacheBytes);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Map service listening on port " + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Virtual threads (Java 21+) when available, else a cached pool of daemon threads.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            LOG.fine("Serving requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.info("Virtual threads unavailable on Java " + Runtime.version().feature()
+                     + "; serving requests on a cached thread pool");
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "map-service");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ HTTP ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain", "Only GET is supported\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/stats")) {
+                send(exchange, 200, "text/plain", (toString() + "\n" + fitCache + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String contentType = switch (path) {
+                case "/dungeon", "/map.json" -> "application/json";
+                case "/map.dmap" -> "application/octet-stream";
+                case "/map.png" -> "image/png";
+                case "/map.svg" -> "image/svg+xml";
+                default -> null;
+            };
+            if (contentType == null) {
+                send(exchange, 404, "text/plain", ("No such endpoint: " + path + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            ArtifactKey key;
+            try {
+                key = parse(path, query(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            send(exchange, 200, contentType, artifact(key));
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Request failed: " + exchange.getRequestURI(), e);
+            try {
+                // The details are in the log; clients don't get to see internals
+                send(exchange, 500, "text/plain", "Internal error\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | RuntimeException ignored) {
+                // headers may already have gone out; the connection is closed either way
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode((eq < 0) ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = (eq < 0) ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static ArtifactKey parse(String path, Map<String, String> params) {
+        String seedText = params.get("seed");
+        if (seedText == null) {
+            throw new IllegalArgumentException("Missing parameter: seed");
+        }
+        long seed = parseNumber("seed", seedText);
+        int rooms = parseInt("rooms", params.getOrDefault("rooms", String.valueOf(DEFAULT_ROOMS)), MAX_ROOMS);
+        String format = path.substring(1);
+        if (format.equals("dungeon")) {
+            return new ArtifactKey(format, seed, rooms, "", 0);
+        }
+        String fitter = params.getOrDefault("fitter", "bfs");
+        if (!fitter.equals("bfs") && !fitter.equals("network") && !fitter.equals("astar")) {
+            throw new IllegalArgumentException("fitter must be bfs, network or astar");
+        }
+        int scale = 0;
+        if (format.equals("map.png") || format.equals("map.svg")) {
+            int defaultScale = format.equals("map.png") ? PngExporter.DEFAULT_SCALE : SvgExporter.DEFAULT_SCALE;
+            scale = parseInt("scale", params.getOrDefault("scale", String.valueOf(defaultScale)), MAX_SCALE);
+        }
+        return new ArtifactKey(format, seed, rooms, fitter, scale);
+    }
+
+    private static long parseNumber(String name, String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + text);
+        }
+    }
+
+    /**
+     * A number between 1 and {@code max}, range-checked before it is narrowed to an int.
+     */
+    private static int parseInt(String name, String text, int max) {
+        long value = parseNumber(name, text);
+        if (value < 1 || value > max) {
+            throw new IllegalArgumentException(name + " must be between 1 and " + max);
+        }
+        return (int) value;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ ARTIFACTS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * The bytes of one response, from the cache, from an identical request already computing
+     * them, or computed here.
+     */
+    private byte[] artifact(ArtifactKey key) throws Exception {
+        byte[] cached = artifacts.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return coalesce(artifactsInFlight, key, () -> {
+            // A computation may have finished between the lookup above and joining the map
+            byte[] bytes = artifacts.peek(key);
+            if (bytes == null) {
+                bytes = render(key);
+                artifacts.put(key, bytes);
+            }
+            return bytes;
+        });
+    }
+
+    private byte[] render(ArtifactKey key) throws Exception {
+        if (key.format().equals("dungeon")) {
+            computeSlots.acquire();
+            try {
+                Dungeon dungeon = new AdvancedDungeonGenerator(key.seed(), key.rooms()).generateDungeon();
+                return objectMapper.writeValueAsBytes(DungeonGridData.of(null, dungeon.getRooms()));
+            } finally {
+                computeSlots.release();
+            }
+        }
+        Layout layout = layout(new LayoutKey(key.seed(), key.rooms(), key.fitter()));
+        FitResult fit = layout.fit();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        computeSlots.acquire();
+        try {
+            switch (key.format()) {
+                case "map.json" -> objectMapper.writeValue(out, DungeonGridData.of(fit, layout.dungeon().getRooms()));
+                case "map.dmap" -> BinaryMapFile.write(out, fit, layout.dungeon().getRooms(), true,
+                        BinaryMapFile.DEFAULT_TILE_SIZE);
+                case "map.png" -> PngExporter.write(fit, fit.getBounds(), key.scale(), false, out);
+                case "map.svg" -> {
+                    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                    SvgExporter.write(fit.getMap(), key.scale(), writer);
+                }
+                default -> throw new IllegalStateException("Unknown format " + key.format());
+            }
+        } finally {
+            computeSlots.release();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The generated and fitted dungeon for a key, shared by every format being rendered from it.
+     */
+    private Layout layout(LayoutKey key) throws Exception {
+        return coalesce(layoutsInFlight, key, () -> {
+            computeSlots.acquire();
+            try {
+                Dungeon dungeon = new AdvancedDungeonGenerator(key.seed(), key.rooms()).generateDungeon();
+                DungeonFitter fitter = switch (key.fitter()) {
+                    case "network" -> networkFitter;
+                    case "astar" -> new AStarDungeonGridFitter(key.seed());
+                    default -> bfsFitter;
+                };
+                return new Layout(dungeon, fitCache.fit(dungeon, key.fitter(), key.seed(), "", fitter));
+            } finally {
+                computeSlots.release();
+            }
+        });
+    }
+
+    /**
+     * Runs {@code work} for {@code key} unless another thread already is, in which case this
+     * waits for and returns that thread's result (or rethrows its failure).
+     */
+    private <K, V> V coalesce(ConcurrentHashMap<K, CompletableFuture<V>> inFlight, K key, Callable<V> work)
+            throws Exception {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw (e.getCause() instanceof Exception cause) ? cause : e;
+            }
+        }
+        try {
+            V value = work.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ STATS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MapService[requests=" + requests.get() + ", coalesced=" + coalesced.get() + ", " + artifacts + "]";
+    }
+
+    /**
+     * Finished responses in an LRU bounded by their total size.
+     */
+    private static final class ArtifactCache {
+        private final long maxBytes;
+        private final LinkedHashMap<ArtifactKey, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        ArtifactCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get(ArtifactKey key) {
+            byte[] value = entries.get(key);
+            if (value != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+            return value;
+        }
+
+        /** Like {@link #get} but without counting. */
+        synchronized byte[] peek(ArtifactKey key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(ArtifactKey key, byte[] value) {
+            if (value.length > maxBytes) {
+                return; // would evict everything else and still not fit
+            }
+            byte[] old = entries.put(key, value);
+            if (old != null) {
+                bytes -= old.length;
+            }
+            bytes += value.length;
+            Iterator<byte[]> eldest = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().length;
+                eldest.remove();
+                evictions++;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "artifacts=" + entries.size() + ", bytes=" + bytes + ", hits=" + hits + ", misses=" + misses
+                   + ", evictions=" + evictions;
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ MAIN ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Runs a standalone service: {@code MapService [port] [cacheMegabytes]}.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long cacheBytes = (args.length > 1) ? Long.parseLong(args[1]) << 20 : DEFAULT_CACHE_BYTES;
+        new MapService(port, cacheBytes).start();
+    }
+}
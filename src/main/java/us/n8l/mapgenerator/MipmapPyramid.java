@@ -0,0 +1,189 @@
+package us.n8l.mapgenerator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.logging.Logger;
+
+/**
+ * Downsampled raster levels of a layout, for drawing it zoomed far out.
+ * <p>
+ * Level {@code k} has one pixel per {@code 2^k x 2^k} block of squares, down to a single pixel.
+ * Each pixel shows the most prominent type in its block (room over corridor over empty), so
+ * rooms and corridors never vanish as the map shrinks. Pixels are palette bytes in the viewer's
+ * colours. Levels finer than {@link #MAX_LEVEL_PIXELS} pixels are skipped so the pyramid of a
+ * huge map stays small; the first level kept is built from the squares in one pass (from the runs
+ * alone for a {@link RunLengthGrid}) and each coarser one from the level before it. Immutable once built.
+ */
+public final class MipmapPyramid {
+
+    private static final Logger LOG = Logger.getLogger(MipmapPyramid.class.getName());
+
+    public static final int MAX_LEVEL_PIXELS = 1 << 24;
+
+    // Palette indices, ordered by prominence
+    private static final byte EMPTY = 0;
+    private static final byte CORRIDOR = 1;
+    private static final byte ROOM = 2;
+
+    static final IndexColorModel PALETTE = new IndexColorModel(8, 3,
+            new byte[]{48, (byte) 200, (byte) 220},
+            new byte[]{48, (byte) 200, (byte) 220},
+            new byte[]{48, (byte) 255, (byte) 220});
+
+    private final Rectangle bounds;
+    private final int firstLevel;
+    private final BufferedImage[] levels;  // null below firstLevel
+
+    private MipmapPyramid(Rectangle bounds, int firstLevel, BufferedImage[] levels) {
+        this.bounds = bounds;
+        this.firstLevel = firstLevel;
+        this.levels = levels;
+    }
+
+    public static MipmapPyramid build(CellGridView grid) {
+        long start = System.nanoTime();
+        Rectangle b = grid.getUsedBounds();
+        if (b.width <= 0 || b.height <= 0) {
+            return new MipmapPyramid(b, 0, new BufferedImage[0]);
+        }
+        int count = 1;
+        while (Math.max(levelSize(b.width, count - 1), levelSize(b.height, count - 1)) > 1) {
+            count++;
+        }
+        int first = 0;
+        while ((long) levelSize(b.width, first) * levelSize(b.height, first) > MAX_LEVEL_PIXELS) {
+            first++;
+        }
+        BufferedImage[] levels = new BufferedImage[count];
+        levels[first] = fromSquares(grid, b, first);
+        for (int k = first + 1; k < count; k++) {
+            levels[k] = halve(levels[k - 1]);
+        }
+        LOG.info("Built " + (count - first) + " mipmap levels for " + b.width + "x" + b.height + " map (from level "
+                 + first + ") in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return new MipmapPyramid(b, first, levels);
+    }
+
+    /** Pixels along one axis at level k: ceil(squares / 2^k). */
+    private static int levelSize(int squares, int k) {
+        return ((squares - 1) >> k) + 1;
+    }
+
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    public int levelCount() {
+        return levels.length;
+    }
+
+    /**
+     * The image of level {@code k}, or null if that level was too large to keep.
+     */
+    public BufferedImage getLevel(int k) {
+        return levels[k];
+    }
+
+    /**
+     * The level to draw when each screen pixel covers {@code squaresPerPixel} squares: the finest
+     * one no finer than the screen, so it is scaled up (by less than two) and no square is dropped.
+     * Returns -1 if that level was too large to keep.
+     */
+    public int levelFor(double squaresPerPixel) {
+        int k = 0;
+        while (k < levels.length - 1 && Math.scalb(1.0, k) < squaresPerPixel) {
+            k++;
+        }
+        return (k < firstLevel || levels.length == 0) ? -1 : k;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ BUILDING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    private static BufferedImage fromSquares(CellGridView grid, Rectangle b, int k) {
+        int width = levelSize(b.width, k);
+        BufferedImage image = new BufferedImage(width, levelSize(b.height, k), BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        if (grid instanceof RunLengthGrid runs) {
+            // Only the runs are visited, one pixel at a time along each
+            runs.forEachRun((y, x, length, type, roomId) -> {
+                byte index = indexOf(type);
+                int base = ((y - b.y) >> k) * width;
+                int last = (x - b.x + length - 1) >> k;
+                for (int px = (x - b.x) >> k; px <= last; px++) {
+                    if (index > pixels[base + px]) {
+                        pixels[base + px] = index;
+                    }
+                }
+            });
+            return image;
+        }
+        for (int row = 0; row < b.height; row++) {
+            int base = (row >> k) * width;
+            for (int col = 0; col < b.width; col++) {
+                byte index = indexOf(grid.getCellType(b.x + col, b.y + row));
+                int i = base + (col >> k);
+                if (index > pixels[i]) {
+                    pixels[i] = index;
+                }
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage halve(BufferedImage finer) {
+        int fw = finer.getWidth();
+        int fh = finer.getHeight();
+        int width = (fw + 1) / 2;
+        int height = (fh + 1) / 2;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+        byte[] src = ((DataBufferByte) finer.getRaster().getDataBuffer()).getData();
+        byte[] dst = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < fh; y++) {
+            int base = (y >> 1) * width;
+            for (int x = 0; x < fw; x++) {
+                byte v = src[y * fw + x];
+                int i = base + (x >> 1);
+                if (v > dst[i]) {
+                    dst[i] = v;
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Point-samples the grid into a small image: pixel (px, py) shows the square under
+     * {@code (originX + px, originY + py)} at {@code pixelsPerSquare}. Used while the pyramid is
+     * being built or lacks the level asked for; costs one lookup per pixel, not per square.
+     */
+    static BufferedImage sample(CellGridView grid, Rectangle area, double pixelsPerSquare,
+                                int originX, int originY, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int[] cols = new int[width];
+        for (int px = 0; px < width; px++) {
+            cols[px] = (int) Math.floor((originX + px) / pixelsPerSquare);
+        }
+        for (int py = 0; py < height; py++) {
+            int row = (int) Math.floor((originY + py) / pixelsPerSquare);
+            if (row < 0 || row >= area.height) {
+                continue;
+            }
+            for (int px = 0; px < width; px++) {
+                if (cols[px] >= 0 && cols[px] < area.width) {
+                    pixels[py * width + px] = indexOf(grid.getCellType(area.x + cols[px], area.y + row));
+                }
+            }
+        }
+        return image;
+    }
+
+    private static byte indexOf(GridCell.CellType type) {
+        return switch (type) {
+            case ROOM -> ROOM;
+            case CORRIDOR -> CORRIDOR;
+            default -> EMPTY;
+        };
+    }
+}
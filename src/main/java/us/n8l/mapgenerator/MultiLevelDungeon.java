@@ -0,0 +1,49 @@
+package us.n8l.mapgenerator;
+
+import java.awt.Point;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A dungeon complex of several levels joined by stairs. Each level is an ordinary,
+ * independently fitted {@link Dungeon}; its fitted grid is placed in the shared world
+ * coordinates by {@link Level#offset()}, chosen so stairs line up with their landings.
+ * Level 0 is the top; larger indexes are deeper.
+ */
+public class MultiLevelDungeon {
+
+    /**
+     * One fitted level. World position of a square = grid position + offset.
+     */
+    public record Level(int index, Dungeon dungeon, FitResult fit, Point offset) {
+    }
+
+    /**
+     * Stairs from {@code fromRoom} (the room the stairway ends in on {@code fromLevel}) to the
+     * landing room {@code toRoom} on {@code toLevel}. {@code misalignment} is the Manhattan
+     * distance between the two rooms' centres in world coordinates.
+     */
+    public record StairLink(int fromLevel, Room fromRoom, int toLevel, Room toRoom,
+                            StairsType type, int misalignment) {
+    }
+
+    private final List<Level> levels;
+    private final List<StairLink> links;
+
+    MultiLevelDungeon(List<Level> levels, List<StairLink> links) {
+        this.levels = Collections.unmodifiableList(levels);
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    public List<Level> getLevels() {
+        return levels;
+    }
+
+    public Level getLevel(int index) {
+        return levels.get(index);
+    }
+
+    public List<StairLink> getLinks() {
+        return links;
+    }
+}
@@ -0,0 +1,245 @@
+package us.n8l.mapgenerator;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Generates a multi-level complex: each level is generated and fitted as an independent job
+ * in parallel, and the stairs rolled on Table VIII ({@link Corridor#getStairsType()}) become
+ * links between levels. A final cheap pass picks each stairway's landing room and shifts each
+ * level so landings sit under (or over) their stairs, so the whole complex takes about as long
+ * as its slowest level.
+ */
+public class MultiLevelDungeonGenerator {
+
+    private static final Logger LOG = Logger.getLogger(MultiLevelDungeonGenerator.class.getName());
+
+    // Spreads consecutive level indexes across the seed space
+    private static final long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+    // Rounds of (match landings, re-estimate offset) per level
+    private static final int ALIGN_ROUNDS = 3;
+
+    private final long seed;
+    private final int levelCount;
+    private final int roomsPerLevel;
+    private final LongFunction<? extends DungeonFitter> fitterFactory;
+
+    public MultiLevelDungeonGenerator(long seed, int levelCount, int roomsPerLevel) {
+        this(seed, levelCount, roomsPerLevel, levelSeed -> new DungeonGridFitter());
+    }
+
+    /**
+     * @param fitterFactory makes the fitter for a level, given that level's seed
+     */
+    public MultiLevelDungeonGenerator(long seed, int levelCount, int roomsPerLevel,
+                                      LongFunction<? extends DungeonFitter> fitterFactory) {
+        if (levelCount < 1) {
+            throw new IllegalArgumentException("levelCount must be >= 1, got " + levelCount);
+        }
+        this.seed = seed;
+        this.levelCount = levelCount;
+        this.roomsPerLevel = roomsPerLevel;
+        this.fitterFactory = fitterFactory;
+    }
+
+    public MultiLevelDungeon generate() {
+        long startTime = System.currentTimeMillis();
+        int threads = Math.min(levelCount, Runtime.getRuntime().availableProcessors());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<FittedLevel> fitted = new ArrayList<>(levelCount);
+        try {
+            List<Future<FittedLevel>> futures = new ArrayList<>(levelCount);
+            for (int i = 0; i < levelCount; i++) {
+                long levelSeed = seed + i * SEED_GAMMA;
+                futures.add(pool.submit(() -> fitLevel(levelSeed)));
+            }
+            for (Future<FittedLevel> f : futures) {
+                fitted.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating levels", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Level generation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        long fittedTime = System.currentTimeMillis();
+
+        MultiLevelDungeon complex = align(fitted);
+        LOG.info("Generated " + levelCount + " levels on " + threads + " threads with "
+                 + complex.getLinks().size() + " stair links. Levels ms: " + (fittedTime - startTime)
+                 + ", alignment ms: " + (System.currentTimeMillis() - fittedTime));
+        return complex;
+    }
+
+    private FittedLevel fitLevel(long levelSeed) {
+        Dungeon dungeon = new AdvancedDungeonGenerator(levelSeed, roomsPerLevel).generateDungeon();
+        FitResult fit = fitterFactory.apply(levelSeed).fit(dungeon);
+        return new FittedLevel(dungeon, fit, roomCentres(dungeon, fit));
+    }
+
+    /** A level before alignment, with each placed room's centre in its own grid coordinates. */
+    private record FittedLevel(Dungeon dungeon, FitResult fit, Map<Room, Point> centres) {
+    }
+
+    /** One stairway leaving a level. */
+    private record Stairway(int fromLevel, Room room, int toLevel, StairsType type) {
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ ALIGNMENT ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Places levels top to bottom. For each level, every stairway between it and a level already
+     * placed pairs a fixed world point with the nearest room on the other side; the level's offset
+     * is the median displacement over those pairs, re-estimated a few times.
+     */
+    private MultiLevelDungeon align(List<FittedLevel> fitted) {
+        List<Stairway> stairways = new ArrayList<>();
+        for (int i = 0; i < fitted.size(); i++) {
+            for (Corridor c : fitted.get(i).dungeon().getCorridors()) {
+                StairsType type = c.getStairsType();
+                if (type == null || type.getLevelChange() == 0) {
+                    continue;
+                }
+                int target = i + type.getLevelChange();
+                Room room = (c.getToRoom() != null) ? c.getToRoom() : c.getFromRoom();
+                if (target >= 0 && target < fitted.size() && fitted.get(i).centres().containsKey(room)) {
+                    stairways.add(new Stairway(i, room, target, type));
+                }
+            }
+        }
+
+        Point[] offsets = new Point[fitted.size()];
+        List<PointKdTree> trees = new ArrayList<>();
+        List<Map<Point, Room>> roomsAt = new ArrayList<>();
+        for (FittedLevel level : fitted) {
+            Map<Point, Room> byCentre = new HashMap<>();
+            level.centres().forEach((room, centre) -> byCentre.putIfAbsent(centre, room));
+            roomsAt.add(byCentre);
+            trees.add(new PointKdTree(byCentre.keySet()));
+        }
+
+        for (int j = 0; j < fitted.size(); j++) {
+            Point offset = new Point(0, 0);
+            for (int round = 0; round < ALIGN_ROUNDS; round++) {
+                List<Integer> dxs = new ArrayList<>();
+                List<Integer> dys = new ArrayList<>();
+                for (Stairway s : stairways) {
+                    Point[] pair = pairFor(s, j, offset, offsets, fitted, trees);
+                    if (pair != null) {
+                        // pair[0] is the world point on the placed level, pair[1] the local point on level j
+                        dxs.add(pair[0].x - pair[1].x);
+                        dys.add(pair[0].y - pair[1].y);
+                    }
+                }
+                if (dxs.isEmpty()) {
+                    break; // nothing ties this level to the ones above; leave it where it is
+                }
+                offset = new Point(median(dxs), median(dys));
+            }
+            offsets[j] = offset;
+        }
+
+        List<MultiLevelDungeon.StairLink> links = new ArrayList<>();
+        for (Stairway s : stairways) {
+            FittedLevel target = fitted.get(s.toLevel());
+            Point from = fitted.get(s.fromLevel()).centres().get(s.room());
+            Point world = new Point(from.x + offsets[s.fromLevel()].x, from.y + offsets[s.fromLevel()].y);
+            PointKdTree tree = trees.get(s.toLevel());
+            if (tree.isEmpty()) {
+                continue;
+            }
+            Point offTo = offsets[s.toLevel()];
+            Point landing = tree.nearest(world.x - offTo.x, world.y - offTo.y);
+            links.add(new MultiLevelDungeon.StairLink(s.fromLevel(), s.room(), s.toLevel(), roomsAt.get(s.toLevel()).get(landing),
+                    s.type(), tree.lastDistance()));
+        }
+
+        List<MultiLevelDungeon.Level> levels = new ArrayList<>(fitted.size());
+        for (int i = 0; i < fitted.size(); i++) {
+            levels.add(new MultiLevelDungeon.Level(i, fitted.get(i).dungeon(), fitted.get(i).fit(), offsets[i]));
+        }
+        return new MultiLevelDungeon(levels, links);
+    }
+
+    /**
+     * For a stairway between level {@code j} and an already placed level, returns
+     * {world point on the placed level, matching point on level j in j's coordinates},
+     * or null if the stairway doesn't join j to a placed level.
+     */
+    private static Point[] pairFor(Stairway s, int j, Point offset, Point[] offsets,
+                                   List<FittedLevel> fitted, List<PointKdTree> trees) {
+        if (s.fromLevel() < j && s.toLevel() == j) {
+            // Stairs on a placed level lead down/up to j: land on j's nearest room
+            Point p = fitted.get(s.fromLevel()).centres().get(s.room());
+            Point world = new Point(p.x + offsets[s.fromLevel()].x, p.y + offsets[s.fromLevel()].y);
+            PointKdTree tree = trees.get(j);
+            if (tree.isEmpty()) {
+                return null;
+            }
+            return new Point[]{world, tree.nearest(world.x - offset.x, world.y - offset.y)};
+        }
+        if (s.fromLevel() == j && s.toLevel() < j) {
+            // Stairs on j lead to a placed level: match the nearest room there
+            Point local = fitted.get(j).centres().get(s.room());
+            Point placed = offsets[s.toLevel()];
+            PointKdTree tree = trees.get(s.toLevel());
+            if (tree.isEmpty()) {
+                return null;
+            }
+            Point near = tree.nearest(local.x + offset.x - placed.x, local.y + offset.y - placed.y);
+            return new Point[]{new Point(near.x + placed.x, near.y + placed.y), local};
+        }
+        return null;
+    }
+
+    private static int median(List<Integer> values) {
+        int[] sorted = values.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Centre of each room's squares in a fitted grid. Rooms with no squares are left out.
+     */
+    private static Map<Room, Point> roomCentres(Dungeon dungeon, CellGridView grid) {
+        Map<Integer, int[]> boxes = new HashMap<>(); // id -> minX, minY, maxX, maxY
+        Rectangle used = grid.getUsedBounds();
+        for (int y = used.y; y < used.y + used.height; y++) {
+            for (int x = used.x; x < used.x + used.width; x++) {
+                if (grid.getCellType(x, y) != GridCell.CellType.ROOM) {
+                    continue;
+                }
+                int[] box = boxes.get(grid.getRoomId(x, y));
+                if (box == null) {
+                    boxes.put(grid.getRoomId(x, y), new int[]{x, y, x, y});
+                    continue;
+                }
+                box[0] = Math.min(box[0], x);
+                box[1] = Math.min(box[1], y);
+                box[2] = Math.max(box[2], x);
+                box[3] = Math.max(box[3], y);
+            }
+        }
+        Map<Room, Point> centres = new LinkedHashMap<>(); // dungeon order, so ties resolve the same way every run
+        for (Room r : dungeon.getRooms()) {
+            int[] box = boxes.get(r.getId());
+            if (box != null) {
+                centres.put(r, new Point((box[0] + box[2]) / 2, (box[1] + box[3]) / 2));
+            }
+        }
+        return centres;
+    }
+}
@@ -0,0 +1,194 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Runs several independently seeded {@link AStarDungeonGridFitter} fits in parallel
+ * and keeps the most compact one.
+ * <p>
+ * Each layout is scored on bounding area, carved corridor length, room overlaps and
+ * failed corridors (lower is better). Every partial score is a lower bound on the
+ * final one (rooms are placed first, and corridors only add area, length and failures),
+ * so a start whose partial score already exceeds the best finished layout is abandoned.
+ * Ties go to the lowest start index, so the result depends only on the seed.
+ */
+public class MultiStartDungeonFitter implements DungeonFitter {
+
+    private static final Logger LOG = Logger.getLogger(MultiStartDungeonFitter.class.getName());
+
+    public static final int DEFAULT_STARTS = 8;
+
+    // Score weights
+    private static final double AREA_WEIGHT = 1.0;
+    private static final double CORRIDOR_WEIGHT = 2.0;
+    private static final double OVERLAP_WEIGHT = 50.0;
+    private static final double FAILED_CORRIDOR_WEIGHT = 500.0;
+
+    // Spreads consecutive start indexes across the seed space
+    private static final long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final int starts;
+    private final long seed;
+    private final LongFunction<AStarDungeonGridFitter> fitterFactory;
+
+    // Best layout of the last fit
+    private AStarDungeonGridFitter best;
+    private double bestScore = Double.NaN;
+
+    public MultiStartDungeonFitter(long seed) {
+        this(DEFAULT_STARTS, seed);
+    }
+
+    public MultiStartDungeonFitter(int starts, long seed) {
+        this(starts, seed, AStarDungeonGridFitter::new);
+    }
+
+    MultiStartDungeonFitter(int starts, long seed, LongFunction<AStarDungeonGridFitter> fitterFactory) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("starts must be >= 1, got " + starts);
+        }
+        this.starts = starts;
+        this.seed = seed;
+        this.fitterFactory = fitterFactory;
+    }
+
+    @Override
+    public FitResult fit(Dungeon dungeon) {
+        MultiStartDungeonFitter run = new MultiStartDungeonFitter(starts, seed, fitterFactory);
+        run.fitDungeon(dungeon);
+        return FitResult.of(run);
+    }
+
+    @Override
+    public Rectangle fitDungeon(Dungeon dungeon) {
+        long startTime = System.currentTimeMillis();
+        int threads = Math.min(starts, Runtime.getRuntime().availableProcessors());
+        LOG.info("Multi-start fit: " + starts + " starts on " + threads + " threads, seed " + seed);
+
+        // Incumbent score, stored as double bits so it can be CAS-updated
+        AtomicLong incumbent = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Candidate>> futures = new ArrayList<>(starts);
+            for (int i = 0; i < starts; i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> runStart(dungeon, index, incumbent)));
+            }
+
+            Candidate winner = null;
+            int abandonedCount = 0;
+            for (Future<Candidate> f : futures) {
+                Candidate c = f.get();
+                if (c == null) {
+                    abandonedCount++;
+                } else if (winner == null || c.score() < winner.score()) {
+                    // futures are in start order, so strict '<' keeps the lowest index on ties
+                    winner = c;
+                }
+            }
+            if (winner == null) {
+                // Cannot happen: the first start to finish is never abandoned
+                throw new IllegalStateException("No multi-start candidate finished");
+            }
+
+            best = winner.fitter();
+            bestScore = winner.score();
+            LOG.info("Multi-start fit complete. Best start #" + winner.index() + " score " + bestScore
+                     + " (" + abandonedCount + " abandoned). Elapsed ms: "
+                     + (System.currentTimeMillis() - startTime));
+            return best.getBounds();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during multi-start fit", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Multi-start fit failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Candidate runStart(Dungeon dungeon, int index, AtomicLong incumbent) {
+        AStarDungeonGridFitter fitter = fitterFactory.apply(seed + index * SEED_GAMMA);
+        // Strictly greater: a start that could still tie the incumbent must finish,
+        // otherwise the lowest-index tie-break would depend on thread timing.
+        fitter.setAbandonCheck(partial ->
+                lowerBound(partial) > Double.longBitsToDouble(incumbent.get()));
+
+        Rectangle rect = fitter.fitDungeon(dungeon);
+        if (fitter.isAbandoned()) {
+            return null;
+        }
+        double score = score(rect, fitter.getStats());
+        incumbent.accumulateAndGet(Double.doubleToLongBits(score), (cur, next) ->
+                Double.longBitsToDouble(next) < Double.longBitsToDouble(cur) ? next : cur);
+        return new Candidate(index, fitter, score);
+    }
+
+    /**
+     * Compactness score of a finished layout; lower is better.
+     */
+    static double score(Rectangle bounds, FitStats stats) {
+        return AREA_WEIGHT * ((long) bounds.width * bounds.height)
+               + CORRIDOR_WEIGHT * stats.getCorridorCells()
+               + OVERLAP_WEIGHT * stats.getOverlapCells()
+               + FAILED_CORRIDOR_WEIGHT * stats.getFailedCorridors();
+    }
+
+    /**
+     * Score of a partially routed layout, using the rooms-only area. Never exceeds the
+     * score the layout will have once finished.
+     */
+    static double lowerBound(FitStats partial) {
+        return AREA_WEIGHT * partial.getPlacedArea()
+               + CORRIDOR_WEIGHT * partial.getCorridorCells()
+               + OVERLAP_WEIGHT * partial.getOverlapCells()
+               + FAILED_CORRIDOR_WEIGHT * partial.getFailedCorridors();
+    }
+
+    /**
+     * Score of the layout returned by the last fit, or NaN if not yet fitted.
+     */
+    public double getBestScore() {
+        return bestScore;
+    }
+
+    @Override
+    public Collection<GridCell> getAllCells() {
+        return (best == null) ? Collections.emptyList() : best.getAllCells();
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return (best == null) ? null : best.getBounds();
+    }
+
+    @Override
+    public CellGridView getGrid() {
+        return (best == null) ? null : best.getGrid();
+    }
+
+    @Override
+    public FitStats getStats() {
+        return (best == null) ? null : best.getStats();
+    }
+
+    @Override
+    public Map<Corridor, CorridorPath> getCorridorPaths() {
+        return (best == null) ? Collections.emptyMap() : best.getCorridorPaths();
+    }
+
+    private record Candidate(int index, AStarDungeonGridFitter fitter, double score) {
+    }
+}
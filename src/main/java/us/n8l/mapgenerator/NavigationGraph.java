@@ -0,0 +1,753 @@
+package us.n8l.mapgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A compact navigation graph derived from a fitted map, with precomputed room-to-room distances,
+ * so route queries never touch the grid.
+ * <p>
+ * Nodes are the rooms (one node per room, numbered in room-id order) and corridor junctions:
+ * corridor squares that do not simply continue a corridor, i.e. that link to anything other than
+ * exactly two neighbours (counting each adjacent room once). Edges are the corridor runs between
+ * nodes, weighted by their number of steps; rooms that touch are joined by a one-step edge.
+ * Crossing a room costs nothing, so distances are corridor lengths.
+ * <p>
+ * With up to {@link #DEFAULT_MAX_ALL_PAIRS_ROOMS} rooms the graph stores an all-pairs room
+ * distance table, so {@link #distance} is one array read. Larger maps store distances from a
+ * few landmark rooms instead, and queries run A* with the ALT (landmark triangle inequality)
+ * heuristic over the small graph.
+ * <p>
+ * Serialized next to a map (see {@link #sidecarFor}) as big-endian:
+ * <pre>
+ *   header   int magic "DNAV", short version, short table kind (0 none, 1 all-pairs, 2 landmarks)
+ *   nodes    int node count, int room count, per node: int x, int y, int room id (0 for a junction)
+ *   edges    int directed edge count, per node: int first edge (node count + 1 entries),
+ *            per edge: int target node, int weight
+ *   table    all-pairs: room count^2 ints, row-major;
+ *            landmarks: int count, the landmark nodes, then per landmark one distance per node
+ * </pre>
+ * Unreachable distances are stored as {@code Integer.MAX_VALUE}. Immutable and thread-safe.
+ */
+public final class NavigationGraph {
+
+    private static final Logger LOG = Logger.getLogger(NavigationGraph.class.getName());
+
+    public static final int MAGIC = 0x444E4156; // "DNAV"
+    public static final short VERSION = 1;
+
+    public static final int DEFAULT_MAX_ALL_PAIRS_ROOMS = 1024;
+    public static final int DEFAULT_LANDMARKS = 16;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int MAX_TABLE_ENTRIES = Integer.MAX_VALUE - 8;
+
+    private static final short TABLE_NONE = 0;
+    private static final short TABLE_ALL_PAIRS = 1;
+    private static final short TABLE_LANDMARKS = 2;
+
+    private static final int[][] DELTAS = {{1,0},{-1,0},{0,1},{0,-1}};
+
+    private final int roomCount;
+    private final int[] nodeX;
+    private final int[] nodeY;
+    private final int[] nodeRoomId;      // 0 for junctions; rooms come first, sorted by id
+    private final int[] edgeStart;       // CSR: edges of node n are edgeStart[n] .. edgeStart[n + 1] - 1
+    private final int[] edgeTarget;
+    private final int[] edgeWeight;
+    private final int[] roomDistances;   // roomCount x roomCount, or null
+    private final int[] landmarks;       // landmark nodes, or null
+    private final int[][] landmarkDistances;
+
+    private NavigationGraph(int roomCount, int[] nodeX, int[] nodeY, int[] nodeRoomId,
+                            int[] edgeStart, int[] edgeTarget, int[] edgeWeight,
+                            int[] roomDistances, int[] landmarks, int[][] landmarkDistances) {
+        this.roomCount = roomCount;
+        this.nodeX = nodeX;
+        this.nodeY = nodeY;
+        this.nodeRoomId = nodeRoomId;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+        this.roomDistances = roomDistances;
+        this.landmarks = landmarks;
+        this.landmarkDistances = landmarkDistances;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ QUERIES ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public int nodeCount() {
+        return nodeX.length;
+    }
+
+    public int roomCount() {
+        return roomCount;
+    }
+
+    /**
+     * Number of undirected edges.
+     */
+    public int edgeCount() {
+        return edgeTarget.length / 2;
+    }
+
+    /**
+     * Room id of a node, or 0 if the node is a corridor junction.
+     */
+    public int getRoomId(int node) {
+        return nodeRoomId[node];
+    }
+
+    /**
+     * A node's square: the junction itself, or the centre of the room's bounding box.
+     */
+    public int getX(int node) {
+        return nodeX[node];
+    }
+
+    public int getY(int node) {
+        return nodeY[node];
+    }
+
+    /**
+     * The node of a room, or -1 if the room isn't on the map.
+     */
+    public int nodeOf(int roomId) {
+        int i = Arrays.binarySearch(nodeRoomId, 0, roomCount, roomId);
+        return (i >= 0) ? i : -1;
+    }
+
+    /**
+     * Corridor steps between two rooms, or -1 if either room is missing or they are not connected.
+     */
+    public int distance(int fromRoomId, int toRoomId) {
+        int from = nodeOf(fromRoomId);
+        int to = nodeOf(toRoomId);
+        if (from < 0 || to < 0) {
+            return -1;
+        }
+        int d;
+        if (roomDistances != null) {
+            d = roomDistances[from * roomCount + to];
+        } else {
+            d = search(from, to, null);
+        }
+        return (d == UNREACHABLE) ? -1 : d;
+    }
+
+    /**
+     * The nodes on a shortest route between two rooms, both ends included, or an empty list if
+     * there is none.
+     */
+    public List<Integer> route(int fromRoomId, int toRoomId) {
+        int from = nodeOf(fromRoomId);
+        int to = nodeOf(toRoomId);
+        if (from < 0 || to < 0) {
+            return Collections.emptyList();
+        }
+        int[] parent = new int[nodeCount()];
+        if (search(from, to, parent) == UNREACHABLE) {
+            return Collections.emptyList();
+        }
+        List<Integer> route = new ArrayList<>();
+        for (int n = to; n != from; n = parent[n]) {
+            route.add(n);
+        }
+        route.add(from);
+        Collections.reverse(route);
+        return route;
+    }
+
+    /**
+     * A* from one node to another; returns the distance and fills {@code parent} if given.
+     */
+    private int search(int from, int to, int[] parent) {
+        if (from == to) {
+            return 0;
+        }
+        if (definitelyDisconnected(from, to)) {
+            return UNREACHABLE;
+        }
+        int n = nodeCount();
+        int[] dist = new int[n];
+        Arrays.fill(dist, UNREACHABLE);
+        boolean[] closed = new boolean[n];
+        LongHeap open = new LongHeap();
+        dist[from] = 0;
+        open.push(heuristic(from, to), from);
+        while (!open.isEmpty()) {
+            int u = open.popNode();
+            if (closed[u]) {
+                continue;
+            }
+            if (u == to) {
+                return dist[u];
+            }
+            closed[u] = true;
+            for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+                int v = edgeTarget[e];
+                int nd = dist[u] + edgeWeight[e];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    if (parent != null) {
+                        parent[v] = u;
+                    }
+                    open.push((long) nd + heuristic(v, to), v);
+                }
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * ALT lower bound on the distance from v to t: |d(L, t) - d(L, v)| over all landmarks L.
+     */
+    private int heuristic(int v, int t) {
+        if (landmarks == null) {
+            return 0;
+        }
+        int best = 0;
+        for (int[] d : landmarkDistances) {
+            if (d[v] != UNREACHABLE && d[t] != UNREACHABLE) {
+                best = Math.max(best, Math.abs(d[t] - d[v]));
+            }
+        }
+        return best;
+    }
+
+    /** A landmark that reaches exactly one of the two nodes proves they are disconnected. */
+    private boolean definitelyDisconnected(int a, int b) {
+        if (landmarks == null) {
+            return false;
+        }
+        for (int[] d : landmarkDistances) {
+            if ((d[a] == UNREACHABLE) != (d[b] == UNREACHABLE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ BUILDING ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    public static NavigationGraph build(FittedMap map) {
+        return build(map, DEFAULT_MAX_ALL_PAIRS_ROOMS, DEFAULT_LANDMARKS);
+    }
+
+    /**
+     * @param maxAllPairsRooms store an all-pairs table for up to this many rooms, landmarks beyond
+     * @param landmarkCount    landmark rooms to use when there are more rooms than that
+     */
+    public static NavigationGraph build(FittedMap map, int maxAllPairsRooms, int landmarkCount) {
+        long start = System.nanoTime();
+        GraphBuilder b = new GraphBuilder(map);
+        b.addNodes();
+        b.addEdges();
+
+        int n = b.nodeCount;
+        int[] edgeStart = new int[n + 1];
+        for (long key : b.edges.keySet()) {
+            edgeStart[(int) (key >>> 32) + 1]++;
+            edgeStart[(int) key + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            edgeStart[i + 1] += edgeStart[i];
+        }
+        int[] fill = Arrays.copyOf(edgeStart, n);
+        int[] edgeTarget = new int[edgeStart[n]];
+        int[] edgeWeight = new int[edgeStart[n]];
+        // Sorted keys, so the edge order (and the file) doesn't depend on hash order
+        long[] keys = b.edges.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        for (long key : keys) {
+            int u = (int) (key >>> 32);
+            int v = (int) key;
+            int w = b.edges.get(key);
+            edgeTarget[fill[u]] = v;
+            edgeWeight[fill[u]++] = w;
+            edgeTarget[fill[v]] = u;
+            edgeWeight[fill[v]++] = w;
+        }
+        int[] nodeX = Arrays.copyOf(b.nodeX, n);
+        int[] nodeY = Arrays.copyOf(b.nodeY, n);
+        int[] nodeRoomId = Arrays.copyOf(b.nodeRoomId, n);
+        int roomCount = b.roomIds.length;
+
+        NavigationGraph graph = new NavigationGraph(roomCount, nodeX, nodeY, nodeRoomId,
+                edgeStart, edgeTarget, edgeWeight, null, null, null);
+        // The all-pairs table is one int array, so it also has to fit in one
+        boolean allPairs = roomCount <= maxAllPairsRooms && (long) roomCount * roomCount <= MAX_TABLE_ENTRIES;
+        NavigationGraph result;
+        if (allPairs) {
+            int[] table = new int[roomCount * roomCount];
+            for (int r = 0; r < roomCount; r++) {
+                System.arraycopy(graph.dijkstra(r), 0, table, r * roomCount, roomCount);
+            }
+            result = new NavigationGraph(roomCount, nodeX, nodeY, nodeRoomId,
+                    edgeStart, edgeTarget, edgeWeight, table, null, null);
+        } else {
+            int[] chosen = new int[Math.min(landmarkCount, roomCount)];
+            int[][] distances = new int[chosen.length][];
+            graph.chooseLandmarks(chosen, distances);
+            result = new NavigationGraph(roomCount, nodeX, nodeY, nodeRoomId,
+                    edgeStart, edgeTarget, edgeWeight, null, chosen, distances);
+        }
+        LOG.fine("Built navigation graph: " + n + " nodes (" + roomCount + " rooms), " + result.edgeCount()
+                 + " edges, " + (allPairs ? "all-pairs" : landmarkCount + " landmarks")
+                 + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return result;
+    }
+
+    /** Distances from one node to every node. */
+    private int[] dijkstra(int source) {
+        int[] dist = new int[nodeCount()];
+        Arrays.fill(dist, UNREACHABLE);
+        dist[source] = 0;
+        LongHeap open = new LongHeap();
+        open.push(0, source);
+        while (!open.isEmpty()) {
+            long top = open.peek();
+            int u = open.popNode();
+            if ((int) (top >>> 32) > dist[u]) {
+                continue; // stale
+            }
+            for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+                int v = edgeTarget[e];
+                int nd = dist[u] + edgeWeight[e];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    open.push(nd, v);
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Farthest-point landmark selection among the rooms: each new landmark is the room farthest
+     * from the landmarks chosen so far. Rooms no landmark reaches yet are taken first, so every
+     * connected part of the map gets a landmark.
+     */
+    private void chooseLandmarks(int[] chosen, int[][] distances) {
+        int[] nearest = new int[roomCount];
+        Arrays.fill(nearest, UNREACHABLE);
+        int next = 0;
+        for (int k = 0; k < chosen.length; k++) {
+            chosen[k] = next;
+            distances[k] = dijkstra(next);
+            int bestRoom = -1;
+            long bestScore = -1;
+            for (int r = 0; r < roomCount; r++) {
+                nearest[r] = Math.min(nearest[r], distances[k][r]);
+                long score = (nearest[r] == UNREACHABLE) ? Long.MAX_VALUE : nearest[r];
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestRoom = r;
+                }
+            }
+            next = bestRoom;
+        }
+    }
+
+    /**
+     * Finds the nodes and traces the corridor runs between them.
+     */
+    private static final class GraphBuilder {
+        final FittedMap map;
+        final Rectangle bounds;
+        final FittedMap.Layer corridors;
+        final int[] roomIds;
+        final int traceLimit;
+
+        int nodeCount;
+        int[] nodeX = new int[256];
+        int[] nodeY = new int[256];
+        int[] nodeRoomId = new int[256];
+        final Map<Long, Integer> junctions = new HashMap<>();
+        final Map<Integer, Integer> roomNodes = new HashMap<>();
+        // (min node << 32 | max node) -> shortest weight
+        final Map<Long, Integer> edges = new HashMap<>();
+
+        GraphBuilder(FittedMap map) {
+            this.map = map;
+            this.bounds = map.getUsedBounds();
+            this.corridors = map.layer(GridCell.CellType.CORRIDOR);
+            this.roomIds = map.getRoomIds().stream().mapToInt(Integer::intValue).sorted().toArray();
+            this.traceLimit = corridors.cardinality() + 2; // guards against corridor loops with no junction
+        }
+
+        void addNodes() {
+            for (int id : roomIds) {
+                Rectangle box = map.getRoomBounds(id);
+                roomNodes.put(id, addNode(box.x + box.width / 2, box.y + box.height / 2, id));
+            }
+            for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+                int row = y;
+                corridors.forEachInRow(y, x -> {
+                    if (links(x, row) != 2) {
+                        junctions.put(pack(x, row), addNode(x, row, 0));
+                    }
+                });
+            }
+        }
+
+        private int addNode(int x, int y, int roomId) {
+            if (nodeCount == nodeX.length) {
+                nodeX = Arrays.copyOf(nodeX, nodeCount * 2);
+                nodeY = Arrays.copyOf(nodeY, nodeCount * 2);
+                nodeRoomId = Arrays.copyOf(nodeRoomId, nodeCount * 2);
+            }
+            nodeX[nodeCount] = x;
+            nodeY[nodeCount] = y;
+            nodeRoomId[nodeCount] = roomId;
+            return nodeCount++;
+        }
+
+        void addEdges() {
+            // Rooms: touching rooms, and every corridor square next to the room starts a run
+            for (int id : roomIds) {
+                int node = roomNodes.get(id);
+                Rectangle box = map.getRoomBounds(id);
+                for (int y = box.y; y < box.y + box.height; y++) {
+                    for (int x = box.x; x < box.x + box.width; x++) {
+                        if (!isRoom(x, y, id)) {
+                            continue;
+                        }
+                        for (int[] d : DELTAS) {
+                            int nx = x + d[0];
+                            int ny = y + d[1];
+                            if (corridors.get(nx, ny)) {
+                                trace(node, x, y, nx, ny);
+                            } else if (map.getCellType(nx, ny) == GridCell.CellType.ROOM
+                                       && map.getRoomId(nx, ny) != id) {
+                                addEdge(node, roomNodes.get(map.getRoomId(nx, ny)), 1);
+                            }
+                        }
+                    }
+                }
+            }
+            // Junctions: every corridor neighbour starts a run (rooms were handled above)
+            for (Map.Entry<Long, Integer> j : junctions.entrySet()) {
+                int x = (int) (j.getKey() >> 32);
+                int y = (int) (long) j.getKey();
+                for (int[] d : DELTAS) {
+                    if (corridors.get(x + d[0], y + d[1])) {
+                        trace(j.getValue(), x, y, x + d[0], y + d[1]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Follows a corridor run from {@code origin} (whose square (px, py) borders (x, y)) until
+         * it reaches a junction or a room.
+         */
+        private void trace(int origin, int px, int py, int x, int y) {
+            int fromRoom = isAnyRoom(px, py) ? map.getRoomId(px, py) : 0;
+            int steps = 1;
+            while (steps <= traceLimit) {
+                Integer junction = junctions.get(pack(x, y));
+                if (junction != null) {
+                    addEdge(origin, junction, steps);
+                    return;
+                }
+                // A pass-through square: exactly one way on besides the way we came
+                int nextX = 0, nextY = 0;
+                int toRoom = 0;
+                for (int[] d : DELTAS) {
+                    int nx = x + d[0];
+                    int ny = y + d[1];
+                    boolean cameFrom = (fromRoom != 0) ? isRoom(nx, ny, fromRoom) : (nx == px && ny == py);
+                    if (cameFrom) {
+                        continue;
+                    }
+                    if (corridors.get(nx, ny)) {
+                        nextX = nx;
+                        nextY = ny;
+                    } else if (isAnyRoom(nx, ny)) {
+                        toRoom = map.getRoomId(nx, ny);
+                    }
+                }
+                if (toRoom != 0) {
+                    addEdge(origin, roomNodes.get(toRoom), steps + 1);
+                    return;
+                }
+                px = x;
+                py = y;
+                fromRoom = 0;
+                x = nextX;
+                y = nextY;
+                steps++;
+            }
+        }
+
+        private void addEdge(int u, int v, int weight) {
+            if (u == v) {
+                return;
+            }
+            long key = ((long) Math.min(u, v) << 32) | Math.max(u, v);
+            edges.merge(key, weight, Math::min);
+        }
+
+        /**
+         * How many things a corridor square links to: corridor neighbours, plus each distinct
+         * adjacent room once.
+         */
+        private int links(int x, int y) {
+            int count = 0;
+            int firstRoom = 0;
+            for (int[] d : DELTAS) {
+                int nx = x + d[0];
+                int ny = y + d[1];
+                if (corridors.get(nx, ny)) {
+                    count++;
+                } else if (isAnyRoom(nx, ny)) {
+                    int id = map.getRoomId(nx, ny);
+                    if (firstRoom == 0) {
+                        firstRoom = id;
+                        count++;
+                    } else if (id != firstRoom) {
+                        count++; // at most two distinct rooms can matter for "exactly 2"
+                    }
+                }
+            }
+            return count;
+        }
+
+        private boolean isAnyRoom(int x, int y) {
+            return map.getCellType(x, y) == GridCell.CellType.ROOM && map.getRoomId(x, y) != 0;
+        }
+
+        private boolean isRoom(int x, int y, int roomId) {
+            return map.getCellType(x, y) == GridCell.CellType.ROOM && map.getRoomId(x, y) == roomId;
+        }
+
+        private static long pack(int x, int y) {
+            return ((long) x << 32) | (y & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * A binary min-heap of (priority, node) packed into longs, priority in the high half. Priorities
+     * are non-negative and clamped to an int, so long order is (priority, node) order.
+     */
+    private static final class LongHeap {
+        private long[] heap = new long[64];
+        private int size;
+
+        void push(long priority, int node) {
+            long entry = (Math.min(priority, Integer.MAX_VALUE) << 32) | node;
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= entry) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = entry;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long peek() {
+            return heap[0];
+        }
+
+        int popNode() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return (int) top;
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ SERIALIZATION ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Where the navigation graph for a map file lives: the same name with a {@code .dnav} extension.
+     */
+    public static Path sidecarFor(Path mapFile) {
+        String name = mapFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = (dot > 0) ? name.substring(0, dot) : name;
+        return mapFile.resolveSibling(base + ".dnav");
+    }
+
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(roomDistances != null ? TABLE_ALL_PAIRS : landmarks != null ? TABLE_LANDMARKS : TABLE_NONE);
+            out.writeInt(nodeCount());
+            out.writeInt(roomCount);
+            for (int i = 0; i < nodeCount(); i++) {
+                out.writeInt(nodeX[i]);
+                out.writeInt(nodeY[i]);
+                out.writeInt(nodeRoomId[i]);
+            }
+            out.writeInt(edgeTarget.length);
+            for (int start : edgeStart) {
+                out.writeInt(start);
+            }
+            for (int e = 0; e < edgeTarget.length; e++) {
+                out.writeInt(edgeTarget[e]);
+                out.writeInt(edgeWeight[e]);
+            }
+            if (roomDistances != null) {
+                for (int d : roomDistances) {
+                    out.writeInt(d);
+                }
+            } else if (landmarks != null) {
+                out.writeInt(landmarks.length);
+                for (int l : landmarks) {
+                    out.writeInt(l);
+                }
+                for (int[] row : landmarkDistances) {
+                    for (int d : row) {
+                        out.writeInt(d);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a graph written by {@link #write}. Every count and index is checked against the file
+     * before it is used, so a damaged sidecar fails with an IOException.
+     */
+    public static NavigationGraph read(Path file) throws IOException {
+        long fileBytes = Files.size(file);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a navigation graph: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported navigation graph version " + version);
+            }
+            short tableKind = in.readShort();
+            if (tableKind != TABLE_NONE && tableKind != TABLE_ALL_PAIRS && tableKind != TABLE_LANDMARKS) {
+                throw new IOException("Corrupt navigation graph: table kind " + tableKind);
+            }
+            int nodes = in.readInt();
+            int rooms = in.readInt();
+            if (nodes < 0 || rooms < 0 || rooms > nodes || 3L * Integer.BYTES * nodes > fileBytes) {
+                throw new IOException("Corrupt navigation graph: " + nodes + " nodes, " + rooms + " rooms");
+            }
+            int[] nodeX = new int[nodes];
+            int[] nodeY = new int[nodes];
+            int[] nodeRoomId = new int[nodes];
+            for (int i = 0; i < nodes; i++) {
+                nodeX[i] = in.readInt();
+                nodeY[i] = in.readInt();
+                nodeRoomId[i] = in.readInt();
+                // Rooms first, by ascending id (nodeOf binary-searches them), then junctions
+                boolean valid = (i < rooms) ? nodeRoomId[i] != 0 && (i == 0 || nodeRoomId[i] > nodeRoomId[i - 1])
+                                            : nodeRoomId[i] == 0;
+                if (!valid) {
+                    throw new IOException("Corrupt navigation graph: node " + i + " has room id " + nodeRoomId[i]);
+                }
+            }
+            int edgeCount = in.readInt();
+            if (edgeCount < 0 || 2L * Integer.BYTES * edgeCount > fileBytes) {
+                throw new IOException("Corrupt navigation graph: " + edgeCount + " edges");
+            }
+            int[] edgeStart = new int[nodes + 1];
+            // Runs from 0 to the edge count without going backwards
+            for (int i = 0; i <= nodes; i++) {
+                edgeStart[i] = in.readInt();
+                int min = (i == 0) ? 0 : edgeStart[i - 1];
+                int max = (i == 0) ? 0 : edgeCount;
+                if (edgeStart[i] < min || edgeStart[i] > max || (i == nodes && edgeStart[i] != edgeCount)) {
+                    throw new IOException("Corrupt navigation graph: edge start " + edgeStart[i] + " of node " + i);
+                }
+            }
+            int[] edgeTarget = new int[edgeCount];
+            int[] edgeWeight = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                edgeTarget[e] = in.readInt();
+                edgeWeight[e] = in.readInt();
+                if (edgeTarget[e] < 0 || edgeTarget[e] >= nodes || edgeWeight[e] < 0) {
+                    throw new IOException("Corrupt navigation graph: edge " + e);
+                }
+            }
+            int[] table = null;
+            int[] landmarks = null;
+            int[][] landmarkDistances = null;
+            if (tableKind == TABLE_ALL_PAIRS) {
+                long entries = (long) rooms * rooms;
+                if (entries > MAX_TABLE_ENTRIES || Integer.BYTES * entries > fileBytes) {
+                    throw new IOException("Corrupt navigation graph: all-pairs table for " + rooms + " rooms");
+                }
+                table = new int[(int) entries];
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = readDistance(in);
+                }
+            } else if (tableKind == TABLE_LANDMARKS) {
+                int count = in.readInt();
+                if (count < 0 || count > rooms || (long) count * nodes * Integer.BYTES > fileBytes) {
+                    throw new IOException("Corrupt navigation graph: " + count + " landmarks");
+                }
+                landmarks = new int[count];
+                for (int k = 0; k < count; k++) {
+                    landmarks[k] = in.readInt();
+                    if (landmarks[k] < 0 || landmarks[k] >= rooms) {
+                        throw new IOException("Corrupt navigation graph: landmark node " + landmarks[k]);
+                    }
+                }
+                landmarkDistances = new int[count][nodes];
+                for (int[] row : landmarkDistances) {
+                    for (int i = 0; i < nodes; i++) {
+                        row[i] = readDistance(in);
+                    }
+                }
+            }
+            if (in.read() != -1) {
+                throw new IOException("Corrupt navigation graph: data after the table");
+            }
+            return new NavigationGraph(rooms, nodeX, nodeY, nodeRoomId, edgeStart, edgeTarget, edgeWeight,
+                    table, landmarks, landmarkDistances);
+        }
+    }
+
+    private static int readDistance(DataInputStream in) throws IOException {
+        int d = in.readInt();
+        if (d < 0) {
+            throw new IOException("Corrupt navigation graph: distance " + d);
+        }
+        return d;
+    }
+}
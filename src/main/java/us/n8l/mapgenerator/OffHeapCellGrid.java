@@ -0,0 +1,211 @@
+package us.n8l.mapgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A fixed-extent grid stored outside the Java heap, for maps of 10k x 10k squares and more.
+ * <p>
+ * Each square costs 5 bytes: one byte of cell type (the {@link GridCell.CellType} ordinal)
+ * and a 4-byte room id, held in two row-major planes. Planes are split into pages of
+ * whole rows so no single buffer exceeds 1 GiB. The pages are either direct buffers
+ * (anonymous memory) or memory-mapped regions of a file, so heap size and GC work stay
+ * flat no matter how large the map gets.
+ * <p>
+ * Reads outside the extent return EMPTY / 0; writes outside it throw. Not thread-safe.
+ */
+public class OffHeapCellGrid implements CellGrid, Closeable {
+
+    private static final int MAX_PAGE_BYTES = 1 << 30;
+    private static final GridCell.CellType[] TYPES = GridCell.CellType.values();
+
+    private final int originX;
+    private final int originY;
+    private final int width;
+    private final int height;
+    private final int rowsPerPage;
+
+    private final ByteBuffer[] typePages;
+    private final IntBuffer[] roomPages;
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final FileChannel channel; // null for anonymous memory
+
+    private final UsedBounds usedBounds = new UsedBounds();
+
+    /**
+     * Allocates an anonymous off-heap grid covering {@code extent}, initially all EMPTY.
+     */
+    public OffHeapCellGrid(Rectangle extent) {
+        this(extent, (FileChannel) null);
+        try {
+            allocatePages();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen without a channel
+        }
+    }
+
+    private OffHeapCellGrid(Rectangle extent, FileChannel channel) {
+        if (extent.width <= 0 || extent.height <= 0) {
+            throw new IllegalArgumentException("Extent must be non-empty: " + extent);
+        }
+        this.originX = extent.x;
+        this.originY = extent.y;
+        this.width = extent.width;
+        this.height = extent.height;
+        this.channel = channel;
+        // room ids are the wider plane, so they decide how many rows fit in a page
+        this.rowsPerPage = Math.max(1, MAX_PAGE_BYTES / (width * Integer.BYTES));
+        int pages = (height + rowsPerPage - 1) / rowsPerPage;
+        this.typePages = new ByteBuffer[pages];
+        this.roomPages = new IntBuffer[pages];
+    }
+
+    /**
+     * Opens (or creates) a file-backed grid. The file holds the type plane followed by the
+     * room-id plane; its contents survive {@link #close()} and can be reopened with the same extent.
+     */
+    public static OffHeapCellGrid mapFile(Path file, Rectangle extent) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        OffHeapCellGrid grid = new OffHeapCellGrid(extent, ch);
+        try {
+            grid.allocatePages();
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+        // Existing contents are unknown until scanned
+        grid.usedBounds.markStale();
+        return grid;
+    }
+
+    private void allocatePages() throws IOException {
+        long cells = (long) width * height;
+        for (int p = 0; p < typePages.length; p++) {
+            int rows = Math.min(rowsPerPage, height - p * rowsPerPage);
+            long firstCell = (long) p * rowsPerPage * width;
+            int pageCells = rows * width;
+            ByteBuffer types;
+            ByteBuffer rooms;
+            if (channel == null) {
+                types = ByteBuffer.allocateDirect(pageCells);
+                rooms = ByteBuffer.allocateDirect(pageCells * Integer.BYTES);
+            } else {
+                MappedByteBuffer t = channel.map(FileChannel.MapMode.READ_WRITE, firstCell, pageCells);
+                MappedByteBuffer r = channel.map(FileChannel.MapMode.READ_WRITE,
+                        cells + firstCell * Integer.BYTES, (long) pageCells * Integer.BYTES);
+                mappings.add(t);
+                mappings.add(r);
+                types = t;
+                rooms = r;
+            }
+            typePages[p] = types;
+            roomPages[p] = rooms.order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+
+    public Rectangle getExtent() {
+        return new Rectangle(originX, originY, width, height);
+    }
+
+    private boolean inExtent(int x, int y) {
+        return x >= originX && y >= originY && x - originX < width && y - originY < height;
+    }
+
+    @Override
+    public boolean isWritable(int x, int y) {
+        return inExtent(x, y);
+    }
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        if (!inExtent(x, y)) {
+            return GridCell.CellType.EMPTY;
+        }
+        int row = y - originY;
+        int page = row / rowsPerPage;
+        return TYPES[typePages[page].get((row % rowsPerPage) * width + (x - originX))];
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        if (!inExtent(x, y)) {
+            return 0;
+        }
+        int row = y - originY;
+        int page = row / rowsPerPage;
+        return roomPages[page].get((row % rowsPerPage) * width + (x - originX));
+    }
+
+    @Override
+    public void setCell(int x, int y, GridCell.CellType type, int roomId) {
+        if (!inExtent(x, y)) {
+            throw new IndexOutOfBoundsException("(" + x + "," + y + ") is outside " + getExtent());
+        }
+        int row = y - originY;
+        int page = row / rowsPerPage;
+        int index = (row % rowsPerPage) * width + (x - originX);
+        usedBounds.onWrite(x, y, TYPES[typePages[page].get(index)], type);
+        typePages[page].put(index, (byte) type.ordinal());
+        roomPages[page].put(index, roomId);
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        if (usedBounds.isStale()) {
+            usedBounds.reset();
+            for (int row = 0; row < height; row++) {
+                ByteBuffer types = typePages[row / rowsPerPage];
+                int base = (row % rowsPerPage) * width;
+                for (int col = 0; col < width; col++) {
+                    if (types.get(base + col) != 0) {
+                        usedBounds.include(originX + col, originY + row);
+                    }
+                }
+            }
+        }
+        return usedBounds.toRectangle();
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>();
+        Rectangle used = getUsedBounds();
+        for (int y = used.y; y < used.y + used.height; y++) {
+            for (int x = used.x; x < used.x + used.width; x++) {
+                GridCell.CellType type = getCellType(x, y);
+                if (type != GridCell.CellType.EMPTY) {
+                    GridCell cell = new GridCell(x, y);
+                    cell.setCellType(type);
+                    cell.setRoomId(getRoomId(x, y));
+                    result.add(cell);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Flushes a file-backed grid to disk and closes the file. Anonymous pages are
+     * released by the garbage collector once the grid is unreachable.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            for (MappedByteBuffer m : mappings) {
+                m.force();
+            }
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package us.n8l.mapgenerator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Image;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.logging.Logger;
+
+/**
+ * Renders any {@link CellGridView} to a PNG without a Swing component and without holding the
+ * image in memory.
+ * <p>
+ * Pixels are 2-bit indices into a four-colour palette (grid line, empty, room, corridor) using
+ * the viewer's colours. The image handed to the PNG {@link ImageWriter} is a virtual one made of
+ * full-width strips: the writer pulls it a row at a time, and each strip is rendered from the
+ * grid's cells when the first of its rows is asked for, replacing the previous strip. Memory use
+ * is one strip (about {@value #STRIP_BYTES} bytes, at least one row of cells) whatever the map's
+ * height, and grows only with its width.
+ */
+public final class PngExporter {
+
+    private static final Logger LOG = Logger.getLogger(PngExporter.class.getName());
+
+    public static final int DEFAULT_SCALE = 4;
+
+    private static final int STRIP_BYTES = 1 << 20;
+
+    // Palette indices; LINE is 0 so a zeroed row is a grid line
+    private static final int LINE = 0;
+    private static final int EMPTY = 1;
+    private static final int ROOM = 2;
+    private static final int CORRIDOR = 3;
+
+    private static final IndexColorModel PALETTE = new IndexColorModel(2, 4,
+            new byte[]{0, 48, (byte) 220, (byte) 200},
+            new byte[]{0, 48, (byte) 220, (byte) 200},
+            new byte[]{0, 48, (byte) 220, (byte) 255});
+
+    private PngExporter() {
+    }
+
+    /**
+     * Writes the grid's used bounds at {@link #DEFAULT_SCALE} pixels per square, without grid lines.
+     */
+    public static void write(CellGridView grid, Path file) throws IOException {
+        write(grid, grid.getUsedBounds(), DEFAULT_SCALE, false, file);
+    }
+
+    /**
+     * Writes {@code area} of the grid at {@code scale} pixels per square. With grid lines each
+     * square gets a one-pixel black outline, as in the viewer, and the image is one pixel wider
+     * and taller than {@code area * scale}.
+     */
+    public static void write(CellGridView grid, Rectangle area, int scale, boolean gridLines, Path file)
+            throws IOException {
+        // FileImageOutputStream writes in place, so a longer old file would leave a tail behind
+        Files.deleteIfExists(file);
+        try (ImageOutputStream out = new FileImageOutputStream(file.toFile())) {
+            write(grid, area, scale, gridLines, out);
+        }
+        LOG.fine("Wrote " + file);
+    }
+
+    /**
+     * Writes to a stream, e.g. an HTTP response; {@code out} is flushed but not closed.
+     */
+    public static void write(CellGridView grid, Rectangle area, int scale, boolean gridLines, OutputStream out)
+            throws IOException {
+        try (ImageOutputStream image = new MemoryCacheImageOutputStream(out)) {
+            write(grid, area, scale, gridLines, image);
+        }
+        out.flush();
+    }
+
+    private static void write(CellGridView grid, Rectangle area, int scale, boolean gridLines, ImageOutputStream out)
+            throws IOException {
+        if (scale < 1 || (gridLines && scale < 2)) {
+            throw new IllegalArgumentException("Scale too small: " + scale);
+        }
+        if (area.width <= 0 || area.height <= 0) {
+            throw new IllegalArgumentException("Nothing to export in " + area);
+        }
+        long start = System.nanoTime();
+        StripImage image = new StripImage(grid, area, scale, gridLines);
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+        if (!writers.hasNext()) {
+            throw new IOException("No PNG writer available");
+        }
+        ImageWriter writer = writers.next();
+        try {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), null);
+        } finally {
+            writer.dispose();
+        }
+        LOG.info("Exported " + image.getWidth() + "x" + image.getHeight() + " PNG (" + image.stripsRendered
+                 + " strips of " + image.getTileHeight() + " rows) in "
+                 + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ STRIPS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * A read-only image whose tiles are full-width strips of whole square rows, rendered on
+     * demand with only the latest one kept. Not thread-safe; it only lives for one write.
+     */
+    private static final class StripImage implements RenderedImage {
+        private final CellGridView grid;
+        private final Rectangle area;
+        private final int scale;
+        private final boolean gridLines;
+        private final int width;
+        private final int height;
+        private final int stripHeight;
+        private final SampleModel sampleModel;
+
+        private int cachedStrip = -1;
+        private Raster cached;
+        private byte[] rowPixels;
+        int stripsRendered;
+
+        StripImage(CellGridView grid, Rectangle area, int scale, boolean gridLines) {
+            this.grid = grid;
+            this.area = area;
+            this.scale = scale;
+            this.gridLines = gridLines;
+            int extra = gridLines ? 1 : 0;
+            try {
+                this.width = Math.addExact(Math.multiplyExact(area.width, scale), extra);
+                this.height = Math.addExact(Math.multiplyExact(area.height, scale), extra);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Image too large: " + area + " at scale " + scale);
+            }
+            int stride = (int) (((long) width * 2 + 7) / 8);
+            int squareRows = Math.max(1, STRIP_BYTES / stride / scale);
+            this.stripHeight = (int) Math.min(height, (long) squareRows * scale);
+            this.sampleModel = PALETTE.createCompatibleSampleModel(width, stripHeight);
+        }
+
+        private Raster strip(int index) {
+            if (index != cachedStrip) {
+                cached = render(index);
+                cachedStrip = index;
+                stripsRendered++;
+            }
+            return cached;
+        }
+
+        private Raster render(int index) {
+            int y0 = index * stripHeight;
+            int rows = Math.min(stripHeight, height - y0);
+            WritableRaster raster = PALETTE.createCompatibleWritableRaster(width, rows);
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int stride = ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            if (rowPixels == null) {
+                rowPixels = new byte[stride];
+            }
+            int packedRow = -1;
+            for (int py = y0; py < y0 + rows; py++) {
+                int row = py / scale;
+                if ((gridLines && py % scale == 0) || row >= area.height) {
+                    continue; // grid line: left as zeros
+                }
+                if (row != packedRow) {
+                    packRow(row);
+                    packedRow = row;
+                }
+                System.arraycopy(rowPixels, 0, data, (py - y0) * stride, stride);
+            }
+            return raster.createTranslatedChild(0, y0);
+        }
+
+        /** Packs one pixel row of square row {@code row}, four pixels per byte, leftmost in the high bits. */
+        private void packRow(int row) {
+            Arrays.fill(rowPixels, (byte) 0);
+            int first = gridLines ? 1 : 0;
+            for (int col = 0; col < area.width; col++) {
+                int index = switch (grid.getCellType(area.x + col, area.y + row)) {
+                    case ROOM -> ROOM;
+                    case CORRIDOR -> CORRIDOR;
+                    default -> EMPTY;
+                };
+                for (int px = col * scale + first; px < (col + 1) * scale; px++) {
+                    rowPixels[px >> 2] |= (byte) (index << (6 - 2 * (px & 3)));
+                }
+            }
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            return strip(tileY);
+        }
+
+        @Override
+        public Raster getData(java.awt.Rectangle rect) {
+            int first = rect.y / stripHeight;
+            int last = (rect.y + rect.height - 1) / stripHeight;
+            if (first == last && rect.x == 0 && rect.width == width) {
+                // The writer's usual request: rows of one strip, shared rather than copied
+                return strip(first).createChild(0, rect.y, width, rect.height, 0, rect.y, null);
+            }
+            WritableRaster out = Raster.createWritableRaster(
+                    PALETTE.createCompatibleSampleModel(rect.width, rect.height), rect.getLocation());
+            for (int s = first; s <= last; s++) {
+                Raster strip = strip(s);
+                java.awt.Rectangle overlap = strip.getBounds().intersection(rect);
+                out.setRect(strip.createChild(overlap.x, overlap.y, overlap.width, overlap.height,
+                        overlap.x, overlap.y, null));
+            }
+            return out;
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new java.awt.Rectangle(0, 0, width, height));
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            if (raster == null) {
+                raster = Raster.createWritableRaster(PALETTE.createCompatibleSampleModel(width, height), null);
+            }
+            raster.setRect(getData(raster.getBounds()));
+            return raster;
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return PALETTE;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return sampleModel;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return (height + stripHeight - 1) / stripHeight;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return width;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return stripHeight;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+    }
+}
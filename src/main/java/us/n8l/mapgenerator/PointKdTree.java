@@ -0,0 +1,85 @@
+package us.n8l.mapgenerator;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * A static 2D k-d tree over grid points, answering nearest-neighbour queries
+ * under the Manhattan metric (the metric our 4-way corridor routing uses).
+ * The tree is stored implicitly: the median of each index range is the node,
+ * the left half its lower subtree and the right half its upper subtree.
+ */
+final class PointKdTree {
+
+    private static final Comparator<Point> BY_X = Comparator.comparingInt(p -> p.x);
+    private static final Comparator<Point> BY_Y = Comparator.comparingInt(p -> p.y);
+
+    private final Point[] points;
+
+    // Scratch for the current query
+    private Point best;
+    private int bestDist;
+
+    PointKdTree(Collection<Point> pts) {
+        this.points = pts.toArray(new Point[0]);
+        build(0, points.length, 0);
+    }
+
+    boolean isEmpty() {
+        return points.length == 0;
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        Arrays.sort(points, lo, hi, (depth & 1) == 0 ? BY_X : BY_Y);
+        int mid = (lo + hi) >>> 1;
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Returns the point closest to (x, y), or null if the tree is empty.
+     */
+    Point nearest(int x, int y) {
+        best = null;
+        bestDist = Integer.MAX_VALUE;
+        search(0, points.length, 0, x, y);
+        return best;
+    }
+
+    /**
+     * Manhattan distance from (x, y) to the result of the last {@link #nearest} call.
+     */
+    int lastDistance() {
+        return bestDist;
+    }
+
+    private void search(int lo, int hi, int depth, int x, int y) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        Point node = points[mid];
+        int dist = Math.abs(node.x - x) + Math.abs(node.y - y);
+        if (dist < bestDist) {
+            bestDist = dist;
+            best = node;
+        }
+        int axisDelta = (depth & 1) == 0 ? x - node.x : y - node.y;
+        if (axisDelta < 0) {
+            search(lo, mid, depth + 1, x, y);
+            if (-axisDelta < bestDist) {
+                search(mid + 1, hi, depth + 1, x, y);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1, x, y);
+            if (axisDelta < bestDist) {
+                search(lo, mid, depth + 1, x, y);
+            }
+        }
+    }
+}
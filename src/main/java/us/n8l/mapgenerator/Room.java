@@ -15,6 +15,23 @@ public class Room {
         this.dimensions = dimensions;
     }
 
+    /**
+     * A room with an explicit id, e.g. when renumbering a merged dungeon. The id should come
+     * from {@link #reserveIds} so it can't collide with generated rooms.
+     */
+    Room(int id, RoomShape shape, String dimensions) {
+        this.id = id;
+        this.shape = shape;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Reserves {@code count} consecutive ids and returns the first.
+     */
+    static int reserveIds(int count) {
+        return ID_GENERATOR.getAndAdd(count);
+    }
+
     public int getId() {
         return id;
     }
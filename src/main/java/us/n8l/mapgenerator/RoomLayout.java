@@ -0,0 +1,118 @@
+package us.n8l.mapgenerator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A placement of rooms as axis-aligned rectangles, stored as parallel int arrays
+ * (index i = i-th room) so optimizers can move rooms around without allocating.
+ */
+public class RoomLayout {
+    private final int[] roomIds;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] widths;
+    private final int[] heights;
+
+    public RoomLayout(int size) {
+        this.roomIds = new int[size];
+        this.xs = new int[size];
+        this.ys = new int[size];
+        this.widths = new int[size];
+        this.heights = new int[size];
+    }
+
+    private RoomLayout(RoomLayout other) {
+        this.roomIds = other.roomIds.clone();
+        this.xs = other.xs.clone();
+        this.ys = other.ys.clone();
+        this.widths = other.widths.clone();
+        this.heights = other.heights.clone();
+    }
+
+    public void set(int index, int roomId, int x, int y, int width, int height) {
+        roomIds[index] = roomId;
+        xs[index] = x;
+        ys[index] = y;
+        widths[index] = width;
+        heights[index] = height;
+    }
+
+    public int size() {
+        return roomIds.length;
+    }
+
+    public int getRoomId(int index) {
+        return roomIds[index];
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public int getWidth(int index) {
+        return widths[index];
+    }
+
+    public int getHeight(int index) {
+        return heights[index];
+    }
+
+    public Rectangle getRect(int index) {
+        return new Rectangle(xs[index], ys[index], widths[index], heights[index]);
+    }
+
+    /**
+     * Bounding rectangle of all rooms, or an empty rectangle if there are none.
+     */
+    public Rectangle getBounds() {
+        if (size() == 0) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < size(); i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i] + widths[i]);
+            maxY = Math.max(maxY, ys[i] + heights[i]);
+        }
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Whether any two rooms share a square. Sweeps the rooms in x order, so a spread-out
+     * layout costs O(n log n).
+     */
+    public boolean hasOverlap() {
+        Integer[] order = new Integer[size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> xs[i]));
+        for (int a = 0; a < order.length; a++) {
+            int i = order[a];
+            for (int b = a + 1; b < order.length && xs[order[b]] < xs[i] + widths[i]; b++) {
+                int k = order[b];
+                if (widths[k] > 0 && heights[i] > 0 && heights[k] > 0
+                        && ys[k] < ys[i] + heights[i] && ys[i] < ys[k] + heights[k]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public RoomLayout copy() {
+        return new RoomLayout(this);
+    }
+
+    @Override
+    public String toString() {
+        return "RoomLayout[ids=" + Arrays.toString(roomIds) + ", bounds=" + getBounds() + "]";
+    }
+}
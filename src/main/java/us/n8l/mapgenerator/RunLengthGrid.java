@@ -0,0 +1,365 @@
+package us.n8l.mapgenerator;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An immutable, sparse snapshot of a layout: each row is stored as its runs of non-EMPTY squares
+ * with the same type and room id. Fitted maps are mostly rock, so a map costs a few ints per run
+ * (a room row, a corridor stretch) rather than bytes per square of its bounding box.
+ * <p>
+ * Point queries binary-search the row's runs. Walking the runs ({@link #forEachRun}), optionally
+ * clipped to a rectangle, visits only content, so renderers and serializers working from runs
+ * scale with what is on the map rather than with its area. Converts to and from the dense grids
+ * with {@link #of} and {@link #toDense}; {@link #write}/{@link #read} store it as is.
+ */
+public final class RunLengthGrid implements CellGridView {
+
+    private static final GridCell.CellType[] TYPES = GridCell.CellType.values();
+
+    private static final int MAGIC = 0x44524C45; // "DRLE"
+    private static final int VERSION = 1;
+
+    private final int originY;       // row of rowStarts[0]
+    private final int[] rowStarts;   // rows + 1 offsets into the run arrays
+    private final int[] runX;        // first square of each run
+    private final int[] runLength;
+    private final byte[] runType;    // CellType ordinal, never EMPTY
+    private final int[] runRoomId;
+    private final Rectangle bounds;
+
+    private RunLengthGrid(int originY, int[] rowStarts, int[] runX, int[] runLength, byte[] runType, int[] runRoomId) {
+        this.originY = originY;
+        this.rowStarts = rowStarts;
+        this.runX = runX;
+        this.runLength = runLength;
+        this.runType = runType;
+        this.runRoomId = runRoomId;
+        this.bounds = computeBounds();
+    }
+
+    /**
+     * Encodes the used area of any grid. A {@link FittedMap} is walked a bitset word at a time,
+     * so only its non-EMPTY squares are read one by one.
+     */
+    public static RunLengthGrid of(CellGridView source) {
+        if (source instanceof RunLengthGrid runs) {
+            return runs;
+        }
+        if (source instanceof FitResult fit) {
+            source = fit.getMap();
+        }
+        Rectangle used = source.getUsedBounds();
+        Builder builder = new Builder(used.y, used.height);
+        FittedMap.Layer walkable = (source instanceof FittedMap map) ? map.walkable() : null;
+        for (int y = used.y; y < used.y + used.height; y++) {
+            int x = (walkable != null) ? walkable.nextSetX(y, used.x) : used.x;
+            int endX = used.x + used.width;
+            while (x != Integer.MIN_VALUE && x < endX) {
+                GridCell.CellType type = source.getCellType(x, y);
+                if (type == GridCell.CellType.EMPTY) {
+                    x++;
+                    continue;
+                }
+                int id = source.getRoomId(x, y);
+                int end = x + 1;
+                while (end < endX && source.getCellType(end, y) == type && source.getRoomId(end, y) == id) {
+                    end++;
+                }
+                builder.add(x, end - x, type, id);
+                x = (walkable != null) ? walkable.nextSetX(y, end) : end;
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Expands the runs into a {@link DenseCellGrid} covering {@link #getUsedBounds()}.
+     */
+    public DenseCellGrid toDense() {
+        DenseCellGrid grid = new DenseCellGrid(bounds);
+        forEachRun((y, x, length, type, roomId) -> {
+            for (int i = 0; i < length; i++) {
+                grid.setCell(x + i, y, type, roomId);
+            }
+        });
+        return grid;
+    }
+
+    /**
+     * A copy with every non-zero room id rewritten. Neighbouring runs that end up with the same
+     * id stay separate, which only costs a run.
+     */
+    RunLengthGrid mapRoomIds(IntUnaryOperator mapping) {
+        int[] ids = runRoomId.clone();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != 0) {
+                ids[i] = mapping.applyAsInt(ids[i]);
+            }
+        }
+        return new RunLengthGrid(originY, rowStarts, runX, runLength, runType, ids);
+    }
+
+    public int runCount() {
+        return runX.length;
+    }
+
+    /**
+     * Heap bytes held by the run arrays and row index.
+     */
+    public long sizeInBytes() {
+        return (long) rowStarts.length * Integer.BYTES + (long) runX.length * (3 * Integer.BYTES + 1);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ RUNS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @FunctionalInterface
+    public interface RunVisitor {
+        /**
+         * One run: {@code length} squares of {@code type} from (x, y) eastwards.
+         */
+        void visit(int y, int x, int length, GridCell.CellType type, int roomId);
+    }
+
+    /**
+     * Visits every run, row by row and west to east within a row.
+     */
+    public void forEachRun(RunVisitor visitor) {
+        for (int r = 0; r + 1 < rowStarts.length; r++) {
+            for (int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+                visitor.visit(originY + r, runX[i], runLength[i], TYPES[runType[i]], runRoomId[i]);
+            }
+        }
+    }
+
+    /**
+     * Visits the runs overlapping {@code area}, clipped to it, in the same order. Rows outside
+     * the area are skipped outright and each row starts at a binary-searched run.
+     */
+    public void forEachRun(Rectangle area, RunVisitor visitor) {
+        int firstRow = Math.max(0, area.y - originY);
+        int lastRow = (int) Math.min(rowStarts.length - 1L, (long) area.y + area.height - originY);
+        long areaEnd = (long) area.x + area.width;
+        for (int r = firstRow; r < lastRow; r++) {
+            int end = rowStarts[r + 1];
+            int i = Math.max(rowStarts[r], runAtOrBefore(r, area.x));
+            for (; i < end && runX[i] < areaEnd; i++) {
+                int x0 = Math.max(runX[i], area.x);
+                long x1 = Math.min((long) runX[i] + runLength[i], areaEnd);
+                if (x1 > x0) {
+                    visitor.visit(originY + r, x0, (int) (x1 - x0), TYPES[runType[i]], runRoomId[i]);
+                }
+            }
+        }
+    }
+
+    /** Index of the last run in row {@code r} starting at or before x, or -1 if none does. */
+    private int runAtOrBefore(int r, int x) {
+        int lo = rowStarts[r];
+        int hi = rowStarts[r + 1] - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (runX[mid] <= x) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /** Index of the run covering (x, y), or -1. */
+    private int runAt(int x, int y) {
+        int r = y - originY;
+        if (r < 0 || r >= rowStarts.length - 1) {
+            return -1;
+        }
+        int i = runAtOrBefore(r, x);
+        return (i >= 0 && x - runX[i] < runLength[i]) ? i : -1;
+    }
+
+    private Rectangle computeBounds() {
+        int minX = Integer.MAX_VALUE;
+        long maxX = Long.MIN_VALUE;
+        int minRow = -1;
+        int maxRow = -1;
+        for (int r = 0; r + 1 < rowStarts.length; r++) {
+            if (rowStarts[r] == rowStarts[r + 1]) {
+                continue;
+            }
+            if (minRow < 0) {
+                minRow = r;
+            }
+            maxRow = r;
+            minX = Math.min(minX, runX[rowStarts[r]]);
+            int last = rowStarts[r + 1] - 1;
+            maxX = Math.max(maxX, (long) runX[last] + runLength[last]);
+        }
+        if (minRow < 0) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        return new Rectangle(minX, originY + minRow, (int) (maxX - minX), maxRow - minRow + 1);
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ CellGridView ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public GridCell.CellType getCellType(int x, int y) {
+        int i = runAt(x, y);
+        return (i < 0) ? GridCell.CellType.EMPTY : TYPES[runType[i]];
+    }
+
+    @Override
+    public int getRoomId(int x, int y) {
+        int i = runAt(x, y);
+        return (i < 0) ? 0 : runRoomId[i];
+    }
+
+    @Override
+    public Rectangle getUsedBounds() {
+        return bounds;
+    }
+
+    @Override
+    public Collection<GridCell> toGridCells() {
+        List<GridCell> result = new ArrayList<>();
+        forEachRun((y, x, length, type, roomId) -> {
+            for (int i = 0; i < length; i++) {
+                GridCell cell = new GridCell(x + i, y);
+                cell.setCellType(type);
+                cell.setRoomId(roomId);
+                result.add(cell);
+            }
+        });
+        return result;
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ SERIALIZATION ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Writes the runs: a header, then per row its run count and per run (x, length, type, room id).
+     * Size follows the number of runs, not the map's area.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(originY);
+        out.writeInt(rowStarts.length - 1);
+        out.writeInt(runX.length);
+        for (int r = 0; r + 1 < rowStarts.length; r++) {
+            out.writeInt(rowStarts[r + 1] - rowStarts[r]);
+            for (int i = rowStarts[r]; i < rowStarts[r + 1]; i++) {
+                out.writeInt(runX[i]);
+                out.writeInt(runLength[i]);
+                out.writeByte(runType[i]);
+                out.writeInt(runRoomId[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a grid written by {@link #write}, leaving {@code in} just past it.
+     *
+     * @throws IllegalArgumentException if the data is not a run-length grid
+     */
+    public static RunLengthGrid read(ByteBuffer in) {
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a run-length grid");
+        }
+        int version = in.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported run-length grid version " + version);
+        }
+        int originY = in.getInt();
+        int rows = in.getInt();
+        int runs = in.getInt();
+        if (rows < 0 || runs < 0) {
+            throw new IllegalArgumentException("Corrupt run-length grid header");
+        }
+        int[] rowStarts = new int[rows + 1];
+        int[] runX = new int[runs];
+        int[] runLength = new int[runs];
+        byte[] runType = new byte[runs];
+        int[] runRoomId = new int[runs];
+        int i = 0;
+        for (int r = 0; r < rows; r++) {
+            int count = in.getInt();
+            if (count < 0 || count > runs - i) {
+                throw new IllegalArgumentException("Corrupt run-length grid row " + r);
+            }
+            for (int end = i + count; i < end; i++) {
+                runX[i] = in.getInt();
+                runLength[i] = in.getInt();
+                runType[i] = in.get();
+                runRoomId[i] = in.getInt();
+                if (runLength[i] <= 0 || runType[i] <= 0 || runType[i] >= TYPES.length) {
+                    throw new IllegalArgumentException("Corrupt run-length grid run " + i);
+                }
+            }
+            rowStarts[r + 1] = i;
+        }
+        if (i != runs) {
+            throw new IllegalArgumentException("Corrupt run-length grid: " + i + " of " + runs + " runs");
+        }
+        return new RunLengthGrid(originY, rowStarts, runX, runLength, runType, runRoomId);
+    }
+
+    @Override
+    public String toString() {
+        return "RunLengthGrid[bounds=" + bounds + ", runs=" + runX.length + "]";
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ BUILDER ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Appends runs row by row, west to east.
+     */
+    private static final class Builder {
+        private final int originY;
+        private final int[] rowStarts;
+        private int row;
+        private int count;
+        private int[] runX = new int[64];
+        private int[] runLength = new int[64];
+        private byte[] runType = new byte[64];
+        private int[] runRoomId = new int[64];
+
+        Builder(int originY, int rows) {
+            this.originY = originY;
+            this.rowStarts = new int[rows + 1];
+        }
+
+        void add(int x, int length, GridCell.CellType type, int roomId) {
+            if (count == runX.length) {
+                int capacity = count * 2;
+                runX = Arrays.copyOf(runX, capacity);
+                runLength = Arrays.copyOf(runLength, capacity);
+                runType = Arrays.copyOf(runType, capacity);
+                runRoomId = Arrays.copyOf(runRoomId, capacity);
+            }
+            runX[count] = x;
+            runLength[count] = length;
+            runType[count] = (byte) type.ordinal();
+            runRoomId[count] = roomId;
+            count++;
+        }
+
+        void endRow() {
+            rowStarts[++row] = count;
+        }
+
+        RunLengthGrid build() {
+            return new RunLengthGrid(originY, rowStarts, Arrays.copyOf(runX, count), Arrays.copyOf(runLength, count),
+                    Arrays.copyOf(runType, count), Arrays.copyOf(runRoomId, count));
+        }
+    }
+}
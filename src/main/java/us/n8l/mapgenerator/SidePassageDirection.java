@@ -0,0 +1,22 @@
+package us.n8l.mapgenerator;
+
+/**
+ * How a side passage leaves the main passage (Table III).
+ */
+public enum SidePassageDirection {
+    LEFT_90, RIGHT_90,
+    LEFT_45, RIGHT_45,
+    LEFT_135, RIGHT_135,
+    LEFT_CURVE_45, RIGHT_CURVE_45,
+    T_INTERSECTION, Y_INTERSECTION, FOUR_WAY, X_INTERSECTION;
+
+    /**
+     * Whether the passage splits into more than one way on.
+     */
+    public boolean isIntersection() {
+        return switch (this) {
+            case T_INTERSECTION, Y_INTERSECTION, FOUR_WAY, X_INTERSECTION -> true;
+            default -> false;
+        };
+    }
+}
@@ -1,26 +1,36 @@
 package us.n8l.mapgenerator;
 
 public enum StairsType {
-    DOWN_1("Down 1 level"),
-    DOWN_2("Down 2 levels"),
-    DOWN_3("Down 3 levels"),
-    UP_1("Up 1 level"),
-    UP_TO_DEAD_END("Up to dead end (possible chute trap)"),
-    DOWN_TO_DEAD_END("Down to dead end (possible chute trap)"),
-    CHIMNEY_UP_1("Chimney up 1 level, passage continues"),
-    CHIMNEY_UP_2("Chimney up 2 levels, passage continues"),
-    CHIMNEY_DOWN_2("Chimney down 2 levels, passage continues"),
-    TRAP_DOOR_DOWN_1("Trap door down 1 level, passage continues"),
-    TRAP_DOOR_DOWN_2("Trap door down 2 levels, passage continues"),
-    UP_1_DOWN_2_CHAMBER("Up 1 level, then down 2 levels, ends in chamber");
+    DOWN_1("Down 1 level", 1),
+    DOWN_2("Down 2 levels", 2),
+    DOWN_3("Down 3 levels", 3),
+    UP_1("Up 1 level", -1),
+    UP_TO_DEAD_END("Up to dead end (possible chute trap)", 0),
+    DOWN_TO_DEAD_END("Down to dead end (possible chute trap)", 0),
+    CHIMNEY_UP_1("Chimney up 1 level, passage continues", -1),
+    CHIMNEY_UP_2("Chimney up 2 levels, passage continues", -2),
+    CHIMNEY_DOWN_2("Chimney down 2 levels, passage continues", 2),
+    TRAP_DOOR_DOWN_1("Trap door down 1 level, passage continues", 1),
+    TRAP_DOOR_DOWN_2("Trap door down 2 levels, passage continues", 2),
+    UP_1_DOWN_2_CHAMBER("Up 1 level, then down 2 levels, ends in chamber", 1);
 
     private final String description;
+    private final int levelChange;
 
-    StairsType(String description) {
+    StairsType(String description, int levelChange) {
         this.description = description;
+        this.levelChange = levelChange;
     }
 
     public String getDescription() {
         return description;
     }
+
+    /**
+     * Net number of levels these stairs lead down (negative for up), or 0 if they
+     * don't lead to another level (dead ends).
+     */
+    public int getLevelChange() {
+        return levelChange;
+    }
 }
@@ -0,0 +1,208 @@
+package us.n8l.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.logging.Logger;
+
+/**
+ * Fits a dungeon while it is still being generated. Subscribe it to
+ * {@link AdvancedDungeonGenerator#generateStream}: each room is placed as soon as it arrives
+ * (next to the previous one) and each corridor is routed as soon as both its rooms are placed,
+ * so generation and fitting overlap on different threads.
+ * <p>
+ * Placement and routing are done by an {@link IncrementalDungeonFitter}. Query the grid only
+ * after {@link #completion()} has completed.
+ */
+public class StreamingDungeonFitter implements DungeonFitter, Flow.Subscriber<DungeonEvent> {
+
+    private static final Logger LOG = Logger.getLogger(StreamingDungeonFitter.class.getName());
+
+    // Events requested from the publisher at a time
+    private static final int REQUEST_BATCH = 32;
+
+    private final boolean reuseCorridorNetwork;
+    private final IncrementalDungeonFitter fitter;
+    private final CompletableFuture<Rectangle> completion = new CompletableFuture<>();
+
+    private Flow.Subscription subscription;
+    private int outstanding;
+
+    private final Set<Room> placed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<Corridor> waiting = new ArrayList<>(); // corridors with an unplaced room
+    private Room lastRoom;
+
+    public StreamingDungeonFitter() {
+        this(false);
+    }
+
+    public StreamingDungeonFitter(boolean reuseCorridorNetwork) {
+        this.reuseCorridorNetwork = reuseCorridorNetwork;
+        this.fitter = new IncrementalDungeonFitter(reuseCorridorNetwork);
+        fitter.fitDungeon(new Dungeon());
+    }
+
+    /**
+     * Subscribes to {@code publisher} and waits until the whole stream has been fitted into this
+     * fitter, returning the used bounds. Unlike {@link #fit(Dungeon)} this fills this instance, and
+     * an instance can take only one stream: use a new fitter for each.
+     */
+    public Rectangle fitStream(Flow.Publisher<DungeonEvent> publisher) {
+        if (subscription != null || completion.isDone()) {
+            throw new IllegalStateException("This fitter has already fitted a stream");
+        }
+        publisher.subscribe(this);
+        return completion.join();
+    }
+
+    /**
+     * Completes with the used bounds once the stream has ended and everything is fitted.
+     */
+    public CompletableFuture<Rectangle> completion() {
+        return completion;
+    }
+
+    /**
+     * The dungeon assembled from the stream.
+     */
+    public Dungeon getDungeon() {
+        return fitter.getDungeon();
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ SUBSCRIBER ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel(); // one stream per fitter
+            return;
+        }
+        this.subscription = subscription;
+        outstanding = REQUEST_BATCH;
+        subscription.request(REQUEST_BATCH);
+    }
+
+    @Override
+    public void onNext(DungeonEvent event) {
+        try {
+            accept(event);
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            completion.completeExceptionally(e);
+            return;
+        }
+        if (--outstanding <= REQUEST_BATCH / 2) {
+            subscription.request(REQUEST_BATCH - outstanding);
+            outstanding = REQUEST_BATCH;
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        finish();
+    }
+
+    private void accept(DungeonEvent event) {
+        if (event instanceof DungeonEvent.RoomAdded added) {
+            Room room = added.room();
+            fitter.addRoom(room, lastRoom);
+            placed.add(room);
+            lastRoom = room;
+            // Route whatever was only waiting for this room
+            for (Iterator<Corridor> it = waiting.iterator(); it.hasNext(); ) {
+                Corridor c = it.next();
+                if (isReady(c)) {
+                    it.remove();
+                    fitter.addCorridor(c);
+                }
+            }
+        } else if (event instanceof DungeonEvent.CorridorAdded added) {
+            Corridor c = added.corridor();
+            if (isReady(c)) {
+                fitter.addCorridor(c);
+            } else {
+                waiting.add(c);
+            }
+        }
+    }
+
+    private boolean isReady(Corridor c) {
+        return (c.getFromRoom() == null || placed.contains(c.getFromRoom()))
+               && (c.getToRoom() == null || placed.contains(c.getToRoom()));
+    }
+
+    private void finish() {
+        if (!waiting.isEmpty()) {
+            LOG.warning(waiting.size() + " corridors refer to rooms that were never published");
+            for (Corridor c : waiting) {
+                fitter.addCorridor(c); // recorded as failed
+            }
+            waiting.clear();
+        }
+        completion.complete(getBounds());
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ DUNGEON FITTER ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Fits a complete dungeon by replaying it into a fresh streaming fitter; this one is untouched.
+     */
+    @Override
+    public FitResult fit(Dungeon dungeon) {
+        StreamingDungeonFitter run = new StreamingDungeonFitter(reuseCorridorNetwork);
+        run.fitDungeon(dungeon);
+        return FitResult.of(run);
+    }
+
+    /**
+     * Fits an already complete dungeon by replaying it as a stream: rooms, then corridors.
+     */
+    @Override
+    public Rectangle fitDungeon(Dungeon dungeon) {
+        for (Room r : dungeon.getRooms()) {
+            accept(new DungeonEvent.RoomAdded(r));
+        }
+        for (Corridor c : dungeon.getCorridors()) {
+            accept(new DungeonEvent.CorridorAdded(c));
+        }
+        finish();
+        return getBounds();
+    }
+
+    @Override
+    public Collection<GridCell> getAllCells() {
+        return fitter.getAllCells();
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return fitter.getGrid().getUsedBounds();
+    }
+
+    @Override
+    public CellGridView getGrid() {
+        return fitter.getGrid();
+    }
+
+    @Override
+    public FitStats getStats() {
+        return fitter.getStats();
+    }
+
+    @Override
+    public Map<Corridor, CorridorPath> getCorridorPaths() {
+        return fitter.getCorridorPaths();
+    }
+}
@@ -0,0 +1,308 @@
+package us.n8l.mapgenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Writes a fitted layout as SVG, one element per feature rather than per square.
+ * <p>
+ * Each room is traced once into a polygon outline (holes and diagonal pinches included) with
+ * collinear edges merged, so a rectangular room is a four-point path however large it is.
+ * Corridors become polylines: horizontal runs of corridor squares, then vertical runs of the
+ * squares no horizontal run covered, stroked one square wide with square caps so they cover
+ * exactly their squares; squares in neither become unit squares. Empty space is a single
+ * background rectangle. Coordinates are map squares, so the drawing lines up with the grid.
+ * <p>
+ * The document is written as it is produced, so file size and render time follow the number
+ * of rooms and corridor runs, not the number of squares.
+ */
+public final class SvgExporter {
+
+    private static final Logger LOG = Logger.getLogger(SvgExporter.class.getName());
+
+    /** Pixels per square in the SVG's nominal size; the viewer's cell size. */
+    public static final int DEFAULT_SCALE = 16;
+
+    // Subpaths per corridor element, to keep individual path strings a manageable size
+    private static final int RUNS_PER_PATH = 1024;
+
+    // Directions, clockwise in screen coordinates (y down)
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+
+    private SvgExporter() {
+    }
+
+    public static void write(CellGridView grid, Path file) throws IOException {
+        write(grid, DEFAULT_SCALE, file);
+    }
+
+    public static void write(CellGridView grid, int scale, Path file) throws IOException {
+        FittedMap map = (grid instanceof FitResult fit) ? fit.getMap()
+                : (grid instanceof FittedMap fitted) ? fitted : FittedMap.of(grid);
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            write(map, scale, out);
+        }
+    }
+
+    /**
+     * Writes the map's used bounds to {@code out}; the writer is flushed but not closed.
+     */
+    public static void write(FittedMap map, int scale, Writer out) throws IOException {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale too small: " + scale);
+        }
+        long start = System.nanoTime();
+        Rectangle b = map.getUsedBounds();
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + (long) b.width * scale
+                  + "\" height=\"" + (long) b.height * scale + "\" viewBox=\"" + b.x + " " + b.y + " "
+                  + b.width + " " + b.height + "\" shape-rendering=\"crispEdges\">\n");
+        out.write("<rect class=\"empty\" x=\"" + b.x + "\" y=\"" + b.y + "\" width=\"" + b.width
+                  + "\" height=\"" + b.height + "\" fill=\"rgb(48,48,48)\"/>\n");
+
+        int corridorRuns = writeCorridors(map, out);
+
+        out.write("<g class=\"rooms\" fill=\"rgb(220,220,220)\" stroke=\"black\" stroke-width=\"0.1\""
+                  + " fill-rule=\"evenodd\">\n");
+        List<Integer> ids = new ArrayList<>(map.getRoomIds());
+        ids.sort(null);
+        StringBuilder d = new StringBuilder();
+        for (int id : ids) {
+            d.setLength(0);
+            traceRoom(map, id, d);
+            out.write("<path id=\"room-" + id + "\" d=\"");
+            out.append(d);
+            out.write("\"/>\n");
+        }
+        out.write("</g>\n</svg>\n");
+        out.flush();
+        LOG.info("Exported " + b.width + "x" + b.height + " map as SVG: " + ids.size() + " rooms, "
+                 + corridorRuns + " corridor runs in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ CORRIDORS ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Writes the corridor runs and returns how many there were.
+     */
+    private static int writeCorridors(FittedMap map, Writer out) throws IOException {
+        FittedMap.Layer corridors = map.layer(GridCell.CellType.CORRIDOR);
+        if (corridors.isEmpty()) {
+            return 0;
+        }
+        Rectangle b = map.getUsedBounds();
+        RunWriter lines = new RunWriter(out, "<path class=\"corridor\" fill=\"none\" stroke=\"rgb(200,200,255)\""
+                                             + " stroke-width=\"1\" stroke-linecap=\"square\" d=\"");
+        List<int[]> singles = new ArrayList<>(); // squares in no horizontal run, row-major
+
+        out.write("<g class=\"corridors\">\n");
+        for (int y = b.y; y < b.y + b.height; y++) {
+            int x = corridors.nextSetX(y, b.x);
+            while (x != Integer.MIN_VALUE) {
+                int end = x + 1;
+                while (corridors.get(end, y)) {
+                    end++;
+                }
+                if (end - x > 1) {
+                    lines.add("M" + half(x) + " " + half(y) + "H" + half(end - 1));
+                } else {
+                    singles.add(new int[]{x, y});
+                }
+                x = corridors.nextSetX(y, end);
+            }
+        }
+
+        // Vertical runs among the leftover squares; a run stays open while the next row continues it
+        Map<Integer, int[]> open = new HashMap<>(); // x -> {top y, bottom y}
+        List<int[]> isolated = new ArrayList<>();
+        for (int[] s : singles) {
+            int[] run = open.get(s[0]);
+            if (run != null && run[1] == s[1] - 1) {
+                run[1] = s[1];
+                continue;
+            }
+            if (run != null) {
+                closeVertical(s[0], run, lines, isolated);
+            }
+            open.put(s[0], new int[]{s[1], s[1]});
+        }
+        List<Integer> xs = new ArrayList<>(open.keySet());
+        xs.sort(null);
+        for (int x : xs) {
+            closeVertical(x, open.get(x), lines, isolated);
+        }
+        lines.finish();
+
+        RunWriter squares = new RunWriter(out, "<path class=\"corridor\" fill=\"rgb(200,200,255)\" d=\"");
+        for (int[] s : isolated) {
+            squares.add("M" + s[0] + " " + s[1] + "h1v1h-1z");
+        }
+        squares.finish();
+        out.write("</g>\n");
+        return lines.total + squares.total;
+    }
+
+    private static void closeVertical(int x, int[] run, RunWriter lines, List<int[]> isolated) throws IOException {
+        if (run[1] > run[0]) {
+            lines.add("M" + half(x) + " " + half(run[0]) + "V" + half(run[1]));
+        } else {
+            isolated.add(new int[]{x, run[0]});
+        }
+    }
+
+    /** The centre of square {@code v} along one axis, e.g. "12.5". */
+    private static String half(int v) {
+        return (v < 0 && v != Integer.MIN_VALUE) ? "-" + (-v - 1) + ".5" : v + ".5";
+    }
+
+    /**
+     * Streams subpaths into path elements of at most {@link #RUNS_PER_PATH} subpaths each.
+     */
+    private static final class RunWriter {
+        private final Writer out;
+        private final String open;
+        private int inPath;
+        int total;
+
+        RunWriter(Writer out, String open) {
+            this.out = out;
+            this.open = open;
+        }
+
+        void add(String subpath) throws IOException {
+            if (inPath == 0) {
+                out.write(open);
+            }
+            out.write(subpath);
+            total++;
+            if (++inPath == RUNS_PER_PATH) {
+                finish();
+            }
+        }
+
+        void finish() throws IOException {
+            if (inPath > 0) {
+                out.write("\"/>\n");
+                inPath = 0;
+            }
+        }
+    }
+
+    // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~ ROOM OUTLINES ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+    /**
+     * Appends the outline of one room as closed subpaths, each loop clockwise with the room on
+     * its right, holes included.
+     * <p>
+     * Every square side facing a non-room square is a directed boundary edge. Edges are stored
+     * per start corner as direction bits, then followed into loops from the top-left-most corner
+     * left, which is always a turn; where two loops touch at a corner the walk turns right first,
+     * so loops never cross. Even-odd filling makes any such split into loops draw the same shape.
+     */
+    private static void traceRoom(FittedMap map, int id, StringBuilder d) {
+        Rectangle box = map.getRoomBounds(id);
+        int w = box.width + 1; // corners per row
+        byte[] out = new byte[w * (box.height + 1)];
+        int edges = 0;
+        for (int y = box.y; y < box.y + box.height; y++) {
+            for (int x = box.x; x < box.x + box.width; x++) {
+                if (!inRoom(map, id, x, y)) {
+                    continue;
+                }
+                int cx = x - box.x;
+                int cy = y - box.y;
+                if (!inRoom(map, id, x, y - 1)) {
+                    out[cy * w + cx] |= 1;                 // top, eastwards
+                    edges++;
+                }
+                if (!inRoom(map, id, x + 1, y)) {
+                    out[cy * w + cx + 1] |= 1 << 1;        // right, southwards
+                    edges++;
+                }
+                if (!inRoom(map, id, x, y + 1)) {
+                    out[(cy + 1) * w + cx + 1] |= 1 << 2;  // bottom, westwards
+                    edges++;
+                }
+                if (!inRoom(map, id, x - 1, y)) {
+                    out[(cy + 1) * w + cx] |= 1 << 3;      // left, northwards
+                    edges++;
+                }
+            }
+        }
+
+        int scan = 0;
+        while (edges > 0) {
+            while (out[scan] == 0) {
+                scan++;
+            }
+            int corner = scan;
+            int dir = Integer.numberOfTrailingZeros(out[corner]);
+            int cx = corner % w;
+            int cy = corner / w;
+            d.append('M').append(box.x + cx).append(' ').append(box.y + cy);
+            int startCorner = corner;
+            int prevDir = -1;
+            while (true) {
+                out[corner] &= (byte) ~(1 << dir);
+                edges--;
+                if (dir != prevDir && prevDir >= 0) {
+                    // A turn: the previous straight stretch ends at this corner
+                    appendVertex(d, box, cx, cy, prevDir);
+                }
+                prevDir = dir;
+                cx += DX[dir];
+                cy += DY[dir];
+                corner = cy * w + cx;
+                if (corner == startCorner) {
+                    break; // Z draws the last stretch
+                }
+                dir = nextDirection(out[corner], dir);
+            }
+            d.append('Z');
+        }
+    }
+
+    /**
+     * Right turn first, then straight on, then left. Every corner has as many edges in as out,
+     * so a walk can only run out of edges where it started.
+     */
+    private static int nextDirection(byte outs, int dir) {
+        for (int turn : new int[]{turnRight(dir), dir, turnLeft(dir)}) {
+            if ((outs & (1 << turn)) != 0) {
+                return turn;
+            }
+        }
+        return -1;
+    }
+
+    private static int turnRight(int dir) {
+        return (dir + 1) & 3;
+    }
+
+    private static int turnLeft(int dir) {
+        return (dir + 3) & 3;
+    }
+
+    /** Axis-aligned segment to the corner, as H or V since only one coordinate changes. */
+    private static void appendVertex(StringBuilder d, Rectangle box, int cx, int cy, int dir) {
+        if (DX[dir] != 0) {
+            d.append('H').append(box.x + cx);
+        } else {
+            d.append('V').append(box.y + cy);
+        }
+    }
+
+    private static boolean inRoom(FittedMap map, int id, int x, int y) {
+        return map.getCellType(x, y) == GridCell.CellType.ROOM && map.getRoomId(x, y) == id;
+    }
+}
@@ -0,0 +1,54 @@
+package us.n8l.mapgenerator;
+
+/**
+ * Incrementally maintained bounding box of the non-EMPTY squares of a grid.
+ * Writes that only add content extend the box in O(1); clearing a square on the
+ * edge of the box marks it stale, and the owning grid rescans on the next query.
+ */
+final class UsedBounds {
+    private int minX, minY, maxX, maxY;
+    private boolean stale;
+
+    UsedBounds() {
+        reset();
+    }
+
+    void reset() {
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        maxY = Integer.MIN_VALUE;
+        stale = false;
+    }
+
+    void include(int x, int y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+
+    void onWrite(int x, int y, GridCell.CellType oldType, GridCell.CellType newType) {
+        if (newType != GridCell.CellType.EMPTY) {
+            include(x, y);
+        } else if (oldType != GridCell.CellType.EMPTY
+                   && (x == minX || x == maxX || y == minY || y == maxY)) {
+            stale = true;
+        }
+    }
+
+    void markStale() {
+        stale = true;
+    }
+
+    boolean isStale() {
+        return stale;
+    }
+
+    Rectangle toRectangle() {
+        if (minX > maxX || minY > maxY) {
+            return new Rectangle(0, 0, 0, 0);
+        }
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+}
@@ -0,0 +1,154 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryMapFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fittedDungeonRoundTripsCompressedAndRaw() throws IOException {
+        Dungeon dungeon = TestMaps.dungeon(11, 40);
+        FitResult fit = new DungeonGridFitter(false).fit(dungeon);
+        for (boolean compress : new boolean[]{false, true}) {
+            Path file = dir.resolve("map-" + compress + ".dmap");
+            BinaryMapFile.write(file, fit, dungeon.getRooms(), compress);
+            try (BinaryMapFile map = BinaryMapFile.open(file)) {
+                assertEquals(compress, map.isCompressed());
+                TestMaps.assertSameCells(fit, map);
+                assertEquals(fit.toGridCells().size(), map.toGridCells().size());
+                List<RoomDto> rooms = map.getRooms();
+                assertEquals(dungeon.getRooms().size(), rooms.size());
+                for (int i = 0; i < rooms.size(); i++) {
+                    Room room = dungeon.getRooms().get(i);
+                    assertEquals(room.getId(), rooms.get(i).id);
+                    assertEquals(room.getShape().name(), rooms.get(i).shape);
+                    assertEquals(room.getDimensions(), rooms.get(i).dimensions);
+                }
+            }
+        }
+    }
+
+    @Test
+    void irregularLayoutRoundTripsAtAwkwardTileSizes() throws IOException {
+        HashCellGrid grid = TestMaps.irregular(3);
+        for (int tileSize : new int[]{7, 64, 1000}) {
+            for (boolean compress : new boolean[]{false, true}) {
+                Path file = dir.resolve("irregular-" + tileSize + "-" + compress + ".dmap");
+                try (var out = Files.newOutputStream(file)) {
+                    long written = BinaryMapFile.write(out, grid, List.of(), compress, tileSize);
+                    assertEquals(Files.size(file), written);
+                }
+                try (BinaryMapFile map = BinaryMapFile.open(file)) {
+                    TestMaps.assertSameCells(grid, map);
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptyGridRoundTrips() throws IOException {
+        Path file = dir.resolve("empty.dmap");
+        BinaryMapFile.write(file, new HashCellGrid(), List.of(), true);
+        try (BinaryMapFile map = BinaryMapFile.open(file)) {
+            assertEquals(0, map.getUsedBounds().width);
+            assertTrue(map.toGridCells().isEmpty());
+            assertEquals(GridCell.CellType.EMPTY, map.getCellType(0, 0));
+        }
+    }
+
+    @Test
+    void shortOrOverlongTilesAreCorrupt() throws IOException {
+        HashCellGrid grid = TestMaps.irregular(4);
+        Rectangle b = grid.getUsedBounds();
+        for (boolean compress : new boolean[]{false, true}) {
+            for (int delta : new int[]{-1, -7, 1}) {
+                Path file = dir.resolve("corrupt-" + compress + delta + ".dmap");
+                try (var out = Files.newOutputStream(file)) {
+                    BinaryMapFile.write(out, grid, List.of(), compress, 64);
+                }
+                // Change the stored length of tile 0 in the index; for a longer length the
+                // tile runs into the next one's bytes
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES);
+                    ch.read(trailer, ch.size() - Long.BYTES - 2 * Integer.BYTES);
+                    long lengthAt = trailer.getLong(0) + Long.BYTES;
+                    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                    ch.read(length, lengthAt);
+                    ch.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, length.getInt(0) + delta), lengthAt);
+                }
+                try (BinaryMapFile map = BinaryMapFile.open(file)) {
+                    IllegalStateException e = assertThrows(IllegalStateException.class,
+                            () -> map.getCellType(b.x, b.y), "compress " + compress + ", delta " + delta);
+                    assertTrue(e.getMessage().startsWith("Corrupt tile 0"));
+                    // Other tiles still read
+                    assertEquals(grid.getCellType(b.x + b.width - 1, b.y + b.height - 1),
+                            map.getCellType(b.x + b.width - 1, b.y + b.height - 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    void tileAccessIsSafeAcrossThreads() throws Exception {
+        HashCellGrid grid = TestMaps.irregular(5);
+        Path file = dir.resolve("threads.dmap");
+        try (var out = Files.newOutputStream(file)) {
+            BinaryMapFile.write(out, grid, List.of(), true, 16);
+        }
+        try (BinaryMapFile map = BinaryMapFile.open(file)) {
+            Rectangle b = grid.getUsedBounds();
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                Thread thread = new Thread(() -> {
+                    try {
+                        // Each thread scans the map from a different row, so they keep replacing
+                        // each other's last tile
+                        for (int row = 0; row < b.height; row++) {
+                            int y = b.y + (row + offset * b.height / 4) % b.height;
+                            for (int x = b.x; x < b.x + b.width; x++) {
+                                assertEquals(grid.getCellType(x, y), map.getCellType(x, y));
+                                assertEquals(grid.getRoomId(x, y), map.getRoomId(x, y));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(List.of(), failures);
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotMaps() throws IOException {
+        Path file = dir.resolve("junk.dmap");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> BinaryMapFile.open(file));
+        Files.write(file, new byte[3]);
+        assertThrows(IOException.class, () -> BinaryMapFile.open(file));
+    }
+}
@@ -0,0 +1,164 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorridorPathTest {
+
+    @Test
+    void randomWalksRoundTrip() throws IOException {
+        Random rng = new Random(47);
+        for (int walk = 0; walk < 200; walk++) {
+            List<Point> points = randomWalk(rng, 1 + rng.nextInt(120));
+            CorridorPath path = CorridorPath.of(points);
+            assertEquals(points, path.toPoints());
+            assertEquals(points.size(), path.length());
+            assertEquals(points.get(0).x, path.getStartX());
+            assertEquals(points.get(0).y, path.getStartY());
+            assertEquals(points.get(points.size() - 1).x, path.getEndX());
+            assertEquals(points.get(points.size() - 1).y, path.getEndY());
+            assertEquals(turns(points), path.bends());
+            assertEquals(path, roundTrip(path));
+            assertEquals(points, roundTrip(path).toPoints());
+        }
+    }
+
+    @Test
+    void emptyPathRoundTrips() throws IOException {
+        assertSame(CorridorPath.EMPTY, CorridorPath.of(List.of()));
+        assertTrue(CorridorPath.EMPTY.isEmpty());
+        assertEquals(0, CorridorPath.EMPTY.length());
+        assertTrue(CorridorPath.EMPTY.toPoints().isEmpty());
+        assertFalse(CorridorPath.EMPTY.contains(0, 0));
+        assertFalse(CorridorPath.EMPTY.intersects(new Rectangle(-5, -5, 10, 10)));
+        assertSame(CorridorPath.EMPTY, roundTrip(CorridorPath.EMPTY));
+    }
+
+    @Test
+    void straightCorridorIsOneRun() {
+        List<Point> points = new ArrayList<>();
+        for (int x = 0; x < 500; x++) {
+            points.add(new Point(x, -3));
+        }
+        CorridorPath path = CorridorPath.of(points);
+        assertEquals(1, path.runCount());
+        assertEquals(0, path.bends());
+        assertEquals(499, path.runLength(0)); // not counting the start square
+        assertEquals(1, path.runDx(0));
+        assertEquals(0, path.runDy(0));
+    }
+
+    @Test
+    void containsAndIntersectsMatchTheSquares() {
+        Random rng = new Random(48);
+        for (int walk = 0; walk < 50; walk++) {
+            List<Point> points = randomWalk(rng, 1 + rng.nextInt(60));
+            Set<Point> squares = new HashSet<>(points);
+            CorridorPath path = CorridorPath.of(points);
+            for (int y = -80; y <= 80; y++) {
+                for (int x = -80; x <= 80; x++) {
+                    assertEquals(squares.contains(new Point(x, y)), path.contains(x, y), x + "," + y);
+                }
+            }
+            for (int i = 0; i < 100; i++) {
+                Rectangle rect = new Rectangle(rng.nextInt(60) - 30, rng.nextInt(60) - 30,
+                        rng.nextInt(12), rng.nextInt(12));
+                boolean expected = squares.stream().anyMatch(p -> p.x >= rect.x && p.x < rect.x + rect.width
+                                                                  && p.y >= rect.y && p.y < rect.y + rect.height);
+                assertEquals(expected, path.intersects(rect), rect.toString());
+            }
+        }
+    }
+
+    @Test
+    void rejectsPathsThatAreNot4Connected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CorridorPath.of(List.of(new Point(0, 0), new Point(1, 1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> CorridorPath.of(List.of(new Point(0, 0), new Point(2, 0))));
+        assertThrows(IllegalArgumentException.class,
+                () -> CorridorPath.of(List.of(new Point(0, 0), new Point(0, 0))));
+    }
+
+    @Test
+    void equalityFollowsTheSquares() {
+        CorridorPath a = CorridorPath.of(List.of(new Point(0, 0), new Point(1, 0), new Point(1, 1)));
+        CorridorPath b = CorridorPath.of(List.of(new Point(0, 0), new Point(1, 0), new Point(1, 1)));
+        CorridorPath c = CorridorPath.of(List.of(new Point(0, 0), new Point(0, 1), new Point(1, 1)));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+    }
+
+    @Test
+    void fittedRoutesLieOnTheGrid() {
+        Dungeon dungeon = TestMaps.dungeon(47, 40);
+        FitResult fit = new DungeonGridFitter(false).fit(dungeon);
+        assertFalse(fit.getCorridorPaths().isEmpty());
+        for (CorridorPath path : fit.getCorridorPaths().values()) {
+            path.forEachSquare((x, y) -> assertNotEquals(GridCell.CellType.EMPTY, fit.getCellType(x, y),
+                    path + " at " + x + "," + y));
+        }
+    }
+
+    private static CorridorPath roundTrip(CorridorPath path) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            path.write(out);
+            out.writeInt(0x5EA1ED); // trailing data must be left alone
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        CorridorPath read = CorridorPath.read(in);
+        assertEquals(0x5EA1ED, in.getInt());
+        return read;
+    }
+
+    /** A walk of {@code squares} squares that turns, doubles back and crosses itself. */
+    private static List<Point> randomWalk(Random rng, int squares) {
+        List<Point> points = new ArrayList<>();
+        int x = rng.nextInt(20) - 10;
+        int y = rng.nextInt(20) - 10;
+        int dir = rng.nextInt(4);
+        points.add(new Point(x, y));
+        while (points.size() < squares) {
+            if (rng.nextInt(4) == 0) {
+                dir = rng.nextInt(4);
+            }
+            x += (dir == 0) ? 1 : (dir == 2) ? -1 : 0;
+            y += (dir == 1) ? 1 : (dir == 3) ? -1 : 0;
+            points.add(new Point(x, y));
+        }
+        return points;
+    }
+
+    /** Number of direction changes along the squares. */
+    private static int turns(List<Point> points) {
+        int turns = 0;
+        for (int i = 2; i < points.size(); i++) {
+            Point a = points.get(i - 2);
+            Point b = points.get(i - 1);
+            Point c = points.get(i);
+            if (b.x - a.x != c.x - b.x || b.y - a.y != c.y - b.y) {
+                turns++;
+            }
+        }
+        return turns;
+    }
+}
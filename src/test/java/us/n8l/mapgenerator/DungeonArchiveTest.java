@@ -0,0 +1,189 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DungeonArchiveTest {
+
+    private static final String CONFIG = "rooms=40";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writtenMapsReadBack() throws IOException {
+        Path file = dir.resolve("maps.darc");
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            for (long seed = 0; seed < 5; seed++) {
+                out.append(seed, CONFIG, TestMaps.irregular(seed), List.of());
+            }
+        }
+        try (DungeonArchive archive = DungeonArchive.open(file)) {
+            assertEquals(5, archive.size());
+            assertEquals(1, archive.batchCount());
+            for (long seed = 0; seed < 5; seed++) {
+                assertStored(archive, seed, CONFIG, TestMaps.irregular(seed));
+            }
+        }
+    }
+
+    @Test
+    void fittedDungeonReadsBackWithRooms() throws IOException {
+        Path file = dir.resolve("fitted.darc");
+        Dungeon dungeon = TestMaps.dungeon(5, 30);
+        FitResult fit = new DungeonGridFitter(false).fit(dungeon);
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(5, CONFIG, fit, dungeon.getRooms());
+        }
+        try (DungeonArchive archive = DungeonArchive.open(file);
+             BinaryMapFile map = archive.get(5, CONFIG)) {
+            assertNotNull(map);
+            TestMaps.assertSameCells(fit, map);
+            assertEquals(dungeon.getRooms().size(), map.getRooms().size());
+        }
+    }
+
+    @Test
+    void appendsAcrossBatchesAndAppenders() throws IOException {
+        Path file = dir.resolve("batches.darc");
+        // A one-byte batch size writes every map as its own batch
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, 1)) {
+            out.append(1, CONFIG, TestMaps.irregular(1), List.of());
+            out.append(2, CONFIG, TestMaps.irregular(2), List.of());
+        }
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(3, CONFIG, TestMaps.irregular(3), List.of());
+            out.append(1, "rooms=80", TestMaps.irregular(4), List.of());
+            out.flush();
+            out.append(0, CONFIG, TestMaps.irregular(5), List.of());
+        }
+        try (DungeonArchive archive = DungeonArchive.open(file)) {
+            assertEquals(5, archive.size());
+            assertEquals(4, archive.batchCount());
+            assertStored(archive, 1, CONFIG, TestMaps.irregular(1));
+            assertStored(archive, 2, CONFIG, TestMaps.irregular(2));
+            assertStored(archive, 3, CONFIG, TestMaps.irregular(3));
+            assertStored(archive, 1, "rooms=80", TestMaps.irregular(4));
+            assertStored(archive, 0, CONFIG, TestMaps.irregular(5));
+        }
+    }
+
+    @Test
+    void laterAppendReplacesKey() throws IOException {
+        Path file = dir.resolve("replace.darc");
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(9, CONFIG, TestMaps.irregular(1), List.of());
+            out.append(9, CONFIG, TestMaps.irregular(2), List.of());
+            out.flush();
+            out.append(8, CONFIG, TestMaps.irregular(3), List.of());
+        }
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(8, CONFIG, TestMaps.irregular(4), List.of());
+        }
+        try (DungeonArchive archive = DungeonArchive.open(file)) {
+            assertEquals(2, archive.size());
+            assertStored(archive, 9, CONFIG, TestMaps.irregular(2));
+            assertStored(archive, 8, CONFIG, TestMaps.irregular(4));
+        }
+    }
+
+    @Test
+    void missingKeysAndOtherConfigsMiss() throws IOException {
+        Path file = dir.resolve("miss.darc");
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(1, CONFIG, TestMaps.irregular(1), List.of());
+        }
+        try (DungeonArchive archive = DungeonArchive.open(file)) {
+            assertTrue(archive.contains(1, CONFIG));
+            assertFalse(archive.contains(2, CONFIG));
+            assertFalse(archive.contains(1, CONFIG + " "));
+            assertNull(archive.get(1, "rooms=41"));
+            assertNull(archive.get(0, CONFIG));
+        }
+    }
+
+    @Test
+    void emptyArchiveOpens() throws IOException {
+        Path file = dir.resolve("empty.darc");
+        DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES).close();
+        try (DungeonArchive archive = DungeonArchive.open(file)) {
+            assertEquals(0, archive.size());
+            assertNull(archive.get(0, CONFIG));
+        }
+    }
+
+    @Test
+    void tornTailKeepsEarlierBatches() throws IOException {
+        Path file = dir.resolve("torn.darc");
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(1, CONFIG, TestMaps.irregular(1), List.of());
+            out.append(2, CONFIG, TestMaps.irregular(2), List.of());
+        }
+        long firstBatchEnd = Files.size(file);
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(3, CONFIG, TestMaps.irregular(3), List.of());
+        }
+        byte[] whole = Files.readAllBytes(file);
+
+        // Cut the second batch short at a spread of points, including inside its footer
+        for (long cut : new long[]{firstBatchEnd + 1, (firstBatchEnd + whole.length) / 2, whole.length - 5, whole.length - 1}) {
+            Files.write(file, whole);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(cut);
+            }
+            try (DungeonArchive archive = DungeonArchive.open(file)) {
+                assertEquals(2, archive.size(), "cut at " + cut);
+                assertStored(archive, 2, CONFIG, TestMaps.irregular(2));
+                assertNull(archive.get(3, CONFIG));
+            }
+
+            // The next appender drops the torn tail and carries on after the first batch
+            try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+                assertEquals(firstBatchEnd, Files.size(file));
+                out.append(4, CONFIG, TestMaps.irregular(4), List.of());
+            }
+            try (DungeonArchive archive = DungeonArchive.open(file)) {
+                assertEquals(3, archive.size());
+                assertStored(archive, 1, CONFIG, TestMaps.irregular(1));
+                assertStored(archive, 4, CONFIG, TestMaps.irregular(4));
+            }
+        }
+    }
+
+    @Test
+    void garbageTailIsIgnored() throws IOException {
+        Path file = dir.resolve("garbage.darc");
+        try (DungeonArchive.Appender out = DungeonArchive.openForAppend(file, DungeonArchive.Appender.DEFAULT_BATCH_BYTES)) {
+            out.append(1, CONFIG, TestMaps.irregular(1), List.of());
+        }
+        byte[] junk = new byte[3000];
+        new Random(7).nextBytes(junk);
+        Files.write(file, junk, StandardOpenOption.APPEND);
+        try (DungeonArchive archive = DungeonArchive.open(file)) {
+            assertEquals(1, archive.size());
+            assertStored(archive, 1, CONFIG, TestMaps.irregular(1));
+        }
+    }
+
+    private static void assertStored(DungeonArchive archive, long seed, String config, CellGridView expected)
+            throws IOException {
+        try (BinaryMapFile map = archive.get(seed, config)) {
+            assertNotNull(map, "seed " + seed + " " + config);
+            TestMaps.assertSameCells(expected, map);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Point;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DungeonGridFitterTest {
+
+    private static final int[][] DELTAS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+    /**
+     * Replays each fitted corridor in routing order on a grid holding only the rooms and the
+     * corridors routed before it, and checks the array-based search found the same path as the
+     * plain queue-and-map breadth-first search it replaced.
+     */
+    @Test
+    void searchMatchesThePlainBreadthFirstSearch() {
+        int compared = 0;
+        int longest = 0;
+        for (long seed = 1; seed <= 20; seed++) {
+            FitResult fit = new DungeonGridFitter(false).fit(TestMaps.dungeon(seed, 60));
+
+            HashCellGrid grid = new HashCellGrid();
+            for (GridCell cell : fit.toGridCells()) {
+                if (cell.getCellType() == GridCell.CellType.ROOM) {
+                    grid.setCell(cell.getCoordinate().x, cell.getCoordinate().y, GridCell.CellType.ROOM, cell.getRoomId());
+                }
+            }
+
+            for (CorridorPath path : fit.getCorridorPaths().values()) {
+                if (path.length() < 2) {
+                    continue;
+                }
+                List<Point> expected = referenceBfs(grid,
+                        new Point(path.getStartX(), path.getStartY()), new Point(path.getEndX(), path.getEndY()));
+                assertEquals(expected, path.toPoints(), "seed " + seed + ", " + path);
+                compared++;
+                longest = Math.max(longest, path.length());
+                path.forEachSquare((x, y) -> {
+                    if (grid.getCellType(x, y) == GridCell.CellType.EMPTY) {
+                        grid.setCell(x, y, GridCell.CellType.CORRIDOR, 0);
+                    }
+                });
+            }
+        }
+        assertTrue(compared >= 200 && longest >= 60, "compared " + compared + " routes, longest " + longest);
+    }
+
+    @Test
+    void fitBuildsEachRunsGridFromTheFactory() {
+        Dungeon dungeon = TestMaps.dungeon(3, 40);
+
+        // An extent just around the rooms, so corridors that would swing wide must stay inside
+        Rectangle rooms = roomBounds(new DungeonGridFitter(false).fit(dungeon));
+        Rectangle extent = new Rectangle(rooms.x - 1, rooms.y - 1, rooms.width + 2, rooms.height + 2);
+        int[] grids = {0};
+        DungeonGridFitter fitter = new DungeonGridFitter(false, null, () -> {
+            grids[0]++;
+            return new DenseCellGrid(extent);
+        });
+        FitResult fit = fitter.fit(dungeon);
+        assertEquals(2, grids[0]);
+
+        Rectangle used = fit.getUsedBounds();
+        assertTrue(used.x >= extent.x && used.y >= extent.y && used.x + used.width <= extent.x + extent.width
+                   && used.y + used.height <= extent.y + extent.height, used + " outside " + extent);
+        fitter.fitDungeon(dungeon);
+        TestMaps.assertSameCells(fit, fitter.getGrid());
+    }
+
+    @Test
+    void astarFitBuildsEachRunsGridFromTheFactory() {
+        Dungeon dungeon = TestMaps.dungeon(4, 20);
+        int[] grids = {0};
+        AStarDungeonGridFitter fitter = new AStarDungeonGridFitter(4, () -> {
+            grids[0]++;
+            return new HashCellGrid();
+        });
+        FitResult fit = fitter.fit(dungeon);
+        assertEquals(2, grids[0]);
+        fitter.fitDungeon(dungeon);
+        TestMaps.assertSameCells(fit, fitter.getGrid());
+    }
+
+    private static Rectangle roomBounds(CellGridView grid) {
+        HashCellGrid rooms = new HashCellGrid();
+        for (GridCell cell : grid.toGridCells()) {
+            if (cell.getCellType() == GridCell.CellType.ROOM) {
+                rooms.setCell(cell.getCoordinate().x, cell.getCoordinate().y, GridCell.CellType.ROOM, cell.getRoomId());
+            }
+        }
+        return rooms.getUsedBounds();
+    }
+
+    /**
+     * The search as it was before it moved to packed arrays: a queue of Points, a map of
+     * parents, neighbours east, west, south, north, through empty or corridor squares and into
+     * a room square only at the goal. Gives up after {@code 1 << 22} squares.
+     */
+    private static List<Point> referenceBfs(CellGridView grid, Point start, Point goal) {
+        Queue<Point> queue = new ArrayDeque<>();
+        Map<Point, Point> cameFrom = new HashMap<>();
+        queue.add(start);
+        cameFrom.put(start, null);
+        while (!queue.isEmpty() && cameFrom.size() < (1 << 22)) {
+            Point current = queue.remove();
+            if (current.equals(goal)) {
+                List<Point> path = new ArrayList<>();
+                for (Point p = goal; p != null; p = cameFrom.get(p)) {
+                    path.add(p);
+                }
+                Collections.reverse(path);
+                return path;
+            }
+            for (int[] d : DELTAS) {
+                Point next = new Point(current.x + d[0], current.y + d[1]);
+                GridCell.CellType type = grid.getCellType(next.x, next.y);
+                boolean passable = type == GridCell.CellType.EMPTY || type == GridCell.CellType.CORRIDOR
+                                   || next.equals(goal);
+                if (passable && !cameFrom.containsKey(next)) {
+                    cameFrom.put(next, current);
+                    queue.add(next);
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+}
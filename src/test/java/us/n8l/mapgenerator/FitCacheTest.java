@@ -0,0 +1,85 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FitCacheTest {
+
+    private static final long MAX_BYTES = 16L << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void diskHitMapsRoomIdsOntoTheNewDungeon() {
+        Dungeon first = TestMaps.dungeon(21, 40);
+        FitResult fitted = new FitCache(MAX_BYTES, dir).fit(first, "grid", 21, "", new DungeonGridFitter(false));
+        assertFalse(fitted.getCorridorPaths().isEmpty());
+
+        // The same dungeon built again gets fresh process-global room ids
+        Dungeon second = TestMaps.dungeon(21, 40);
+        assertNotEquals(first.getRooms().get(0).getId(), second.getRooms().get(0).getId());
+        assertEquals(FitCache.contentHash(first), FitCache.contentHash(second));
+
+        FitCache cache = new FitCache(MAX_BYTES, dir);
+        FitResult cached = cache.fit(second, "grid", 21, "", new DungeonGridFitter(false));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+        assertSameLayout(first, fitted, second, cached);
+
+        // A second lookup is served from memory
+        FitResult again = cache.fit(second, "grid", 21, "", new DungeonGridFitter(false));
+        assertEquals(1, cache.getHits());
+        assertSameLayout(first, fitted, second, again);
+    }
+
+    @Test
+    void differentKeysMiss() {
+        Dungeon dungeon = TestMaps.dungeon(22, 20);
+        FitCache cache = new FitCache(MAX_BYTES, dir);
+        cache.fit(dungeon, "grid", 22, "", new DungeonGridFitter(false));
+        cache.fit(dungeon, "grid", 22, "other", new DungeonGridFitter(false));
+        cache.fit(TestMaps.dungeon(23, 20), "grid", 22, "", new DungeonGridFitter(false));
+        assertEquals(3, cache.getMisses());
+        assertEquals(0, cache.getHits() + cache.getDiskHits());
+    }
+
+    /**
+     * Asserts the cached fit of {@code cachedDungeon} is the original fit with every room id
+     * replaced by the id of the room at the same position, and routes matched by corridor position.
+     */
+    private static void assertSameLayout(Dungeon original, FitResult fitted, Dungeon cachedDungeon, FitResult cached) {
+        Map<Integer, Integer> ids = new HashMap<>();
+        for (int i = 0; i < original.getRooms().size(); i++) {
+            ids.put(original.getRooms().get(i).getId(), cachedDungeon.getRooms().get(i).getId());
+        }
+        Rectangle b = fitted.getUsedBounds();
+        assertEquals(b.toString(), cached.getUsedBounds().toString());
+        assertEquals(fitted.getBounds().toString(), cached.getBounds().toString());
+        for (int y = b.y - 1; y <= b.y + b.height; y++) {
+            for (int x = b.x - 1; x <= b.x + b.width; x++) {
+                assertEquals(fitted.getCellType(x, y), cached.getCellType(x, y), "type at " + x + "," + y);
+                int id = fitted.getRoomId(x, y);
+                assertEquals((id == 0) ? 0 : ids.get(id), cached.getRoomId(x, y), "room id at " + x + "," + y);
+            }
+        }
+
+        List<Corridor> originalCorridors = original.getCorridors();
+        List<Corridor> cachedCorridors = cachedDungeon.getCorridors();
+        assertEquals(fitted.getCorridorPaths().size(), cached.getCorridorPaths().size());
+        for (int i = 0; i < originalCorridors.size(); i++) {
+            assertEquals(fitted.getCorridorPath(originalCorridors.get(i)),
+                    cached.getCorridorPath(cachedCorridors.get(i)), "route of corridor " + i);
+        }
+        assertEquals(fitted.getStats().toString(), cached.getStats().toString());
+    }
+}
@@ -0,0 +1,41 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MapServiceTest {
+
+    @Test
+    void outOfRangeNumbersAreBadRequests() throws IOException {
+        try (MapService service = new MapService(0, 1 << 20)) {
+            service.start();
+            assertEquals(200, status(service, "/dungeon?seed=1&rooms=5"));
+            assertEquals(200, status(service, "/map.png?seed=1&rooms=5&scale=2"));
+
+            // These wrap to an in-range int when narrowed
+            assertEquals(400, status(service, "/dungeon?seed=1&rooms=4294967297"));
+            assertEquals(400, status(service, "/map.png?seed=1&rooms=5&scale=4294967360"));
+
+            assertEquals(400, status(service, "/dungeon?seed=1&rooms=0"));
+            assertEquals(400, status(service, "/dungeon?seed=1&rooms=" + (MapService.MAX_ROOMS + 1)));
+            assertEquals(400, status(service, "/map.svg?seed=1&rooms=5&scale=" + (MapService.MAX_SCALE + 1)));
+            assertEquals(400, status(service, "/dungeon?seed=1&rooms=many"));
+            assertEquals(400, status(service, "/dungeon?rooms=5"));
+        }
+    }
+
+    private static int status(MapService service, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://localhost:" + service.getPort() + path).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
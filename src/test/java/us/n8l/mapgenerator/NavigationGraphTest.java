@@ -0,0 +1,228 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NavigationGraphTest {
+
+    private static final int[][] DELTAS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void allPairsTableRoundTripsAndMatchesTheGrid() throws IOException {
+        FittedMap map = new DungeonGridFitter(false).fit(TestMaps.dungeon(2, 60)).getMap();
+        NavigationGraph graph = NavigationGraph.build(map);
+        assertRoundTripMatchesGrid(map, graph, "all-pairs.dnav");
+    }
+
+    @Test
+    void landmarkTableRoundTripsAndMatchesTheGrid() throws IOException {
+        FittedMap map = new DungeonGridFitter(false).fit(TestMaps.dungeon(2, 60)).getMap();
+        NavigationGraph graph = NavigationGraph.build(map, 0, 4);
+        assertRoundTripMatchesGrid(map, graph, "landmarks.dnav");
+    }
+
+    @Test
+    void disconnectedRoomsHaveNoRoute() throws IOException {
+        HashCellGrid grid = new HashCellGrid();
+        fill(grid, 0, 0, 3, 3, GridCell.CellType.ROOM, 1);
+        fill(grid, 3, 1, 4, 1, GridCell.CellType.CORRIDOR, 0);
+        fill(grid, 7, 0, 3, 3, GridCell.CellType.ROOM, 2);
+        fill(grid, 20, 0, 3, 3, GridCell.CellType.ROOM, 3);
+        FittedMap map = FittedMap.of(grid);
+        for (NavigationGraph graph : new NavigationGraph[]{NavigationGraph.build(map), NavigationGraph.build(map, 0, 2)}) {
+            Path file = dir.resolve("islands.dnav");
+            graph.write(file);
+            NavigationGraph read = NavigationGraph.read(file);
+            assertEquals(5, read.distance(1, 2));
+            assertEquals(-1, read.distance(1, 3));
+            assertEquals(List.of(), read.route(2, 3));
+            assertEquals(-1, read.distance(1, 99));
+        }
+    }
+
+    @Test
+    void damagedSidecarsFailWithIOException() throws IOException {
+        FittedMap map = new DungeonGridFitter(false).fit(TestMaps.dungeon(2, 30)).getMap();
+        Path file = dir.resolve("good.dnav");
+        NavigationGraph graph = NavigationGraph.build(map);
+        graph.write(file);
+        byte[] good = Files.readAllBytes(file);
+        int nodes = graph.nodeCount();
+        int edgeCountAt = 16 + 12 * nodes;
+        int edgeStartAt = edgeCountAt + 4;
+        int firstEdgeAt = edgeStartAt + 4 * (nodes + 1);
+
+        assertCorrupt(good, 8, -1);                      // node count
+        assertCorrupt(good, 8, Integer.MAX_VALUE);       // node count larger than the file
+        assertCorrupt(good, 12, nodes + 1);              // more rooms than nodes
+        assertCorrupt(good, 12, 1 << 20);                // so many rooms their table overflows an int
+        assertCorrupt(good, 4, 0x0001_0007);             // table kind
+        assertCorrupt(good, 16 + 8, 0);                  // first room has no id
+        assertCorrupt(good, edgeCountAt, -5);            // edge count
+        assertCorrupt(good, edgeCountAt, Integer.MAX_VALUE);
+        assertCorrupt(good, edgeStartAt, 1);             // edges must start at 0
+        assertCorrupt(good, edgeStartAt + 4, Integer.MAX_VALUE);
+        assertCorrupt(good, edgeStartAt + 8, 0);         // goes backwards after node 1's edges
+        assertCorrupt(good, firstEdgeAt, nodes);         // edge target out of range
+        assertCorrupt(good, firstEdgeAt + 4, -1);        // negative weight
+        assertCorrupt(good, good.length - 4, -7);        // negative distance
+
+        Files.write(file, Arrays.copyOf(good, good.length - 3));
+        assertThrows(IOException.class, () -> NavigationGraph.read(file));
+        Files.write(file, Arrays.copyOf(good, good.length + 4));
+        assertThrows(IOException.class, () -> NavigationGraph.read(file));
+    }
+
+    private void assertCorrupt(byte[] good, int offset, int value) throws IOException {
+        byte[] bad = good.clone();
+        ByteBuffer.wrap(bad).putInt(offset, value);
+        Path file = dir.resolve("bad.dnav");
+        Files.write(file, bad);
+        assertThrows(IOException.class, () -> NavigationGraph.read(file), "int " + value + " at " + offset);
+    }
+
+    /**
+     * Writes the graph, reads it back, and checks every room-to-room distance against a search
+     * on the grid, and routes against the distances.
+     */
+    private void assertRoundTripMatchesGrid(FittedMap map, NavigationGraph graph, String name) throws IOException {
+        Path file = dir.resolve(name);
+        graph.write(file);
+        NavigationGraph read = NavigationGraph.read(file);
+        assertEquals(graph.nodeCount(), read.nodeCount());
+        assertEquals(graph.roomCount(), read.roomCount());
+        assertEquals(graph.edgeCount(), read.edgeCount());
+
+        int[] rooms = map.getRoomIds().stream().mapToInt(Integer::intValue).sorted().toArray();
+        assertTrue(rooms.length >= 20, rooms.length + " rooms");
+        Map<Integer, int[]> searched = new HashMap<>();
+        IntFunction<int[]> fromNode = n -> searched.computeIfAbsent(n, k -> gridDistances(map, read, k));
+        int connected = 0;
+        for (int from : rooms) {
+            int[] dist = fromNode.apply(read.nodeOf(from));
+            for (int to : rooms) {
+                int expected = dist[read.nodeOf(to)];
+                int d = read.distance(from, to);
+                assertEquals(expected == Integer.MAX_VALUE ? -1 : expected, d, "distance " + from + " -> " + to);
+                assertEquals(graph.distance(from, to), d);
+                List<Integer> route = read.route(from, to);
+                assertEquals(graph.route(from, to), route);
+                if (d < 0) {
+                    assertTrue(route.isEmpty());
+                    continue;
+                }
+                connected++;
+                assertEquals(read.nodeOf(from), route.get(0));
+                assertEquals(read.nodeOf(to), route.get(route.size() - 1));
+                if (from < to && from % 3 == 0) {
+                    // Walking the route node to node on the grid adds up to the distance
+                    int walked = 0;
+                    for (int i = 0; i + 1 < route.size(); i++) {
+                        walked += fromNode.apply(route.get(i))[route.get(i + 1)];
+                    }
+                    assertEquals(d, walked, "route " + route);
+                }
+            }
+        }
+        assertTrue(connected > rooms.length, connected + " connected pairs");
+    }
+
+    /**
+     * Steps from a node to every node over room and corridor squares, where moving within one
+     * room is free and every other step costs one (a 0-1 breadth-first search). Returns the
+     * distance to each node, {@code Integer.MAX_VALUE} where there is no way through.
+     */
+    private static int[] gridDistances(FittedMap map, NavigationGraph graph, int source) {
+        Rectangle b = map.getUsedBounds();
+        int w = b.width + 2;
+        int h = b.height + 2;
+        int[] dist = new int[w * h];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Deque<Integer> queue = new ArrayDeque<>();
+        int roomId = graph.getRoomId(source);
+        for (int y = b.y; y < b.y + b.height; y++) {
+            for (int x = b.x; x < b.x + b.width; x++) {
+                boolean start = (roomId != 0)
+                        ? map.getCellType(x, y) == GridCell.CellType.ROOM && map.getRoomId(x, y) == roomId
+                        : x == graph.getX(source) && y == graph.getY(source);
+                if (start) {
+                    int i = (y - b.y + 1) * w + (x - b.x + 1);
+                    dist[i] = 0;
+                    queue.add(i);
+                }
+            }
+        }
+        while (!queue.isEmpty()) {
+            int i = queue.removeFirst();
+            int x = i % w + b.x - 1;
+            int y = i / w + b.y - 1;
+            for (int[] d : DELTAS) {
+                int nx = x + d[0];
+                int ny = y + d[1];
+                GridCell.CellType type = map.getCellType(nx, ny);
+                if (type == GridCell.CellType.EMPTY) {
+                    continue;
+                }
+                boolean sameRoom = type == GridCell.CellType.ROOM && map.getCellType(x, y) == GridCell.CellType.ROOM
+                                   && map.getRoomId(nx, ny) == map.getRoomId(x, y);
+                int cost = sameRoom ? 0 : 1;
+                int j = (ny - b.y + 1) * w + (nx - b.x + 1);
+                if (dist[i] + cost < dist[j]) {
+                    dist[j] = dist[i] + cost;
+                    if (cost == 0) {
+                        queue.addFirst(j);
+                    } else {
+                        queue.addLast(j);
+                    }
+                }
+            }
+        }
+
+        int[] result = new int[graph.nodeCount()];
+        for (int n = 0; n < graph.nodeCount(); n++) {
+            int best = Integer.MAX_VALUE;
+            int id = graph.getRoomId(n);
+            if (id == 0) {
+                best = dist[(graph.getY(n) - b.y + 1) * w + (graph.getX(n) - b.x + 1)];
+            } else {
+                Rectangle box = map.getRoomBounds(id);
+                for (int y = box.y; y < box.y + box.height; y++) {
+                    for (int x = box.x; x < box.x + box.width; x++) {
+                        if (map.getCellType(x, y) == GridCell.CellType.ROOM && map.getRoomId(x, y) == id) {
+                            best = Math.min(best, dist[(y - b.y + 1) * w + (x - b.x + 1)]);
+                        }
+                    }
+                }
+            }
+            result[n] = best;
+        }
+        return result;
+    }
+
+    private static void fill(HashCellGrid grid, int x0, int y0, int w, int h, GridCell.CellType type, int roomId) {
+        for (int y = y0; y < y0 + h; y++) {
+            for (int x = x0; x < x0 + w; x++) {
+                grid.setCell(x, y, type, roomId);
+            }
+        }
+    }
+}
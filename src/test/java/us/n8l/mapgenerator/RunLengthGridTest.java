@@ -0,0 +1,119 @@
+package us.n8l.mapgenerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunLengthGridTest {
+
+    @Test
+    void encodesIrregularLayoutsExactly() {
+        for (long seed = 0; seed < 5; seed++) {
+            HashCellGrid source = TestMaps.irregular(seed);
+            RunLengthGrid runs = RunLengthGrid.of(source);
+            TestMaps.assertSameCells(source, runs);
+            TestMaps.assertSameCells(source, runs.toDense());
+            TestMaps.assertSameCells(source, RunLengthGrid.of(runs.toDense()));
+            assertEquals(source.toGridCells().size(), runs.toGridCells().size());
+        }
+    }
+
+    @Test
+    void runsAreMaximal() {
+        RunLengthGrid runs = RunLengthGrid.of(TestMaps.irregular(6));
+        int[] last = {Integer.MIN_VALUE, 0, 0, -1, 0}; // y, end x, type, room id, runs seen
+        runs.forEachRun((y, x, length, type, roomId) -> {
+            assertTrue(length > 0);
+            assertNotEquals(GridCell.CellType.EMPTY, type);
+            if (y == last[0]) {
+                assertTrue(x >= last[1], "runs overlap at " + x + "," + y);
+                assertFalse(x == last[1] && type.ordinal() == last[2] && roomId == last[3],
+                        "run at " + x + "," + y + " continues the one before it");
+            }
+            last[0] = y;
+            last[1] = x + length;
+            last[2] = type.ordinal();
+            last[3] = roomId;
+            last[4]++;
+        });
+        assertEquals(runs.runCount(), last[4]);
+    }
+
+    @Test
+    void writeReadRoundTrips() throws IOException {
+        for (CellGridView source : new CellGridView[]{TestMaps.irregular(7), new HashCellGrid(),
+                new DungeonGridFitter(false).fit(TestMaps.dungeon(48, 40))}) {
+            RunLengthGrid runs = RunLengthGrid.of(source);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                runs.write(out);
+            }
+            ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+            RunLengthGrid read = RunLengthGrid.read(in);
+            assertFalse(in.hasRemaining());
+            assertEquals(runs.runCount(), read.runCount());
+            TestMaps.assertSameCells(source, read);
+        }
+    }
+
+    @Test
+    void readRejectsOtherData() {
+        assertThrows(IllegalArgumentException.class, () -> RunLengthGrid.read(ByteBuffer.allocate(64)));
+    }
+
+    @Test
+    void clippedRunsMatchTheSquares() {
+        HashCellGrid source = TestMaps.irregular(8);
+        RunLengthGrid runs = RunLengthGrid.of(source);
+        Rectangle b = source.getUsedBounds();
+        Random rng = new Random(48);
+        for (int i = 0; i < 300; i++) {
+            Rectangle area = new Rectangle(b.x - 20 + rng.nextInt(b.width + 40), b.y - 20 + rng.nextInt(b.height + 40),
+                    rng.nextInt(120), rng.nextInt(80));
+            Map<Long, Integer> visited = new HashMap<>();
+            runs.forEachRun(area, (y, x, length, type, roomId) -> {
+                for (int dx = 0; dx < length; dx++) {
+                    assertNull(visited.put(key(x + dx, y), type.ordinal() * 100_000 + roomId), "square visited twice");
+                }
+            });
+            int expected = 0;
+            for (int y = area.y; y < area.y + area.height; y++) {
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    GridCell.CellType type = source.getCellType(x, y);
+                    if (type != GridCell.CellType.EMPTY) {
+                        expected++;
+                        assertEquals(type.ordinal() * 100_000 + source.getRoomId(x, y), visited.get(key(x, y)),
+                                "square " + x + "," + y + " in " + area);
+                    }
+                }
+            }
+            assertEquals(expected, visited.size(), "squares visited outside " + area);
+        }
+    }
+
+    @Test
+    void fittedMapOfRunsMatches() {
+        HashCellGrid source = TestMaps.irregular(9);
+        TestMaps.assertSameCells(source, FittedMap.of(RunLengthGrid.of(source)));
+
+        FitResult fit = new DungeonGridFitter(false).fit(TestMaps.dungeon(49, 40));
+        TestMaps.assertSameCells(fit, FittedMap.of(RunLengthGrid.of(fit)));
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
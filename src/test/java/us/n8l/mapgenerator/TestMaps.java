@@ -0,0 +1,71 @@
+package us.n8l.mapgenerator;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Layouts and grid comparisons shared by the round-trip tests.
+ */
+final class TestMaps {
+
+    private TestMaps() {
+    }
+
+    /**
+     * A hand-made layout with the shapes the encoders have to get right: negative coordinates,
+     * rooms touching and overlapping, single squares, long corridors crossing rooms and empty
+     * rows inside the bounds.
+     */
+    static HashCellGrid irregular(long seed) {
+        Random rng = new Random(seed);
+        HashCellGrid grid = new HashCellGrid();
+        for (int r = 1; r <= 25; r++) {
+            int x = rng.nextInt(300) - 150;
+            int y = rng.nextInt(200) - 120;
+            int w = 1 + rng.nextInt(12);
+            int h = 1 + rng.nextInt(9);
+            for (int dy = 0; dy < h; dy++) {
+                for (int dx = 0; dx < w; dx++) {
+                    grid.setCell(x + dx, y + dy, GridCell.CellType.ROOM, 1000 + r);
+                }
+            }
+        }
+        for (int c = 0; c < 15; c++) {
+            int x = rng.nextInt(300) - 150;
+            int y = rng.nextInt(200) - 120;
+            for (int step = rng.nextInt(80); step > 0; step--) {
+                if (grid.getCellType(x, y) == GridCell.CellType.EMPTY) {
+                    grid.setCell(x, y, GridCell.CellType.CORRIDOR, 0);
+                }
+                if (rng.nextBoolean()) {
+                    x += rng.nextBoolean() ? 1 : -1;
+                } else {
+                    y += rng.nextBoolean() ? 1 : -1;
+                }
+            }
+        }
+        // Isolated squares far from everything else
+        grid.setCell(400, -300, GridCell.CellType.CORRIDOR, 0);
+        grid.setCell(-401, 299, GridCell.CellType.ROOM, 7);
+        return grid;
+    }
+
+    static Dungeon dungeon(long seed, int rooms) {
+        return new AdvancedDungeonGenerator(seed, rooms).generateDungeon();
+    }
+
+    /**
+     * Asserts equal used bounds and equal squares over them plus a one-square border.
+     */
+    static void assertSameCells(CellGridView expected, CellGridView actual) {
+        Rectangle b = expected.getUsedBounds();
+        assertEquals(b.toString(), actual.getUsedBounds().toString(), "used bounds");
+        for (int y = b.y - 1; y <= b.y + b.height; y++) {
+            for (int x = b.x - 1; x <= b.x + b.width; x++) {
+                assertEquals(expected.getCellType(x, y), actual.getCellType(x, y), "type at " + x + "," + y);
+                assertEquals(expected.getRoomId(x, y), actual.getRoomId(x, y), "room id at " + x + "," + y);
+            }
+        }
+    }
+}